@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2008 IBM Corporation and others.
+ *  Copyright (c) 2000, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -19,7 +19,6 @@ import java.util.List;
 import javax.xml.parsers.FactoryConfigurationError;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
@@ -30,6 +29,7 @@ import org.eclipse.pde.core.IModel;
 import org.eclipse.pde.core.IModelChangedEvent;
 import org.eclipse.pde.core.IModelChangedListener;
 import org.eclipse.pde.core.ModelChangedEvent;
+import org.eclipse.pde.internal.core.util.PDEXMLHelper;
 import org.xml.sax.SAXException;
 
 public abstract class AbstractModel extends PlatformObject implements IModel, IModelChangeProviderExtension, Serializable {
@@ -139,8 +139,22 @@ public abstract class AbstractModel extends PlatformObject implements IModel, IM
 		throw new CoreException(status);
 	}
 
+	/**
+	 * Returns a parser for loading the model.  The parser should be given back with
+	 * {@link #recycleSaxParser(SAXParser)} once the model is loaded.
+	 */
 	protected SAXParser getSaxParser() throws ParserConfigurationException, SAXException, FactoryConfigurationError {
-		return SAXParserFactory.newInstance().newSAXParser();
+		return PDEXMLHelper.Instance().getDefaultSAXParser();
+	}
+
+	/**
+	 * Gives a parser returned by {@link #getSaxParser()} back for reuse.
+	 *
+	 * @param parser parser or <code>null</code>
+	 */
+	protected void recycleSaxParser(SAXParser parser) {
+		if (parser != null)
+			PDEXMLHelper.Instance().recycleSAXParser(parser);
 	}
 
 	/*
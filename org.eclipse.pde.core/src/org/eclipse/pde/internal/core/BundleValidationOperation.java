@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2010 IBM Corporation and others.
+ * Copyright (c) 2007, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,13 +17,52 @@ import org.eclipse.osgi.service.resolver.*;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.pde.core.plugin.IPluginModelBase;
 
+/**
+ * Resolves the bundles of a launch in a state of their own to find the problems that
+ * would keep them from being resolved at runtime.
+ * <p>
+ * The resolved states of the last launches are cached for the platform properties they
+ * were resolved with, as long as the PDE state does not change.  Launching the same
+ * bundles again does not resolve anything, a launch with a different selection of
+ * bundles adds and removes the difference and resolves the cached state incrementally.
+ * The cache is disabled by the <code>pde.nocache</code> system property.
+ * </p>
+ * <p>
+ * A cached state is reused by the next operation, so the results of this operation are
+ * computed before {@link #run(IProgressMonitor)} returns the state to the cache.  Subclasses
+ * that need to look at the resolved state do so in {@link #validateState(State)}.
+ * </p>
+ */
 public class BundleValidationOperation implements IWorkspaceRunnable {
 
 	private static StateObjectFactory FACTORY;
 
+	private static final int MAX_CACHED_STATES = 3;
+
+	/**
+	 * A resolved launch state
+	 */
+	private static class CachedState {
+		State fState;
+		Dictionary[] fProperties;
+		State fSource;
+
+		/**
+		 * Map of the bundles of the PDE state to their copies in the launch state
+		 */
+		Map fCopies = new IdentityHashMap();
+	}
+
+	/**
+	 * List of {@link CachedState}s, the most recently used last
+	 */
+	private static final List fCache = new ArrayList(MAX_CACHED_STATES);
+
 	private IPluginModelBase[] fModels;
 	private Dictionary[] fProperties;
 	private State fState;
+	private Map fResolverErrors;
+	private boolean fEmpty;
 
 	public BundleValidationOperation(IPluginModelBase[] models) {
 		this(models, new Dictionary[] {TargetPlatformHelper.getTargetEnvironment()});
@@ -38,28 +77,114 @@ public class BundleValidationOperation implements IWorkspaceRunnable {
 		if (FACTORY == null)
 			FACTORY = Platform.getPlatformAdmin().getFactory();
 		monitor.beginTask("", fModels.length + 1); //$NON-NLS-1$
-		fState = FACTORY.createState(true);
+		// map of the bundles to validate to themselves, compared by identity
+		Map bundles = new IdentityHashMap();
 		for (int i = 0; i < fModels.length; i++) {
 			BundleDescription bundle = fModels[i].getBundleDescription();
 			if (bundle != null)
-				fState.addBundle(FACTORY.createBundleDescription(bundle));
+				bundles.put(bundle, bundle);
+		}
+		State source = TargetPlatformHelper.getState();
+		CachedState cached = bundles.isEmpty() ? null : takeCachedState(source, fProperties);
+		if (cached == null) {
+			cached = new CachedState();
+			cached.fState = FACTORY.createState(true);
+			cached.fProperties = fProperties;
+			cached.fSource = source;
+		}
+		boolean incremental = !cached.fCopies.isEmpty();
+		boolean changed = false;
+		for (Iterator iter = cached.fCopies.entrySet().iterator(); iter.hasNext();) {
+			Map.Entry entry = (Map.Entry) iter.next();
+			if (!bundles.containsKey(entry.getKey())) {
+				cached.fState.removeBundle((BundleDescription) entry.getValue());
+				iter.remove();
+				changed = true;
+			}
+		}
+		for (int i = 0; i < fModels.length; i++) {
+			BundleDescription bundle = fModels[i].getBundleDescription();
+			if (bundle != null && !cached.fCopies.containsKey(bundle)) {
+				BundleDescription copy = FACTORY.createBundleDescription(bundle);
+				if (cached.fState.addBundle(copy)) {
+					cached.fCopies.put(bundle, copy);
+					changed = true;
+				}
+			}
 			monitor.worked(1);
 		}
-		fState.setPlatformProperties(fProperties);
-		fState.resolve(false);
+		if (!incremental)
+			cached.fState.setPlatformProperties(fProperties);
+		if (changed)
+			cached.fState.resolve(incremental);
+		fEmpty = cached.fCopies.isEmpty();
+		fResolverErrors = computeResolverErrors(cached.fState);
+		validateState(cached.fState);
+		if (bundles.isEmpty() || !putCachedState(cached))
+			fState = cached.fState;
 		monitor.done();
 	}
 
-	public Map getResolverErrors() {
+	/**
+	 * Called with the resolved state before it is returned to the cache.  The state must
+	 * not be kept or modified.  Does nothing by default.
+	 *
+	 * @param state resolved state
+	 */
+	protected void validateState(State state) {
+	}
+
+	/**
+	 * Removes the cached state resolved with the given platform properties from the cache.
+	 * A state is only used by one operation at a time.
+	 *
+	 * @return the cached state or <code>null</code>
+	 */
+	private static CachedState takeCachedState(State source, Dictionary[] properties) {
+		if ("true".equals(System.getProperty("pde.nocache"))) //$NON-NLS-1$ //$NON-NLS-2$
+			return null;
+		synchronized (fCache) {
+			CachedState result = null;
+			for (Iterator iter = fCache.iterator(); iter.hasNext();) {
+				CachedState cached = (CachedState) iter.next();
+				if (cached.fSource != source) {
+					// the target platform changed since
+					iter.remove();
+				} else if (result == null && Arrays.equals(cached.fProperties, properties)) {
+					result = cached;
+					iter.remove();
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Returns the given state to the cache.
+	 *
+	 * @return whether the state was cached
+	 */
+	private static boolean putCachedState(CachedState cached) {
+		if ("true".equals(System.getProperty("pde.nocache"))) //$NON-NLS-1$ //$NON-NLS-2$
+			return false;
+		synchronized (fCache) {
+			fCache.add(cached);
+			if (fCache.size() > MAX_CACHED_STATES)
+				fCache.remove(0);
+		}
+		return true;
+	}
+
+	private static Map computeResolverErrors(State state) {
 		Set alreadyDuplicated = new HashSet();
 		Map map = new HashMap();
-		BundleDescription[] bundles = fState.getBundles();
+		BundleDescription[] bundles = state.getBundles();
 		for (int i = 0; i < bundles.length; i++) {
 			BundleDescription desc = bundles[i];
 			if (!desc.isResolved()) {
-				map.put(desc, fState.getResolverErrors(desc));
+				map.put(desc, state.getResolverErrors(desc));
 			} else if (desc.isSingleton() && !alreadyDuplicated.contains(desc.getSymbolicName())) {
-				BundleDescription[] dups = fState.getBundles(desc.getSymbolicName());
+				BundleDescription[] dups = state.getBundles(desc.getSymbolicName());
 				if (dups.length > 1) {
 					// more than 1 singleton present
 					alreadyDuplicated.add(desc.getSymbolicName());
@@ -74,27 +199,37 @@ public class BundleValidationOperation implements IWorkspaceRunnable {
 		return map;
 	}
 
+	/**
+	 * Returns the problems found, a map of the bundles that are not resolved or have
+	 * duplicates to their resolver errors.  The map may be modified by the caller.
+	 *
+	 * @return map of bundle descriptions to resolver errors
+	 */
+	public Map getResolverErrors() {
+		return new HashMap(fResolverErrors);
+	}
+
+	/**
+	 * Returns the state the bundles were resolved in, or <code>null</code> if the state
+	 * was returned to the cache.  Use {@link #validateState(State)} to look at a cached state.
+	 *
+	 * @return resolved state or <code>null</code>
+	 */
 	public State getState() {
 		return fState;
 	}
 
 	public boolean hasErrors() {
-		if (fState.getHighestBundleId() > -1) {
-			BundleDescription[] bundles = fState.getBundles();
-			for (int i = 0; i < bundles.length; i++) {
-				BundleDescription desc = bundles[i];
-				if (!desc.isResolved()) {
-					return true;
-				} else if (desc.isSingleton()) {
-					BundleDescription[] dups = fState.getBundles(desc.getSymbolicName());
-					if (dups.length > 1) {
-						// more than one singleton
-						return true;
-					}
-				}
-			}
-		}
-		return false;
+		return !fResolverErrors.isEmpty();
+	}
+
+	/**
+	 * Returns whether there were no bundles to validate.
+	 *
+	 * @return whether the state was empty
+	 */
+	public boolean isEmpty() {
+		return fEmpty;
 	}
 
 }
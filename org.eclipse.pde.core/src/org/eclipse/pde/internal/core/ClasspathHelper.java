@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2011 IBM Corporation and others.
+ * Copyright (c) 2003, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -28,6 +28,86 @@ public class ClasspathHelper {
 	private static final String DOT = "."; //$NON-NLS-1$
 	private static final String FRAGMENT_ANNOTATION = "@fragment@"; //$NON-NLS-1$
 
+	/**
+	 * Map of {@link IProject} to its dev entries, the entry computed with excluded folders
+	 * checked at index 1 and the other one at index 0.  Entries that depend on fragments
+	 * are not cached.
+	 */
+	private static final Map fDevEntries = new HashMap();
+
+	/**
+	 * Incremented whenever cached dev entries are discarded
+	 */
+	private static long fDevEntriesGeneration = 0;
+
+	private static DevEntriesListener fDevEntriesListener;
+
+	/**
+	 * Discards the cached dev entries of projects whose classpath, build.properties,
+	 * manifest, output folders or self-hosting preferences may have changed.
+	 */
+	private static class DevEntriesListener implements IResourceChangeListener, IPluginModelListener {
+
+		public void resourceChanged(IResourceChangeEvent event) {
+			IResourceDelta delta = event.getDelta();
+			if (delta == null)
+				return;
+			IResourceDelta[] projects = delta.getAffectedChildren();
+			for (int i = 0; i < projects.length; i++) {
+				final IProject project = (IProject) projects[i].getResource();
+				int kind = projects[i].getKind();
+				if (kind != IResourceDelta.CHANGED || (projects[i].getFlags() & (IResourceDelta.OPEN | IResourceDelta.DESCRIPTION)) != 0) {
+					discardDevEntries(project);
+					continue;
+				}
+				final boolean[] changed = new boolean[1];
+				try {
+					projects[i].accept(new IResourceDeltaVisitor() {
+						public boolean visit(IResourceDelta child) {
+							IResource resource = child.getResource();
+							if (resource.getType() == IResource.FILE) {
+								// validation problems do not change the entries
+								if (child.getKind() == IResourceDelta.CHANGED && child.getFlags() == IResourceDelta.MARKERS)
+									return false;
+								if (isDevEntriesFile((IFile) resource))
+									changed[0] = true;
+								return false;
+							}
+							if (resource.getType() == IResource.FOLDER) {
+								// output folders that appear or go away change the entries
+								if (child.getKind() != IResourceDelta.CHANGED) {
+									changed[0] = true;
+									return false;
+								}
+								// do not look at the content of output folders
+								if (resource.isDerived())
+									return false;
+							}
+							return !changed[0];
+						}
+					});
+				} catch (CoreException e) {
+					changed[0] = true;
+				}
+				if (changed[0])
+					discardDevEntries(project);
+			}
+		}
+
+		private boolean isDevEntriesFile(IFile file) {
+			IProject project = file.getProject();
+			IPath path = file.getProjectRelativePath();
+			return path.equals(new Path(".classpath")) //$NON-NLS-1$
+					|| path.equals(new Path(".settings/" + PDECore.PLUGIN_ID + ".prefs")) //$NON-NLS-1$ //$NON-NLS-2$
+					|| file.equals(PDEProject.getBuildProperties(project)) || file.equals(PDEProject.getManifest(project)) || file.equals(PDEProject.getPluginXml(project)) || file.equals(PDEProject.getFragmentXml(project));
+		}
+
+		public void modelsChanged(PluginModelDelta delta) {
+			// libraries and fragments may have changed
+			discardDevEntries(null);
+		}
+	}
+
 	public static String getDevEntriesProperties(String fileName, boolean checkExcluded) {
 		File file = new File(fileName);
 		if (!file.exists()) {
@@ -44,7 +124,7 @@ public class ClasspathHelper {
 			String id = models[i].getPluginBase().getId();
 			if (id == null)
 				continue;
-			String entry = writeEntry(getDevPaths(models[i], checkExcluded, null));
+			String entry = getDevEntry(models[i], checkExcluded, null);
 			if (entry.length() > 0) {
 				String currentValue = (String) properties.get(id);
 				if (!entry.equals(currentValue)) {
@@ -56,22 +136,8 @@ public class ClasspathHelper {
 		}
 		properties.put("@ignoredot@", "true"); //$NON-NLS-1$ //$NON-NLS-2$
 
-		FileOutputStream stream = null;
-		try {
-			stream = new FileOutputStream(fileName);
-			properties.store(stream, ""); //$NON-NLS-1$
-			stream.flush();
-			return new URL("file:" + fileName).toString(); //$NON-NLS-1$
-		} catch (IOException e) {
-			PDECore.logException(e);
-		} finally {
-			try {
-				if (stream != null)
-					stream.close();
-			} catch (IOException e) {
-			}
-		}
-		return getDevEntries(checkExcluded);
+		String url = storeDevProperties(fileName, properties);
+		return url != null ? url : getDevEntries(checkExcluded);
 	}
 
 	public static String getDevEntriesProperties(String fileName, Map map) {
@@ -89,7 +155,7 @@ public class ClasspathHelper {
 		while (iter.hasNext()) {
 			IPluginModelBase model = (IPluginModelBase) iter.next();
 			if (model.getUnderlyingResource() != null) {
-				String entry = writeEntry(getDevPaths(model, true, map));
+				String entry = getDevEntry(model, true, map);
 				if (entry.length() > 0) {
 					String id = model.getPluginBase().getId();
 					String currentValue = (String) properties.get(id);
@@ -103,6 +169,42 @@ public class ClasspathHelper {
 		}
 		properties.put("@ignoredot@", "true"); //$NON-NLS-1$ //$NON-NLS-2$
 
+		String url = storeDevProperties(fileName, properties);
+		return url != null ? url : getDevEntries(true);
+	}
+
+	/**
+	 * Writes the dev properties to the given file, unless the file already contains them.
+	 * 
+	 * @return URL of the file or <code>null</code> if it could not be written
+	 */
+	private static String storeDevProperties(String fileName, Properties properties) {
+		File file = new File(fileName);
+		if (file.isFile()) {
+			Properties existing = new Properties();
+			FileInputStream stream = null;
+			try {
+				stream = new FileInputStream(file);
+				existing.load(stream);
+			} catch (IOException e) {
+				existing = null;
+			} finally {
+				try {
+					if (stream != null)
+						stream.close();
+				} catch (IOException e) {
+				}
+			}
+			if (properties.equals(existing)) {
+				try {
+					return new URL("file:" + fileName).toString(); //$NON-NLS-1$
+				} catch (IOException e) {
+					PDECore.logException(e);
+					return null;
+				}
+			}
+		}
+
 		FileOutputStream stream = null;
 		try {
 			stream = new FileOutputStream(fileName);
@@ -118,7 +220,59 @@ public class ClasspathHelper {
 			} catch (IOException e) {
 			}
 		}
-		return getDevEntries(true);
+		return null;
+	}
+
+	/**
+	 * Returns the dev entry of a workspace plug-in, computing it only if the project
+	 * changed since it was last asked for.
+	 */
+	private static String getDevEntry(IPluginModelBase model, boolean checkExcluded, Map pluginsMap) {
+		IProject project = model.getUnderlyingResource().getProject();
+		int index = checkExcluded ? 1 : 0;
+		long generation;
+		synchronized (fDevEntries) {
+			if (fDevEntriesListener == null) {
+				fDevEntriesListener = new DevEntriesListener();
+				ResourcesPlugin.getWorkspace().addResourceChangeListener(fDevEntriesListener, IResourceChangeEvent.POST_CHANGE);
+				PDECore.getDefault().getModelManager().addPluginModelListener(fDevEntriesListener);
+			}
+			String[] entries = (String[]) fDevEntries.get(project);
+			if (entries != null && entries[index] != null)
+				return entries[index];
+			generation = fDevEntriesGeneration;
+		}
+		boolean[] usesFragments = new boolean[1];
+		String entry = writeEntry(getDevPaths(model, checkExcluded, pluginsMap, usesFragments));
+		if (usesFragments[0])
+			return entry;
+		synchronized (fDevEntries) {
+			// do not cache an entry that may have been computed from outdated information
+			if (generation == fDevEntriesGeneration) {
+				String[] entries = (String[]) fDevEntries.get(project);
+				if (entries == null) {
+					entries = new String[2];
+					fDevEntries.put(project, entries);
+				}
+				entries[index] = entry;
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Discards the cached dev entries of the given project.
+	 * 
+	 * @param project project or <code>null</code> to discard all entries
+	 */
+	private static void discardDevEntries(IProject project) {
+		synchronized (fDevEntries) {
+			if (project == null)
+				fDevEntries.clear();
+			else
+				fDevEntries.remove(project);
+			fDevEntriesGeneration++;
+		}
 	}
 
 	private static String getDevEntries(boolean checkExcluded) {
@@ -243,6 +397,14 @@ public class ClasspathHelper {
 	}
 
 	private static IPath[] getDevPaths(IPluginModelBase model, boolean checkExcluded, Map pluginsMap) {
+		return getDevPaths(model, checkExcluded, pluginsMap, null);
+	}
+
+	/**
+	 * @param usesFragments if not <code>null</code>, its first element is set to <code>true</code>
+	 *  if libraries were looked for in fragments
+	 */
+	private static IPath[] getDevPaths(IPluginModelBase model, boolean checkExcluded, Map pluginsMap, boolean[] usesFragments) {
 		ArrayList result = new ArrayList();
 		IProject project = model.getUnderlyingResource().getProject();
 		IPluginBase base = model.getPluginBase();
@@ -284,6 +446,8 @@ public class ClasspathHelper {
 								IPath[] paths = findLibrary(libraries[i].getName(), project, classpathMap, build);
 								if (paths.length == 0 && !libraries[i].getName().equals(DOT)) {
 									paths = findLibraryFromFragments(libraries[i].getName(), model, checkExcluded, pluginsMap);
+									if (usesFragments != null)
+										usesFragments[0] = true;
 								}
 								for (int j = 0; j < paths.length; j++)
 									addPath(result, project, paths[j]);
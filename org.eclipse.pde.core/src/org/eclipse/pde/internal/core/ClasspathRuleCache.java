@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.internal.core;
+
+import java.util.*;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.IAccessRule;
+import org.eclipse.osgi.service.resolver.*;
+import org.eclipse.pde.internal.core.PDEClasspathContainer.Rule;
+
+/**
+ * Caches what is computed from the resolver state when building the access rules of
+ * required plug-ins containers, so that the containers of many projects depending on
+ * the same bundles do not compute the same rules over and over again.
+ * <p>
+ * The cache is only valid for one generation of a state: as soon as the state is
+ * modified or resolved again, its time stamp changes and a new cache is started.
+ * Values handed out by the cache are shared and must not be modified.
+ * </p>
+ */
+class ClasspathRuleCache {
+
+	private static ClasspathRuleCache fCurrent;
+
+	private final State fState;
+	private final long fTimeStamp;
+
+	/**
+	 * Map of requiring {@link BundleDescription} to its visible packages, a map of
+	 * exporting {@link BundleDescription} to a list of {@link Rule}s
+	 */
+	private final Map fVisiblePackages = new HashMap();
+
+	/**
+	 * Map of {@link ExportPackageDescription} to the {@link IPath} pattern of the package
+	 */
+	private final Map fPackagePaths = new HashMap();
+
+	/**
+	 * Map of a list of {@link Rule}s to the equivalent array of {@link IAccessRule}s
+	 */
+	private final Map fAccessRules = new HashMap();
+
+	private ClasspathRuleCache(State state) {
+		fState = state;
+		fTimeStamp = state.getTimeStamp();
+	}
+
+	/**
+	 * Returns the cache for the current generation of the given state.
+	 *
+	 * @param state resolver state the rules are computed from, may be <code>null</code>
+	 * @return cache for the state or <code>null</code> if the state is <code>null</code>
+	 */
+	static synchronized ClasspathRuleCache getCache(State state) {
+		if (state == null)
+			return null;
+		if (fCurrent == null || fCurrent.fState != state || fCurrent.fTimeStamp != state.getTimeStamp())
+			fCurrent = new ClasspathRuleCache(state);
+		return fCurrent;
+	}
+
+	/**
+	 * Returns the access rules equivalent to the given rules.  Containers computed for
+	 * the same generation of the state share the arrays of equal rules.
+	 *
+	 * @param rules rules to convert
+	 * @return access rules, ending with a rule that excludes everything else
+	 */
+	static IAccessRule[] getAccessRules(Rule[] rules) {
+		ClasspathRuleCache cache;
+		synchronized (ClasspathRuleCache.class) {
+			cache = fCurrent;
+		}
+		if (cache == null)
+			return PDEClasspathContainer.createAccessRules(rules);
+		List key = Arrays.asList(rules);
+		synchronized (cache) {
+			IAccessRule[] accessRules = (IAccessRule[]) cache.fAccessRules.get(key);
+			if (accessRules == null) {
+				accessRules = PDEClasspathContainer.createAccessRules(rules);
+				// copy the key, the caller owns the array it is backed by
+				cache.fAccessRules.put(new ArrayList(key), accessRules);
+			}
+			return accessRules;
+		}
+	}
+
+	/**
+	 * Returns the visible packages computed for the given bundle.
+	 *
+	 * @param desc requiring bundle
+	 * @return map of exporting bundle to list of rules or <code>null</code> if not cached
+	 */
+	synchronized Map getVisiblePackages(BundleDescription desc) {
+		return (Map) fVisiblePackages.get(desc);
+	}
+
+	/**
+	 * Caches the visible packages computed for the given bundle.
+	 *
+	 * @param desc requiring bundle
+	 * @param visiblePackages map of exporting bundle to list of rules
+	 */
+	synchronized void setVisiblePackages(BundleDescription desc, Map visiblePackages) {
+		fVisiblePackages.put(desc, visiblePackages);
+	}
+
+	/**
+	 * Returns the path pattern that matches the types of the given package.
+	 *
+	 * @param export exported package
+	 * @return path pattern of the package
+	 */
+	synchronized IPath getPackagePath(ExportPackageDescription export) {
+		IPath path = (IPath) fPackagePaths.get(export);
+		if (path == null) {
+			String name = export.getName();
+			path = (name.equals(".")) ? new Path("*") : new Path(name.replaceAll("\\.", "/") + "/*"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+			fPackagePaths.put(export, path);
+		}
+		return path;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2009 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -44,6 +44,10 @@ public class MinimalState {
 
 	private boolean fNoProfile;
 
+	// time stamps of the state after its last and its previous resolve
+	private long fResolvedTimeStamp = -1;
+	private long fPreviousResolvedTimeStamp = -1;
+
 	protected static boolean DEBUG = false;
 
 	protected static StateObjectFactory stateObjectFactory;
@@ -118,19 +122,55 @@ public class MinimalState {
 	}
 
 	public BundleDescription addBundle(File bundleLocation, long bundleId) throws PluginConversionException, CoreException, IOException {
+		ParsedBundle bundle = parseBundle(bundleLocation);
+		if (bundle == null)
+			return null;
+		return addBundle(bundle, bundleId);
+	}
+
+	/**
+	 * Reads the manifest of the bundle at the given location, converting a legacy
+	 * <code>plugin.xml</code> or <code>fragment.xml</code> if required, without
+	 * modifying the state.  This method may be called concurrently from several
+	 * threads; the result is added to the state with {@link #addBundle(ParsedBundle, long)}.
+	 * 
+	 * @param bundleLocation location of the bundle
+	 * @return the parsed bundle or <code>null</code> if the location does not contain a bundle
+	 * @throws PluginConversionException if the plug-in manifest could not be converted
+	 * @throws CoreException if the converted manifest is invalid
+	 * @throws IOException if the manifest could not be read
+	 */
+	protected ParsedBundle parseBundle(File bundleLocation) throws PluginConversionException, CoreException, IOException {
 		Dictionary manifest = loadManifest(bundleLocation);
-		// update for development mode
-		TargetWeaver.weaveManifest(manifest);
 		boolean hasBundleStructure = manifest != null && manifest.get(Constants.BUNDLE_SYMBOLICNAME) != null;
 		if (!hasBundleStructure) {
 			if (!bundleLocation.isFile() && !new File(bundleLocation, ICoreConstants.PLUGIN_FILENAME_DESCRIPTOR).exists() && !new File(bundleLocation, ICoreConstants.FRAGMENT_FILENAME_DESCRIPTOR).exists())
 				return null;
 			PluginConverter converter = acquirePluginConverter();
-			manifest = converter.convertManifest(bundleLocation, false, null, false, null);
+			// the converter is not guaranteed to be thread safe
+			synchronized (converter) {
+				manifest = converter.convertManifest(bundleLocation, false, null, false, null);
+			}
 			if (manifest == null || manifest.get(Constants.BUNDLE_SYMBOLICNAME) == null)
 				throw new CoreException(new Status(IStatus.ERROR, PDECore.PLUGIN_ID, IStatus.ERROR, "Error parsing plug-in manifest file at " + bundleLocation.toString(), null)); //$NON-NLS-1$
 		}
-		BundleDescription desc = addBundle(manifest, bundleLocation, bundleId);
+		return new ParsedBundle(bundleLocation, manifest, hasBundleStructure);
+	}
+
+	/**
+	 * Adds a bundle previously read by {@link #parseBundle(File)} to the state.
+	 * 
+	 * @param bundle the parsed bundle
+	 * @param bundleId id of the bundle or <code>-1</code> to assign the next available id
+	 * @return the new bundle description or <code>null</code> if the manifest is invalid
+	 */
+	protected BundleDescription addBundle(ParsedBundle bundle, long bundleId) {
+		Dictionary manifest = bundle.getManifest();
+		if (bundle.hasBundleStructure()) {
+			// update for development mode
+			TargetWeaver.weaveManifest(manifest);
+		}
+		BundleDescription desc = addBundle(manifest, bundle.getLocation(), bundleId);
 		if (desc != null && "true".equals(manifest.get(ICoreConstants.ECLIPSE_SYSTEM_BUNDLE))) { //$NON-NLS-1$
 			// if this is the system bundle then 
 			// indicate that the javaProfile has changed since the new system
@@ -139,7 +179,7 @@ public class MinimalState {
 			fSystemBundle = desc.getSymbolicName();
 		}
 		if (desc != null) {
-			addAuxiliaryData(desc, manifest, hasBundleStructure);
+			addAuxiliaryData(desc, manifest, bundle.hasBundleStructure());
 		}
 		return desc;
 	}
@@ -209,7 +249,7 @@ public class MinimalState {
 	 */
 	public StateDelta resolveState(String[] symbolicNames) {
 		if (initializePlatformProperties()) {
-			return fState.resolve(false);
+			return resolved(fState.resolve(false));
 		}
 		List bundles = new ArrayList();
 		for (int i = 0; i < symbolicNames.length; i++) {
@@ -218,12 +258,38 @@ public class MinimalState {
 				bundles.add(descriptions[j]);
 			}
 		}
-		return fState.resolve((BundleDescription[]) bundles.toArray(new BundleDescription[bundles.size()]));
+		return resolved(fState.resolve((BundleDescription[]) bundles.toArray(new BundleDescription[bundles.size()])));
 	}
 
 	private synchronized StateDelta internalResolveState(boolean incremental) {
 		boolean fullBuildRequired = initializePlatformProperties();
-		return fState.resolve(incremental && !fullBuildRequired);
+		return resolved(fState.resolve(incremental && !fullBuildRequired));
+	}
+
+	protected synchronized StateDelta resolved(StateDelta delta) {
+		fPreviousResolvedTimeStamp = fResolvedTimeStamp;
+		fResolvedTimeStamp = fState.getTimeStamp();
+		return delta;
+	}
+
+	/**
+	 * Returns the time stamp of the state right after it was last resolved, that is the
+	 * time stamp the delta of that resolve was computed against.
+	 * 
+	 * @return time stamp of the last resolve or <code>-1</code> if the state was not resolved
+	 */
+	public synchronized long getResolvedTimeStamp() {
+		return fResolvedTimeStamp;
+	}
+
+	/**
+	 * Returns the time stamp of the state right after the resolve before the last one.  The
+	 * delta of the last resolve covers the changes made to the state since that time stamp.
+	 * 
+	 * @return time stamp of the previous resolve or <code>-1</code> if there was none
+	 */
+	public synchronized long getPreviousResolvedTimeStamp() {
+		return fPreviousResolvedTimeStamp;
 	}
 
 	protected boolean initializePlatformProperties() {
@@ -237,6 +303,20 @@ public class MinimalState {
 		return false;
 	}
 
+	/**
+	 * Recomputes the platform properties of the state from the current target environment
+	 * and the known execution environments.  Used when the target changes without creating
+	 * a new state.
+	 * 
+	 * @return whether the platform properties of the state changed
+	 */
+	public boolean updatePlatformProperties() {
+		if (!fNoProfile)
+			setExecutionEnvironments();
+		fEEListChanged = true;
+		return initializePlatformProperties();
+	}
+
 	private Dictionary[] getProfilePlatformProperties() {
 		return TargetPlatformHelper.getPlatformProperties(fExecutionEnvironments, this);
 	}
@@ -269,7 +349,7 @@ public class MinimalState {
 			fState.addBundle(toAdd);
 	}
 
-	private PluginConverter acquirePluginConverter() {
+	private synchronized PluginConverter acquirePluginConverter() {
 		if (fConverter == null) {
 			ServiceTracker tracker = new ServiceTracker(PDECore.getDefault().getBundleContext(), PluginConverter.class.getName(), null);
 			tracker.open();
@@ -344,4 +424,44 @@ public class MinimalState {
 		return fSystemBundle;
 	}
 
+	/**
+	 * The manifest of a bundle read from disk, but not yet added to the state.
+	 */
+	protected static class ParsedBundle {
+		private File fLocation;
+		private Dictionary fManifest;
+		private boolean fHasBundleStructure;
+		private TargetStateIndex.Fingerprint fFingerprint;
+
+		ParsedBundle(File location, Dictionary manifest, boolean hasBundleStructure) {
+			fLocation = location;
+			fManifest = manifest;
+			fHasBundleStructure = hasBundleStructure;
+		}
+
+		public File getLocation() {
+			return fLocation;
+		}
+
+		public Dictionary getManifest() {
+			return fManifest;
+		}
+
+		public boolean hasBundleStructure() {
+			return fHasBundleStructure;
+		}
+
+		/**
+		 * Returns the fingerprint of the bundle taken when it was read, or <code>null</code>
+		 * if none was taken.
+		 */
+		TargetStateIndex.Fingerprint getFingerprint() {
+			return fFingerprint;
+		}
+
+		void setFingerprint(TargetStateIndex.Fingerprint fingerprint) {
+			fFingerprint = fingerprint;
+		}
+	}
+
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2010 IBM Corporation and others.
+ * Copyright (c) 2006, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,9 +10,11 @@
  *******************************************************************************/
 package org.eclipse.pde.internal.core;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -20,7 +22,6 @@ import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.FactoryConfigurationError;
 import javax.xml.parsers.ParserConfigurationException;
 import org.xml.sax.helpers.DefaultHandler;
 
@@ -32,6 +33,7 @@ import org.eclipse.pde.core.plugin.IPluginLibrary;
 import org.eclipse.pde.core.plugin.IPluginModelBase;
 import org.eclipse.pde.internal.core.ibundle.IBundleModel;
 import org.eclipse.pde.internal.core.ibundle.IBundlePluginModelBase;
+import org.eclipse.pde.internal.core.util.PDEXMLHelper;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.Constants;
 import org.w3c.dom.Document;
@@ -41,16 +43,29 @@ import org.w3c.dom.NodeList;
 
 /**
  * Stores additional information from the manifest files of plugins and stores
- * this information in separate xml file.  Accessed through PDEState.
+ * this information in a separate file.  Accessed through PDEState.
+ * <p>
+ * The information is persisted in a compact binary format with a shared string
+ * table.  When read, the binary file is loaded in one read and the information of a
+ * bundle is only decoded when it is first requested.  The older xml format is
+ * still read if no binary file exists, and written if the binary file cannot be.
+ * </p>
  */
 public class PDEAuxiliaryState {
 
 	private static String CACHE_EXTENSION = ".pluginInfo"; //$NON-NLS-1$
+	private static String BINARY_CACHE_EXTENSION = ".pluginInfo.bin"; //$NON-NLS-1$
+
+	private static final int BINARY_CACHE_MAGIC = 0x50444541; // "PDEA"
+	private static final int BINARY_CACHE_VERSION = 1;
+
+	private static final int FLAG_EXTENSIBLE_API = 0x1;
+	private static final int FLAG_PATCH = 0x2;
+	private static final int FLAG_BUNDLE_STRUCTURE = 0x4;
 
 	private static String ATTR_BUNDLE_ID = "bundleID"; //$NON-NLS-1$
 	private static String ATTR_BUNDLE_STRUCTURE = "isBundle"; //$NON-NLS-1$
 	private static String ATTR_CLASS = "class"; //$NON-NLS-1$
-	private static String ATTR_EXPORTED = "exported"; //$NON-NLS-1$
 	private static String ATTR_EXTENSIBLE_API = "hasExtensibleAPI"; //$NON-NLS-1$
 	private static String ATTR_LOCALIZATION = "localization"; //$NON-NLS-1$
 	private static String ATTR_NAME = "name"; //$NON-NLS-1$
@@ -63,8 +78,17 @@ public class PDEAuxiliaryState {
 	private static String ELEMENT_LIB = "library"; //$NON-NLS-1$
 	private static String ELEMENT_ROOT = "map"; //$NON-NLS-1$
 
+	/**
+	 * Map of bundle id (as a String) to {@link PluginInfo}.  A <code>null</code> value
+	 * hides an entry of the binary table.
+	 */
 	protected Map fPluginInfos;
 
+	/**
+	 * Entries read from a binary cache file that have not been decoded yet, or <code>null</code>
+	 */
+	private BinaryTable fBinaryTable;
+
 	/**
 	 * Constructor
 	 */
@@ -78,13 +102,17 @@ public class PDEAuxiliaryState {
 	 * @param state state containing plugin infos to initialize this state with 
 	 */
 	protected PDEAuxiliaryState(PDEAuxiliaryState state) {
-		fPluginInfos = new HashMap(state.fPluginInfos);
+		synchronized (state) {
+			fPluginInfos = new HashMap(state.fPluginInfos);
+			// the binary table is read only and can be shared
+			fBinaryTable = state.fBinaryTable;
+		}
 	}
 
 	/**
 	 * Provides a simple way of storing auxiliary data for a plugin 
 	 */
-	class PluginInfo {
+	static class PluginInfo {
 		String name;
 		String providerName;
 		String className;
@@ -132,61 +160,110 @@ public class PDEAuxiliaryState {
 		fPluginInfos.put(element.getAttribute(ATTR_BUNDLE_ID), info);
 	}
 
+	/**
+	 * Returns the plugin info of the given bundle, decoding it from the binary table
+	 * if it has not been requested before.
+	 */
+	private synchronized PluginInfo getPluginInfo(long bundleID) {
+		String key = Long.toString(bundleID);
+		if (fBinaryTable == null || fPluginInfos.containsKey(key))
+			return (PluginInfo) fPluginInfos.get(key);
+		PluginInfo info = fBinaryTable.decode(bundleID);
+		// remember misses as well, to avoid searching the table again
+		fPluginInfos.put(key, info);
+		return info;
+	}
+
+	/**
+	 * Decodes all entries of the binary table that have not been requested yet and
+	 * releases the table.
+	 */
+	private synchronized void decodeAll() {
+		if (fBinaryTable == null)
+			return;
+		long[] ids = fBinaryTable.getBundleIds();
+		for (int i = 0; i < ids.length; i++) {
+			getPluginInfo(ids[i]);
+		}
+		fBinaryTable = null;
+	}
+
 	public String getClassName(long bundleID) {
-		PluginInfo info = (PluginInfo) fPluginInfos.get(Long.toString(bundleID));
+		PluginInfo info = getPluginInfo(bundleID);
 		return info == null ? null : info.className;
 	}
 
 	public boolean hasExtensibleAPI(long bundleID) {
-		PluginInfo info = (PluginInfo) fPluginInfos.get(Long.toString(bundleID));
+		PluginInfo info = getPluginInfo(bundleID);
 		return info == null ? false : info.hasExtensibleAPI;
 	}
 
 	public boolean isPatchFragment(long bundleID) {
-		PluginInfo info = (PluginInfo) fPluginInfos.get(Long.toString(bundleID));
+		PluginInfo info = getPluginInfo(bundleID);
 		return info == null ? false : info.isPatchFragment;
 	}
 
 	public boolean hasBundleStructure(long bundleID) {
-		PluginInfo info = (PluginInfo) fPluginInfos.get(Long.toString(bundleID));
+		PluginInfo info = getPluginInfo(bundleID);
 		return info == null ? false : info.hasBundleStructure;
 	}
 
 	public String getPluginName(long bundleID) {
-		PluginInfo info = (PluginInfo) fPluginInfos.get(Long.toString(bundleID));
+		PluginInfo info = getPluginInfo(bundleID);
 		return info == null ? null : info.name;
 	}
 
 	public String getProviderName(long bundleID) {
-		PluginInfo info = (PluginInfo) fPluginInfos.get(Long.toString(bundleID));
+		PluginInfo info = getPluginInfo(bundleID);
 		return info == null ? null : info.providerName;
 	}
 
 	public String[] getLibraryNames(long bundleID) {
-		PluginInfo info = (PluginInfo) fPluginInfos.get(Long.toString(bundleID));
+		PluginInfo info = getPluginInfo(bundleID);
 		return info == null ? new String[0] : info.libraries;
 	}
 
 	public String getBundleLocalization(long bundleID) {
-		PluginInfo info = (PluginInfo) fPluginInfos.get(Long.toString(bundleID));
+		PluginInfo info = getPluginInfo(bundleID);
 		return info == null ? null : info.localization;
 	}
 
 	public String getProject(long bundleID) {
-		PluginInfo info = (PluginInfo) fPluginInfos.get(Long.toString(bundleID));
+		PluginInfo info = getPluginInfo(bundleID);
 		return info == null ? null : info.project;
 	}
 
 	public String getBundleSourceEntry(long bundleID) {
-		PluginInfo info = (PluginInfo) fPluginInfos.get(Long.toString(bundleID));
+		PluginInfo info = getPluginInfo(bundleID);
 		return info == null ? null : info.bundleSourceEntry;
 	}
 
+	/**
+	 * Stores the auxiliary plugin info in the given directory.  The binary format is
+	 * used unless it cannot be written, in which case an xml document is written instead.
+	 * @param dir directory location to create the file
+	 * @return whether the plugin info was saved
+	 */
+	protected synchronized boolean savePluginInfo(File dir) {
+		decodeAll();
+		File binary = new File(dir, BINARY_CACHE_EXTENSION);
+		try {
+			writeBinaryCache(fPluginInfos, binary);
+			new File(dir, CACHE_EXTENSION).delete();
+			return true;
+		} catch (IOException e) {
+			PDECore.log(e);
+			binary.delete();
+		}
+		return saveXMLPluginInfo(dir) && !binary.exists();
+	}
+
 	/**
 	 * Builds an xml document storing the auxiliary plugin info.
 	 * @param dir directory location to create the file
+	 * @return whether the file was written
 	 */
-	protected void savePluginInfo(File dir) {
+	private boolean saveXMLPluginInfo(File dir) {
 		try {
 			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
 			Document doc = factory.newDocumentBuilder().newDocument();
@@ -195,9 +272,11 @@ public class PDEAuxiliaryState {
 			Iterator iter = fPluginInfos.keySet().iterator();
 			while (iter.hasNext()) {
 				String key = iter.next().toString();
+				PluginInfo info = (PluginInfo) fPluginInfos.get(key);
+				if (info == null)
+					continue;
 				Element element = doc.createElement(ELEMENT_BUNDLE);
 				element.setAttribute(ATTR_BUNDLE_ID, key);
-				PluginInfo info = (PluginInfo) fPluginInfos.get(key);
 				if (info.className != null)
 					element.setAttribute(ATTR_CLASS, info.className);
 				if (info.providerName != null)
@@ -225,23 +304,35 @@ public class PDEAuxiliaryState {
 			}
 			doc.appendChild(root);
 			XMLPrintHandler.writeFile(doc, new File(dir, CACHE_EXTENSION));
+			return true;
 		} catch (Exception e) {
 			PDECore.log(e);
 		}
+		return false;
 	}
 
 	/**
-	 * Loads plugin info objects from the pluginInfo xml file stored in the
-	 * given directory.
+	 * Loads plugin info objects from the pluginInfo file stored in the
+	 * given directory.  A binary file is read into memory and its entries are only
+	 * decoded on demand; an xml file is parsed completely.
 	 * @param dir location to look for the pluginInfo file
 	 * @return true if the file was read successfully, false otherwise
 	 */
-	protected boolean readPluginInfoCache(File dir) {
+	protected synchronized boolean readPluginInfoCache(File dir) {
+		File binary = new File(dir, BINARY_CACHE_EXTENSION);
+		if (binary.isFile()) {
+			try {
+				fBinaryTable = BinaryTable.read(binary);
+				return true;
+			} catch (IOException e) {
+				PDECore.log(e);
+			}
+		}
 		File file = new File(dir, CACHE_EXTENSION);
 		if (file.exists() && file.isFile()) {
+			DocumentBuilder documentBuilder = null;
 			try {
-				DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-				DocumentBuilder documentBuilder = factory.newDocumentBuilder();
+				documentBuilder = PDEXMLHelper.Instance().getDefaultDOMParser();
 				documentBuilder.setErrorHandler(new DefaultHandler());
 				Document doc = documentBuilder.parse(file);
 				Element root = doc.getDocumentElement();
@@ -259,6 +350,9 @@ public class PDEAuxiliaryState {
 				PDECore.log(e);
 			} catch (ParserConfigurationException e) {
 				PDECore.log(e);
+			} finally {
+				if (documentBuilder != null)
+					PDEXMLHelper.Instance().recycleDOMParser(documentBuilder);
 			}
 		}
 		return false;
@@ -271,72 +365,47 @@ public class PDEAuxiliaryState {
 	 * @return whether the state file exist
 	 */
 	protected boolean exists(File dir) {
-		File file = new File(dir, CACHE_EXTENSION);
-		return file.exists() && file.isFile();
+		return new File(dir, BINARY_CACHE_EXTENSION).isFile() || new File(dir, CACHE_EXTENSION).isFile();
 	}
 
 	/**
-	 * Writes out auxiliary information from the given models to an xml file
+	 * Writes out auxiliary information from the given models to a file
 	 * in the given destination directory.
 	 * @param models models to collect information from
-	 * @param destination directory to create the xml file in
+	 * @param destination directory to create the file in
 	 */
 	public static void writePluginInfo(IPluginModelBase[] models, File destination) {
-		try {
-			DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-			Document doc = builder.newDocument();
-
-			Element root = doc.createElement(ELEMENT_ROOT);
-			doc.appendChild(root);
-			for (int i = 0; i < models.length; i++) {
-				IPluginBase plugin = models[i].getPluginBase();
-				BundleDescription desc = models[i].getBundleDescription();
-				if (desc == null)
-					continue;
-				Element element = doc.createElement(ELEMENT_BUNDLE);
-				element.setAttribute(ATTR_BUNDLE_ID, Long.toString(desc.getBundleId()));
-				element.setAttribute(ATTR_PROJECT, models[i].getUnderlyingResource().getProject().getName());
-				if (plugin instanceof IPlugin && ((IPlugin) plugin).getClassName() != null)
-					element.setAttribute(ATTR_CLASS, ((IPlugin) plugin).getClassName());
-				if (plugin.getProviderName() != null)
-					element.setAttribute(ATTR_PROVIDER, plugin.getProviderName());
-				if (plugin.getName() != null)
-					element.setAttribute(ATTR_NAME, plugin.getName());
-				if (ClasspathUtilCore.hasExtensibleAPI(models[i]))
-					element.setAttribute(ATTR_EXTENSIBLE_API, "true"); //$NON-NLS-1$ 
-				else if (ClasspathUtilCore.isPatchFragment(models[i]))
-					element.setAttribute(ATTR_PATCH, "true"); //$NON-NLS-1$ 
-				if (!(models[i] instanceof IBundlePluginModelBase))
-					element.setAttribute(ATTR_BUNDLE_STRUCTURE, "false"); //$NON-NLS-1$ 
-				if (models[i] instanceof IBundlePluginModelBase) {
-					String localization = ((IBundlePluginModelBase) models[i]).getBundleLocalization();
-					if (localization != null)
-						element.setAttribute(ATTR_LOCALIZATION, localization);
-				}
-				if (models[i] instanceof IBundlePluginModelBase) {
-					IBundleModel bundleModel = ((IBundlePluginModelBase) models[i]).getBundleModel();
-					if (bundleModel != null) {
-						String bundleSourceEntry = bundleModel.getBundle().getHeader(ICoreConstants.ECLIPSE_SOURCE_BUNDLE);
-						if (bundleSourceEntry != null) {
-							element.setAttribute(ATTR_BUNDLE_SOURCE, bundleSourceEntry);
-						}
-					}
-				}
-				IPluginLibrary[] libraries = plugin.getLibraries();
-				for (int j = 0; j < libraries.length; j++) {
-					Element lib = doc.createElement(ELEMENT_LIB);
-					lib.setAttribute(ATTR_NAME, libraries[j].getName());
-					if (!libraries[j].isExported())
-						lib.setAttribute(ATTR_EXPORTED, "false"); //$NON-NLS-1$ 
-					element.appendChild(lib);
-				}
-				root.appendChild(element);
+		PDEAuxiliaryState state = new PDEAuxiliaryState();
+		for (int i = 0; i < models.length; i++) {
+			IPluginBase plugin = models[i].getPluginBase();
+			BundleDescription desc = models[i].getBundleDescription();
+			if (desc == null)
+				continue;
+			PluginInfo info = new PluginInfo();
+			info.project = models[i].getUnderlyingResource().getProject().getName();
+			if (plugin instanceof IPlugin)
+				info.className = ((IPlugin) plugin).getClassName();
+			info.providerName = plugin.getProviderName();
+			info.name = plugin.getName();
+			if (ClasspathUtilCore.hasExtensibleAPI(models[i]))
+				info.hasExtensibleAPI = true;
+			else if (ClasspathUtilCore.isPatchFragment(models[i]))
+				info.isPatchFragment = true;
+			info.hasBundleStructure = models[i] instanceof IBundlePluginModelBase;
+			if (models[i] instanceof IBundlePluginModelBase) {
+				info.localization = ((IBundlePluginModelBase) models[i]).getBundleLocalization();
+				IBundleModel bundleModel = ((IBundlePluginModelBase) models[i]).getBundleModel();
+				if (bundleModel != null)
+					info.bundleSourceEntry = bundleModel.getBundle().getHeader(ICoreConstants.ECLIPSE_SOURCE_BUNDLE);
 			}
-			XMLPrintHandler.writeFile(doc, new File(destination, CACHE_EXTENSION));
-		} catch (ParserConfigurationException e) {
-		} catch (FactoryConfigurationError e) {
-		} catch (IOException e) {
+			IPluginLibrary[] libraries = plugin.getLibraries();
+			info.libraries = new String[libraries.length];
+			for (int j = 0; j < libraries.length; j++) {
+				info.libraries[j] = libraries[j].getName();
+			}
+			state.fPluginInfos.put(Long.toString(desc.getBundleId()), info);
 		}
+		state.savePluginInfo(destination);
 	}
 
 	/**
@@ -361,6 +430,17 @@ public class PDEAuxiliaryState {
 		fPluginInfos.put(Long.toString(desc.getBundleId()), info);
 	}
 
+	/**
+	 * Removes the auxiliary data stored for the given bundle.
+	 * @param bundleID id of the bundle
+	 */
+	protected synchronized void removeAuxiliaryData(long bundleID) {
+		if (fBinaryTable == null)
+			fPluginInfos.remove(Long.toString(bundleID));
+		else
+			fPluginInfos.put(Long.toString(bundleID), null);
+	}
+
 	/**
 	 * Retrieves the classpath entries from the manifest dictionary
 	 * @param manifest dictionary containing manifest headers
@@ -385,8 +465,251 @@ public class PDEAuxiliaryState {
 	/**
 	 * Clears the plugin info object map.
 	 */
-	protected void clear() {
+	protected synchronized void clear() {
 		fPluginInfos.clear();
+		fBinaryTable = null;
+	}
+
+	/**
+	 * Writes the given plugin infos in the binary format: a header, a string table
+	 * holding every distinct string once, an index of bundle ids sorted for binary
+	 * search and the entries themselves, which refer to strings by their index.
+	 * <p>
+	 * The file is written under a temporary name and renamed when complete, so a
+	 * failed write never leaves a truncated cache behind.
+	 * </p>
+	 * 
+	 * @param infos map of bundle id to plugin info, <code>null</code> values are skipped
+	 * @param file file to write
+	 * @throws IOException if the file could not be written
+	 */
+	private static void writeBinaryCache(Map infos, File file) throws IOException {
+		ArrayList ids = new ArrayList(infos.size());
+		Iterator iter = infos.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry entry = (Map.Entry) iter.next();
+			if (entry.getValue() != null)
+				ids.add(Long.valueOf((String) entry.getKey()));
+		}
+		long[] sortedIds = new long[ids.size()];
+		for (int i = 0; i < sortedIds.length; i++) {
+			sortedIds[i] = ((Long) ids.get(i)).longValue();
+		}
+		Arrays.sort(sortedIds);
+
+		// encode the entries, collecting the strings they use
+		Map stringIndex = new HashMap();
+		ArrayList strings = new ArrayList();
+		int[] entryOffsets = new int[sortedIds.length];
+		ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+		DataOutputStream entryData = new DataOutputStream(entryBytes);
+		for (int i = 0; i < sortedIds.length; i++) {
+			PluginInfo info = (PluginInfo) infos.get(Long.toString(sortedIds[i]));
+			entryOffsets[i] = entryData.size();
+			int flags = 0;
+			if (info.hasExtensibleAPI)
+				flags |= FLAG_EXTENSIBLE_API;
+			if (info.isPatchFragment)
+				flags |= FLAG_PATCH;
+			if (info.hasBundleStructure)
+				flags |= FLAG_BUNDLE_STRUCTURE;
+			entryData.writeByte(flags);
+			entryData.writeInt(indexOf(info.name, stringIndex, strings));
+			entryData.writeInt(indexOf(info.providerName, stringIndex, strings));
+			entryData.writeInt(indexOf(info.className, stringIndex, strings));
+			entryData.writeInt(indexOf(info.project, stringIndex, strings));
+			entryData.writeInt(indexOf(info.localization, stringIndex, strings));
+			entryData.writeInt(indexOf(info.bundleSourceEntry, stringIndex, strings));
+			String[] libraries = info.libraries == null ? new String[0] : info.libraries;
+			entryData.writeInt(libraries.length);
+			for (int j = 0; j < libraries.length; j++) {
+				entryData.writeInt(indexOf(libraries[j], stringIndex, strings));
+			}
+		}
+		entryData.flush();
+
+		int[] stringOffsets = new int[strings.size()];
+		ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+		DataOutputStream stringData = new DataOutputStream(stringBytes);
+		for (int i = 0; i < stringOffsets.length; i++) {
+			stringOffsets[i] = stringData.size();
+			byte[] bytes = ((String) strings.get(i)).getBytes("UTF-8"); //$NON-NLS-1$
+			stringData.writeInt(bytes.length);
+			stringData.write(bytes);
+		}
+		stringData.flush();
+
+		int headerSize = 4 * 3 + 4 * stringOffsets.length + 4 + 12 * sortedIds.length;
+		int stringStart = headerSize;
+		int entryStart = stringStart + stringBytes.size();
+
+		File temp = new File(file.getParentFile(), file.getName() + ".tmp"); //$NON-NLS-1$
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		boolean written = false;
+		try {
+			out.writeInt(BINARY_CACHE_MAGIC);
+			out.writeInt(BINARY_CACHE_VERSION);
+			out.writeInt(stringOffsets.length);
+			for (int i = 0; i < stringOffsets.length; i++) {
+				out.writeInt(stringStart + stringOffsets[i]);
+			}
+			out.writeInt(sortedIds.length);
+			for (int i = 0; i < sortedIds.length; i++) {
+				out.writeLong(sortedIds[i]);
+				out.writeInt(entryStart + entryOffsets[i]);
+			}
+			stringBytes.writeTo(out);
+			entryBytes.writeTo(out);
+			out.close();
+			written = true;
+		} finally {
+			if (!written) {
+				out.close();
+				temp.delete();
+			}
+		}
+		// renaming over an existing file fails on some platforms
+		if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+			temp.delete();
+			throw new IOException("Could not replace plug-in info cache: " + file.getAbsolutePath()); //$NON-NLS-1$
+		}
+	}
+
+	private static int indexOf(String value, Map stringIndex, ArrayList strings) {
+		if (value == null)
+			return -1;
+		Integer index = (Integer) stringIndex.get(value);
+		if (index == null) {
+			index = new Integer(strings.size());
+			strings.add(value);
+			stringIndex.put(value, index);
+		}
+		return index.intValue();
+	}
+
+	/**
+	 * Read only view of a binary plugin info file.  The file is read completely rather
+	 * than memory mapped, so it can be replaced while tables read from it are still in
+	 * use.  Strings and entries are decoded on demand using absolute reads, so the buffer
+	 * position is never changed.
+	 */
+	private static class BinaryTable {
+
+		private ByteBuffer fBuffer;
+		private int fStringCount;
+		private int fStringTable;
+		private int fEntryCount;
+		private int fEntryIndex;
+		private String[] fStrings;
+
+		static BinaryTable read(File file) throws IOException {
+			FileInputStream in = new FileInputStream(file);
+			try {
+				FileChannel channel = in.getChannel();
+				long size = channel.size();
+				if (size > Integer.MAX_VALUE)
+					throw new IOException("Corrupt plug-in info cache: " + file.getAbsolutePath()); //$NON-NLS-1$
+				ByteBuffer buffer = ByteBuffer.allocate((int) size);
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer) < 0)
+						throw new IOException("Corrupt plug-in info cache: " + file.getAbsolutePath()); //$NON-NLS-1$
+				}
+				return new BinaryTable(buffer, file);
+			} finally {
+				in.close();
+			}
+		}
+
+		private BinaryTable(ByteBuffer buffer, File file) throws IOException {
+			fBuffer = buffer;
+			try {
+				if (buffer.getInt(0) != BINARY_CACHE_MAGIC || buffer.getInt(4) != BINARY_CACHE_VERSION)
+					throw new IOException("Unsupported plug-in info cache format: " + file.getAbsolutePath()); //$NON-NLS-1$
+				fStringCount = buffer.getInt(8);
+				fStringTable = 12;
+				fEntryIndex = fStringTable + 4 * fStringCount + 4;
+				fEntryCount = buffer.getInt(fEntryIndex - 4);
+				if (fStringCount < 0 || fEntryCount < 0 || fEntryIndex + 12L * fEntryCount > buffer.limit())
+					throw new IOException("Corrupt plug-in info cache: " + file.getAbsolutePath()); //$NON-NLS-1$
+			} catch (IndexOutOfBoundsException e) {
+				throw new IOException("Corrupt plug-in info cache: " + file.getAbsolutePath()); //$NON-NLS-1$
+			}
+			fStrings = new String[fStringCount];
+		}
+
+		long[] getBundleIds() {
+			long[] ids = new long[fEntryCount];
+			for (int i = 0; i < fEntryCount; i++) {
+				ids[i] = fBuffer.getLong(fEntryIndex + 12 * i);
+			}
+			return ids;
+		}
+
+		/**
+		 * Returns the decoded plugin info of the given bundle or <code>null</code> if
+		 * the table has no entry for the bundle.
+		 */
+		synchronized PluginInfo decode(long bundleID) {
+			try {
+				int low = 0;
+				int high = fEntryCount - 1;
+				while (low <= high) {
+					int mid = (low + high) >>> 1;
+					long id = fBuffer.getLong(fEntryIndex + 12 * mid);
+					if (id < bundleID)
+						low = mid + 1;
+					else if (id > bundleID)
+						high = mid - 1;
+					else
+						return decodeEntry(fBuffer.getInt(fEntryIndex + 12 * mid + 8));
+				}
+			} catch (RuntimeException e) {
+				// corrupt file, treat as a missing entry
+				PDECore.log(e);
+			}
+			return null;
+		}
+
+		private PluginInfo decodeEntry(int offset) {
+			PluginInfo info = new PluginInfo();
+			int flags = fBuffer.get(offset);
+			info.hasExtensibleAPI = (flags & FLAG_EXTENSIBLE_API) != 0;
+			info.isPatchFragment = (flags & FLAG_PATCH) != 0;
+			info.hasBundleStructure = (flags & FLAG_BUNDLE_STRUCTURE) != 0;
+			offset += 1;
+			info.name = getString(fBuffer.getInt(offset));
+			info.providerName = getString(fBuffer.getInt(offset + 4));
+			info.className = getString(fBuffer.getInt(offset + 8));
+			info.project = getString(fBuffer.getInt(offset + 12));
+			info.localization = getString(fBuffer.getInt(offset + 16));
+			info.bundleSourceEntry = getString(fBuffer.getInt(offset + 20));
+			int libraryCount = fBuffer.getInt(offset + 24);
+			offset += 28;
+			info.libraries = new String[libraryCount];
+			for (int i = 0; i < libraryCount; i++) {
+				info.libraries[i] = getString(fBuffer.getInt(offset + 4 * i));
+			}
+			return info;
+		}
+
+		private String getString(int index) {
+			if (index < 0)
+				return null;
+			if (fStrings[index] == null) {
+				int offset = fBuffer.getInt(fStringTable + 4 * index);
+				int length = fBuffer.getInt(offset);
+				byte[] bytes = new byte[length];
+				for (int i = 0; i < length; i++) {
+					bytes[i] = fBuffer.get(offset + 4 + i);
+				}
+				try {
+					fStrings[index] = new String(bytes, "UTF-8"); //$NON-NLS-1$
+				} catch (UnsupportedEncodingException e) {
+					fStrings[index] = new String(bytes);
+				}
+			}
+			return fStrings[index];
+		}
 	}
 
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2005, 2011 IBM Corporation and others.
+ *  Copyright (c) 2005, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -31,6 +31,10 @@ public class PDEClasspathContainer {
 			return discouraged == ((Rule) other).discouraged && path.equals(((Rule) other).path);
 		}
 
+		public int hashCode() {
+			return discouraged ? path.hashCode() + 1 : path.hashCode();
+		}
+
 		public String toString() {
 			return discouraged ? path.toString() + " [discouraged]" : path.toString(); //$NON-NLS-1$
 		}
@@ -107,6 +111,10 @@ public class PDEClasspathContainer {
 	}
 
 	protected static IAccessRule[] getAccessRules(Rule[] rules) {
+		return ClasspathRuleCache.getAccessRules(rules);
+	}
+
+	static IAccessRule[] createAccessRules(Rule[] rules) {
 		IAccessRule[] accessRules = new IAccessRule[rules.length + 1];
 		for (int i = 0; i < rules.length; i++) {
 			Rule rule = rules[i];
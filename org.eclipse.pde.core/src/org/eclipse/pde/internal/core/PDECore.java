@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -19,6 +19,7 @@ import org.eclipse.core.runtime.*;
 import org.eclipse.jdt.launching.JavaRuntime;
 import org.eclipse.pde.core.plugin.IPluginModelBase;
 import org.eclipse.pde.core.project.IBundleProjectService;
+import org.eclipse.pde.internal.core.builders.ExportedPackageIndex;
 import org.eclipse.pde.internal.core.builders.FeatureRebuilder;
 import org.eclipse.pde.internal.core.builders.PluginRebuilder;
 import org.eclipse.pde.internal.core.project.BundleProjectService;
@@ -140,6 +141,8 @@ public class PDECore extends Plugin {
 
 	private PluginRebuilder fPluginRebuilder;
 
+	private ExportedPackageIndex fExportedPackageIndex;
+
 	/**
 	 * Target platform service.
 	 */
@@ -192,6 +195,10 @@ public class PDECore extends Plugin {
 		return fFeatureModelManager;
 	}
 
+	public ExportedPackageIndex getExportedPackageIndex() {
+		return fExportedPackageIndex;
+	}
+
 	public JavaElementChangeListener getJavaElementChangeListener() {
 		return fJavaElementChangeListener;
 	}
@@ -246,6 +253,8 @@ public class PDECore extends Plugin {
 		fJavaElementChangeListener.start();
 		fPluginRebuilder = new PluginRebuilder();
 		fPluginRebuilder.start();
+		fExportedPackageIndex = new ExportedPackageIndex();
+		fExportedPackageIndex.start();
 		fFeatureRebuilder = new FeatureRebuilder();
 		fFeatureRebuilder.start();
 
@@ -295,6 +304,7 @@ public class PDECore extends Plugin {
 
 		fJavaElementChangeListener.shutdown();
 		fPluginRebuilder.stop();
+		fExportedPackageIndex.stop();
 		fFeatureRebuilder.stop();
 
 		if (fSchemaRegistry != null) {
@@ -294,7 +294,7 @@ public class PDERegistryStrategy extends RegistryStrategy {
 		fPDERegistry.getRegistry();
 	}
 
-	// Same timestamp calculations as PDEState.computeTimestamp(URL[] urls, long timestamp)
+	// Timestamp computed from the locations of the contributions and the modification times of their manifests
 	public long getContributionsTimestamp() {
 		IPluginModelBase[] bases = fPDERegistry.getModels();
 		long timeStamp = 0;
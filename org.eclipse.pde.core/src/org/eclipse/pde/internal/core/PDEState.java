@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2010 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,6 +14,7 @@ package org.eclipse.pde.internal.core;
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.security.MessageDigest;
 import java.util.*;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
@@ -28,6 +29,7 @@ import org.eclipse.pde.internal.core.plugin.*;
 import org.eclipse.pde.internal.core.project.PDEProject;
 import org.eclipse.pde.internal.core.target.provisional.LoadTargetDefinitionJob;
 import org.eclipse.pde.internal.core.util.CoreUtility;
+import org.eclipse.pde.internal.core.util.WorkerPool;
 
 public class PDEState extends MinimalState {
 
@@ -39,6 +41,16 @@ public class PDEState extends MinimalState {
 	private long fTargetTimestamp;
 	private boolean fNewState;
 
+	private TargetStateIndex fTargetIndex = new TargetStateIndex();
+
+	/**
+	 * Result of a {@link ParseWorker} for a location that is not a valid bundle.  A
+	 * <code>null</code> result means the location was not processed.
+	 */
+	private static final Object NO_BUNDLE = new Object();
+	// whether the target bundles differ from the persisted target state
+	private boolean fTargetChanged;
+
 	/**
 	 * Creates a deep copy of the PDEState and its external models.  None of the workspace models are included in the copy.
 	 * @param state
@@ -47,6 +59,7 @@ public class PDEState extends MinimalState {
 		super(state);
 		fCombined = false;
 		fTargetTimestamp = state.fTargetTimestamp;
+		fTargetIndex = new TargetStateIndex(state.fTargetIndex);
 		// make sure to copy auxiliary state before trying to copy models, otherwise you will get NPEs.  Need auxiliary data to accurate create new models.
 		copyAuxiliaryState();
 		copyModels(state);
@@ -116,15 +129,16 @@ public class PDEState extends MinimalState {
 	}
 
 	private void readTargetState(URL[] urls, IProgressMonitor monitor) {
-		fTargetTimestamp = computeTimestamp(urls);
+		fTargetTimestamp = TargetStateIndex.computeLocationKey(urls, 0);
 		if (DEBUG) {
 			System.out.println("Timestamp of " + urls.length + " target URLS: " + fTargetTimestamp); //$NON-NLS-1$ //$NON-NLS-2$
 		}
 		File dir = new File(DIR, Long.toString(fTargetTimestamp) + ".target"); //$NON-NLS-1$
-		if ((fState = readStateCache(dir)) == null || !fAuxiliaryState.readPluginInfoCache(dir)) {
+		if ((fState = readStateCache(dir)) == null || !fAuxiliaryState.readPluginInfoCache(dir) || !fTargetIndex.read(dir)) {
 			if (DEBUG) {
 				System.out.println("Creating new state, persisted state did not exist"); //$NON-NLS-1$
 			}
+			fTargetIndex.clear();
 			createNewTargetState(true, urls, monitor);
 			resolveState(false);
 		} else {
@@ -138,35 +152,202 @@ public class PDEState extends MinimalState {
 					fSystemBundle = systemBundle;
 			}
 
-			boolean propertiesChanged = initializePlatformProperties();
 			fState.setResolver(Platform.getPlatformAdmin().createResolver());
-			if (propertiesChanged)
-				fState.resolve(false);
 			fId = fState.getHighestBundleId();
+			boolean bundlesChanged = updateChangedBundles(urls, monitor);
+			boolean propertiesChanged = initializePlatformProperties();
+			if (propertiesChanged || bundlesChanged)
+				resolved(fState.resolve(false));
+			fId = Math.max(fId, fState.getHighestBundleId());
+		}
+	}
+
+	/**
+	 * Compares the fingerprints of the given target bundles with those stored when the
+	 * restored state was saved and re-parses the bundles that changed.  Bundles whose
+	 * manifest is unchanged even though their size or modification time changed are not
+	 * updated in the state.
+	 * 
+	 * @param urls locations of the target bundles
+	 * @param monitor progress monitor
+	 * @return whether any bundle description in the state was added, updated or removed
+	 */
+	private boolean updateChangedBundles(URL[] urls, IProgressMonitor monitor) {
+		boolean modified = false;
+		ArrayList candidates = new ArrayList();
+		for (int i = 0; i < urls.length; i++) {
+			File file = new File(urls[i].getFile());
+			TargetStateIndex.Fingerprint stamp = TargetStateIndex.createStamp(file);
+			if (stamp == null) {
+				// the bundle no longer exists
+				modified |= removeTargetBundle(file);
+			} else if (!stamp.hasSameStamp(fTargetIndex.getFingerprint(file))) {
+				candidates.add(file);
+			}
+		}
+		if (DEBUG) {
+			System.out.println(candidates.size() + " target bundles have a different size or time stamp"); //$NON-NLS-1$
+		}
+		if (candidates.isEmpty()) {
+			fTargetChanged |= modified;
+			return modified;
+		}
+
+		File[] files = (File[]) candidates.toArray(new File[candidates.size()]);
+		monitor.beginTask("", files.length); //$NON-NLS-1$
+		Object[] results = new WorkerPool("PDE Target Scanner").process(files, new ParseWorker(), monitor); //$NON-NLS-1$
+		if (monitor.isCanceled()) {
+			// keep the restored bundles, their stamps still differ and they are parsed again next time
+			monitor.done();
+			fTargetChanged |= modified;
+			return modified;
+		}
+		for (int i = 0; i < files.length; i++) {
+			if (results[i] == null) {
+				// not processed, the worker failed
+				continue;
+			}
+			if (results[i] == NO_BUNDLE) {
+				modified |= removeTargetBundle(files[i]);
+				continue;
+			}
+			ParsedBundle bundle = (ParsedBundle) results[i];
+			BundleDescription previous = fState.getBundleByLocation(files[i].getAbsolutePath());
+			TargetStateIndex.Fingerprint fingerprint = fTargetIndex.getFingerprint(files[i]);
+			if (previous != null && fingerprint != null && bundle.getFingerprint() != null && fingerprint.manifestHash == bundle.getFingerprint().manifestHash) {
+				// touched, but the manifest is the same, only remember the new time stamp
+				recordFingerprint(bundle);
+				fTargetChanged = true;
+				continue;
+			}
+			if (previous == null) {
+				// a new bundle id may collide with the ids of a cached workspace state
+				fNewState = true;
+			}
+			addTargetBundle(bundle, previous == null ? -1 : previous.getBundleId());
+			modified = true;
 		}
+		monitor.done();
+		fTargetChanged |= modified;
+		return modified;
+	}
+
+	private boolean removeTargetBundle(File file) {
+		fTargetIndex.setFingerprint(file, null);
+		BundleDescription desc = fState.getBundleByLocation(file.getAbsolutePath());
+		if (desc == null)
+			return false;
+		fAuxiliaryState.removeAuxiliaryData(desc.getBundleId());
+		fState.removeBundle(desc);
+		return true;
+	}
+
+	/**
+	 * Adds a parsed target bundle to the state and records its fingerprint.
+	 */
+	private BundleDescription addTargetBundle(ParsedBundle bundle, long bundleId) {
+		recordFingerprint(bundle);
+		return addBundle(bundle, bundleId);
+	}
+
+	private void recordFingerprint(ParsedBundle bundle) {
+		fTargetIndex.setFingerprint(bundle.getLocation(), bundle.getFingerprint());
+	}
+
+	/**
+	 * Reads the manifest of a target bundle and takes its fingerprint.  The stamp is
+	 * taken before the manifest is read, so a bundle changed while it is read is parsed
+	 * again the next time.  Can be called from worker threads.
+	 * 
+	 * @param file bundle location
+	 * @return the parsed bundle or <code>null</code> if the location is not a bundle
+	 */
+	private ParsedBundle parseTargetBundle(File file) throws PluginConversionException, CoreException, IOException {
+		TargetStateIndex.Fingerprint fingerprint = TargetStateIndex.createStamp(file);
+		ParsedBundle bundle = parseBundle(file);
+		if (bundle != null && fingerprint != null) {
+			fingerprint.manifestHash = TargetStateIndex.computeManifestHash(bundle.getManifest());
+			bundle.setFingerprint(fingerprint);
+		}
+		return bundle;
 	}
 
 	private void createNewTargetState(boolean resolve, URL[] urls, IProgressMonitor monitor) {
 		fState = stateObjectFactory.createState(resolve);
 		monitor.beginTask("", urls.length); //$NON-NLS-1$
+		WorkerPool pool = new WorkerPool("PDE Target Scanner"); //$NON-NLS-1$
+		if (pool.getSize() > 1 && urls.length > 1) {
+			scanTargetBundles(pool, urls, monitor);
+			if (monitor.isCanceled())
+				return;
+		} else {
+			for (int i = 0; i < urls.length; i++) {
+				File file = new File(urls[i].getFile());
+				try {
+					if (monitor.isCanceled())
+						// if canceled, stop loading bundles
+						return;
+					monitor.subTask(file.getName());
+					ParsedBundle bundle = parseTargetBundle(file);
+					if (bundle != null)
+						addTargetBundle(bundle, -1);
+				} catch (PluginConversionException e) {
+				} catch (CoreException e) {
+				} catch (IOException e) {
+					logInvalidManifest(file);
+				} finally {
+					monitor.worked(1);
+				}
+			}
+		}
+		fNewState = true;
+	}
+
+	/**
+	 * Reads the manifests of all target bundles on the given pool and then adds them to the
+	 * state in the order of the URLs, so that bundle ids are the same as in a serial scan.
+	 * 
+	 * @param pool pool used to read the manifests
+	 * @param urls locations of the target bundles
+	 * @param monitor progress monitor, receives one unit of work per URL
+	 */
+	private void scanTargetBundles(WorkerPool pool, URL[] urls, IProgressMonitor monitor) {
+		File[] files = new File[urls.length];
 		for (int i = 0; i < urls.length; i++) {
-			File file = new File(urls[i].getFile());
+			files[i] = new File(urls[i].getFile());
+		}
+		Object[] results = pool.process(files, new ParseWorker(), monitor);
+		if (monitor.isCanceled())
+			return;
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] instanceof ParsedBundle)
+				addTargetBundle((ParsedBundle) results[i], -1);
+		}
+	}
+
+	/**
+	 * Reads the manifest of a bundle location on a worker thread.  Returns the
+	 * {@link ParsedBundle} or {@link PDEState#NO_BUNDLE}.
+	 */
+	private class ParseWorker implements WorkerPool.IWorker {
+		public Object process(Object item, IProgressMonitor monitor) {
+			File file = (File) item;
 			try {
-				if (monitor.isCanceled())
-					// if canceled, stop loading bundles
-					return;
-				monitor.subTask(file.getName());
-				addBundle(file, -1);
+				ParsedBundle bundle = parseTargetBundle(file);
+				if (bundle != null)
+					return bundle;
 			} catch (PluginConversionException e) {
 			} catch (CoreException e) {
 			} catch (IOException e) {
-				PDECore.log(new Status(IStatus.ERROR, PDECore.PLUGIN_ID, IStatus.ERROR, "Invalid manifest format at " + file.getAbsolutePath(), //$NON-NLS-1$
-						null));
-			} finally {
-				monitor.worked(1);
+				logInvalidManifest(file);
 			}
+			return NO_BUNDLE;
 		}
-		fNewState = true;
+	}
+
+	private void logInvalidManifest(File file) {
+		PDECore.log(new Status(IStatus.ERROR, PDECore.PLUGIN_ID, IStatus.ERROR, "Invalid manifest format at " + file.getAbsolutePath(), //$NON-NLS-1$
+				null));
 	}
 
 	protected void addAuxiliaryData(BundleDescription desc, Dictionary manifest, boolean hasBundleStructure) {
@@ -238,7 +419,7 @@ public class PDEState extends MinimalState {
 				}
 			}
 			fId = Math.max(fId, fState.getBundles().length);
-			fState.resolve(false);
+			resolved(fState.resolve(false));
 		}
 	}
 
@@ -262,41 +443,37 @@ public class PDEState extends MinimalState {
 		return null;
 	}
 
+	/**
+	 * Computes the key of a workspace state cache from the locations of the given
+	 * projects and the modification times of their manifest files.
+	 */
 	private long computeTimestamp(URL[] urls) {
-		return computeTimestamp(urls, 0);
-	}
-
-	private long computeTimestamp(URL[] urls, long timestamp) {
-		List sorted = new ArrayList(urls.length);
+		String[] paths = new String[urls.length];
 		for (int i = 0; i < urls.length; i++) {
-			sorted.add(urls[i]);
+			paths[i] = new File(urls[i].getFile()).getAbsolutePath();
 		}
-		Collections.sort(sorted, new Comparator() {
-			public int compare(Object o1, Object o2) {
-				return ((URL) o1).toExternalForm().compareTo(((URL) o2).toExternalForm());
-			}
-		});
-		URL[] sortedURLs = (URL[]) sorted.toArray(new URL[sorted.size()]);
-		for (int i = 0; i < sortedURLs.length; i++) {
-			File file = new File(sortedURLs[i].getFile());
+		Arrays.sort(paths);
+		MessageDigest digest = TargetStateIndex.createDigest();
+		for (int i = 0; i < paths.length; i++) {
+			File file = new File(paths[i]);
 			if (file.exists()) {
 				if (file.isFile()) {
-					timestamp ^= file.lastModified();
+					TargetStateIndex.update(digest, Long.toString(file.lastModified()));
 				} else {
 					File manifest = new File(file, ICoreConstants.BUNDLE_FILENAME_DESCRIPTOR);
 					if (manifest.exists())
-						timestamp ^= manifest.lastModified();
+						TargetStateIndex.update(digest, Long.toString(manifest.lastModified()));
 					manifest = new File(file, ICoreConstants.PLUGIN_FILENAME_DESCRIPTOR);
 					if (manifest.exists())
-						timestamp ^= manifest.lastModified();
+						TargetStateIndex.update(digest, Long.toString(manifest.lastModified()));
 					manifest = new File(file, ICoreConstants.FRAGMENT_FILENAME_DESCRIPTOR);
 					if (manifest.exists())
-						timestamp ^= manifest.lastModified();
+						TargetStateIndex.update(digest, Long.toString(manifest.lastModified()));
 				}
-				timestamp ^= file.getAbsolutePath().toLowerCase().hashCode();
+				TargetStateIndex.update(digest, file.getAbsolutePath().toLowerCase());
 			}
 		}
-		return timestamp;
+		return TargetStateIndex.toLong(digest.digest());
 	}
 
 	private IPluginModelBase createWorkspaceModel(BundleDescription desc) {
@@ -378,12 +555,13 @@ public class PDEState extends MinimalState {
 				return;
 			}
 		}
-		fTargetTimestamp = computeTimestamp(urls);
+		fTargetTimestamp = TargetStateIndex.computeLocationKey(urls, 0);
 		File dir = new File(DIR, Long.toString(fTargetTimestamp) + ".target"); //$NON-NLS-1$
 
 		boolean osgiStateExists = dir.exists() && dir.isDirectory();
 		boolean auxStateExists = fAuxiliaryState.exists(dir);
-		if (!osgiStateExists || !auxStateExists) {
+		boolean indexExists = fTargetIndex.exists(dir);
+		if (!osgiStateExists || !auxStateExists || !indexExists || fTargetChanged) {
 			if (!dir.exists())
 				dir.mkdirs();
 			if (DEBUG) {
@@ -395,13 +573,37 @@ public class PDEState extends MinimalState {
 				if (desc != null)
 					state.addBundle(state.getFactory().createBundleDescription(desc));
 			}
-			fAuxiliaryState.savePluginInfo(dir);
-			saveState(state, dir);
+			if (fAuxiliaryState.savePluginInfo(dir)) {
+				saveState(state, dir);
+				saveTargetIndex(urls, dir);
+				fTargetChanged = false;
+			} else {
+				// without up to date plug-in info the persisted state must not be reused
+				fTargetIndex.delete(dir);
+			}
 		} else if (DEBUG) {
 			System.out.println("External state unchanged, save skipped."); //$NON-NLS-1$
 		}
 	}
 
+	/**
+	 * Writes the fingerprints of the given target bundles to the given state cache
+	 * directory.  The fingerprints are taken when the bundles are parsed.  Bundles
+	 * without a fingerprint are left out of the index and parsed again when the state
+	 * is restored.
+	 */
+	private void saveTargetIndex(URL[] urls, File dir) {
+		TargetStateIndex index = new TargetStateIndex();
+		for (int i = 0; i < urls.length; i++) {
+			File file = new File(urls[i].getFile());
+			TargetStateIndex.Fingerprint fingerprint = fTargetIndex.getFingerprint(file);
+			if (fingerprint != null)
+				index.setFingerprint(file, fingerprint);
+		}
+		index.write(dir);
+		fTargetIndex = index;
+	}
+
 	/**
 	 * Save state associated with workspace models and deletes persisted
 	 * files associated with other time stamps.
@@ -518,7 +720,8 @@ public class PDEState extends MinimalState {
 		for (int i = 0; i < newBundleURLs.length; i++) {
 			File file = new File(newBundleURLs[i].getFile());
 			try {
-				BundleDescription desc = addBundle(file, -1);
+				ParsedBundle bundle = parseTargetBundle(file);
+				BundleDescription desc = bundle == null ? null : addTargetBundle(bundle, -1);
 				if (desc != null)
 					descriptions.add(desc);
 			} catch (PluginConversionException e) {
@@ -529,12 +732,16 @@ public class PDEState extends MinimalState {
 			}
 		}
 		// compute Timestamp and save all new information
-		fTargetTimestamp = computeTimestamp(newBundleURLs, fTargetTimestamp);
+		fTargetTimestamp = TargetStateIndex.computeLocationKey(newBundleURLs, fTargetTimestamp);
 		File dir = new File(DIR, Long.toString(fTargetTimestamp) + ".target"); //$NON-NLS-1$
 		if (!dir.exists())
 			dir.mkdirs();
-		fAuxiliaryState.savePluginInfo(dir);
-		saveState(dir);
+		if (fAuxiliaryState.savePluginInfo(dir)) {
+			saveState(dir);
+			fTargetIndex.write(dir);
+		} else {
+			fTargetIndex.delete(dir);
+		}
 
 		// resolve state - same steps as when populating a new State
 		resolveState(false);
@@ -542,6 +749,88 @@ public class PDEState extends MinimalState {
 		return (BundleDescription[]) descriptions.toArray(new BundleDescription[descriptions.size()]);
 	}
 
+	/**
+	 * Reads the manifests of the bundles at the given locations on a worker pool.  This
+	 * state is not modified, the result is passed to {@link #addTargetBundles(ParsedBundle[])}.
+	 * 
+	 * @param urls locations of the bundles to read
+	 * @param monitor progress monitor
+	 * @return the parsed bundles in the order of the locations, without the locations that
+	 *  are not bundles, or <code>null</code> if the monitor was canceled
+	 */
+	ParsedBundle[] parseTargetBundles(URL[] urls, IProgressMonitor monitor) {
+		File[] files = new File[urls.length];
+		for (int i = 0; i < urls.length; i++) {
+			files[i] = new File(urls[i].getFile());
+		}
+		monitor.beginTask("", files.length); //$NON-NLS-1$
+		Object[] results = new WorkerPool("PDE Target Scanner").process(files, new ParseWorker(), monitor); //$NON-NLS-1$
+		monitor.done();
+		if (monitor.isCanceled())
+			return null;
+		ArrayList bundles = new ArrayList(results.length);
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] instanceof ParsedBundle)
+				bundles.add(results[i]);
+		}
+		return (ParsedBundle[]) bundles.toArray(new ParsedBundle[bundles.size()]);
+	}
+
+	/**
+	 * Adds parsed bundles to the target part of this state in the given order.  The state
+	 * is not resolved.
+	 * 
+	 * @param bundles bundles returned by {@link #parseTargetBundles(URL[], IProgressMonitor)}
+	 * @return the external models created for the added bundles
+	 */
+	IPluginModelBase[] addTargetBundles(ParsedBundle[] bundles) {
+		ArrayList models = new ArrayList(bundles.length);
+		for (int i = 0; i < bundles.length; i++) {
+			BundleDescription desc = addTargetBundle(bundles[i], -1);
+			if (desc != null) {
+				IPluginModelBase model = createExternalModel(desc);
+				fTargetModels.add(model);
+				models.add(model);
+			}
+		}
+		fTargetChanged = true;
+		return (IPluginModelBase[]) models.toArray(new IPluginModelBase[models.size()]);
+	}
+
+	/**
+	 * Returns whether the target bundle at the given location changed since it was
+	 * parsed, that is whether its size or modification time differ from its fingerprint.
+	 * Bundles without a fingerprint are reported as changed.
+	 * 
+	 * @param location location of a target bundle
+	 * @return whether the bundle must be parsed again
+	 */
+	public boolean isTargetBundleChanged(File location) {
+		TargetStateIndex.Fingerprint stamp = TargetStateIndex.createStamp(location);
+		return stamp == null || !stamp.hasSameStamp(fTargetIndex.getFingerprint(location));
+	}
+
+	/**
+	 * Removes the given target models and their bundle descriptions from this state.
+	 * The state is not resolved.
+	 * 
+	 * @param models target models to remove
+	 */
+	public void removeTargetModels(IPluginModelBase[] models) {
+		for (int i = 0; i < models.length; i++) {
+			fTargetModels.remove(models[i]);
+			String location = models[i].getInstallLocation();
+			if (location != null)
+				fTargetIndex.setFingerprint(new File(location), null);
+			BundleDescription desc = models[i].getBundleDescription();
+			if (desc != null) {
+				fAuxiliaryState.removeAuxiliaryData(desc.getBundleId());
+				removeBundleDescription(desc);
+			}
+		}
+		fTargetChanged = true;
+	}
+
 	public File getTargetDirectory() {
 		return new File(DIR, Long.toString(fTargetTimestamp) + ".target"); //$NON-NLS-1$
 	}
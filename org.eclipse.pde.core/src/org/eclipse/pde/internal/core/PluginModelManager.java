@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,8 @@
  *******************************************************************************/
 package org.eclipse.pde.internal.core;
 
+import java.io.File;
+import java.net.URL;
 import java.util.*;
 import java.util.Map.Entry;
 import org.eclipse.core.resources.IProject;
@@ -33,11 +35,21 @@ public class PluginModelManager implements IModelProviderListener {
 	/**
 	 * Job to update class path containers asynchronously. Avoids blocking the UI thread
 	 * while saving the manifest editor.
+	 * <p>
+	 * Updates are coalesced: the job waits for a short quiet period after the first
+	 * update is queued, a project queued more than once is only updated with its most
+	 * recent container, and all queued containers are set in a single operation so
+	 * that JDT rebuilds once.
+	 * </p>
 	 */
 	class UpdateClasspathsJob extends Job {
 
-		private List fProjects = new ArrayList();
-		private List fContainers = new ArrayList();
+		/**
+		 * Delay in milliseconds before queued updates are applied
+		 */
+		static final long QUIET_PERIOD = 200;
+
+		private Map fPending = new HashMap(); // IJavaProject -> IClasspathContainer
 
 		/**
 		 * Constructs a new job.
@@ -55,15 +67,20 @@ public class PluginModelManager implements IModelProviderListener {
 				do {
 					IJavaProject[] projects = null;
 					IClasspathContainer[] containers = null;
-					synchronized (fProjects) {
-						projects = (IJavaProject[]) fProjects.toArray(new IJavaProject[fProjects.size()]);
-						containers = (IClasspathContainer[]) fContainers.toArray(new IClasspathContainer[fContainers.size()]);
-						fProjects.clear();
-						fContainers.clear();
+					synchronized (fPending) {
+						projects = new IJavaProject[fPending.size()];
+						containers = new IClasspathContainer[projects.length];
+						Iterator iter = fPending.entrySet().iterator();
+						for (int i = 0; iter.hasNext(); i++) {
+							Entry entry = (Entry) iter.next();
+							projects[i] = (IJavaProject) entry.getKey();
+							containers[i] = (IClasspathContainer) entry.getValue();
+						}
+						fPending.clear();
 					}
-					JavaCore.setClasspathContainer(PDECore.REQUIRED_PLUGINS_CONTAINER_PATH, projects, containers, monitor);
-					synchronized (fProjects) {
-						more = !fProjects.isEmpty();
+					setClasspathContainers(projects, containers, monitor);
+					synchronized (fPending) {
+						more = !fPending.isEmpty();
 					}
 				} while (more);
 
@@ -74,18 +91,20 @@ public class PluginModelManager implements IModelProviderListener {
 		}
 
 		/**
-		 * Queues more projects/containers.
+		 * Queues more projects/containers and schedules the job.  A container queued for
+		 * a project replaces any container still queued for the same project.
 		 * 
 		 * @param projects
 		 * @param containers
 		 */
 		void add(IJavaProject[] projects, IClasspathContainer[] containers) {
-			synchronized (fProjects) {
+			synchronized (fPending) {
 				for (int i = 0; i < containers.length; i++) {
-					fProjects.add(projects[i]);
-					fContainers.add(containers[i]);
+					fPending.put(projects[i], containers[i]);
 				}
 			}
+			// has no effect while the job is already waiting, so the first update starts the quiet period
+			schedule(QUIET_PERIOD);
 		}
 
 	}
@@ -149,7 +168,73 @@ public class PluginModelManager implements IModelProviderListener {
 	private WorkspacePluginModelManager fWorkspaceManager; // keeps track of changes in the workspace
 	private PDEState fState; // keeps the combined view of the target and workspace
 
-	private Map fEntries; // a master table keyed by plugin ID and the value is a ModelEntry
+	/**
+	 * Immutable snapshot of the master table.  Changes are applied to a copy of the table
+	 * which is then published as a new snapshot, so readers never lock the table.  Model
+	 * arrays computed from the table are cached with the snapshot they were computed from.
+	 * The {@link ModelEntry} objects are shared between snapshots.
+	 */
+	private static class EntryTable {
+
+		/**
+		 * Map of plug-in ID to {@link ModelEntry}, never modified once published
+		 */
+		final Map fEntries;
+
+		private volatile IPluginModelBase[] fActiveModels;
+		private volatile IPluginModelBase[] fActivePlugins;
+		private volatile IPluginModelBase[] fAllModels;
+		private volatile IPluginModelBase[] fAllPlugins;
+
+		EntryTable(Map entries) {
+			fEntries = entries;
+		}
+
+		IPluginModelBase[] getActiveModels(boolean includeFragments) {
+			IPluginModelBase[] models = includeFragments ? fActiveModels : fActivePlugins;
+			if (models == null) {
+				models = collectModels(true, includeFragments);
+				if (includeFragments)
+					fActiveModels = models;
+				else
+					fActivePlugins = models;
+			}
+			// callers own the returned array
+			return (IPluginModelBase[]) models.clone();
+		}
+
+		IPluginModelBase[] getAllModels(boolean includeFragments) {
+			IPluginModelBase[] models = includeFragments ? fAllModels : fAllPlugins;
+			if (models == null) {
+				models = collectModels(false, includeFragments);
+				if (includeFragments)
+					fAllModels = models;
+				else
+					fAllPlugins = models;
+			}
+			return (IPluginModelBase[]) models.clone();
+		}
+
+		private IPluginModelBase[] collectModels(boolean active, boolean includeFragments) {
+			ArrayList result = new ArrayList(fEntries.size());
+			Iterator iter = fEntries.values().iterator();
+			while (iter.hasNext()) {
+				ModelEntry entry = (ModelEntry) iter.next();
+				IPluginModelBase[] models;
+				if (active)
+					models = entry.getActiveModels();
+				else
+					models = entry.hasWorkspaceModels() ? entry.getWorkspaceModels() : entry.getExternalModels();
+				for (int i = 0; i < models.length; i++) {
+					if (models[i] instanceof IPluginModel || includeFragments)
+						result.add(models[i]);
+				}
+			}
+			return (IPluginModelBase[]) result.toArray(new IPluginModelBase[result.size()]);
+		}
+	}
+
+	private volatile EntryTable fTable; // the master table keyed by plugin ID and the value is a ModelEntry
 	private ArrayList fListeners; // a list of listeners interested in changes to the plug-in models
 	private ArrayList fStateListeners; // a list of listeners interested in changes to the PDE/resolver State
 
@@ -198,63 +283,73 @@ public class PluginModelManager implements IModelProviderListener {
 	 */
 	public void modelsChanged(IModelProviderEvent e) {
 		PluginModelDelta delta = new PluginModelDelta();
+		Set addedBSNs = new HashSet();
 
-		// Removes from the master table and the state all workspace plug-ins that have been
-		// removed (project closed/deleted) from the workspace.
-		// Also if the taget location changes, all models from the old target are removed
-		if ((e.getEventTypes() & IModelProviderEvent.MODELS_REMOVED) != 0) {
-			IModel[] removed = e.getRemovedModels();
-			for (int i = 0; i < removed.length; i++) {
-				IPluginModelBase model = (IPluginModelBase) removed[i];
-				String id = model.getPluginBase().getId();
-				if (id != null)
-					handleRemove(id, model, delta);
+		synchronized (this) {
+			// apply the changes to a copy of the master table, readers keep using the
+			// current table until the copy is published
+			Map entries = new TreeMap(getEntryTable());
+
+			// Removes from the master table and the state all workspace plug-ins that have been
+			// removed (project closed/deleted) from the workspace.
+			// Also if the taget location changes, all models from the old target are removed
+			if ((e.getEventTypes() & IModelProviderEvent.MODELS_REMOVED) != 0) {
+				IModel[] removed = e.getRemovedModels();
+				for (int i = 0; i < removed.length; i++) {
+					IPluginModelBase model = (IPluginModelBase) removed[i];
+					String id = model.getPluginBase().getId();
+					if (id != null)
+						handleRemove(entries, id, model, delta);
+				}
 			}
-		}
 
-		// reset the state
-		if ((e.getEventTypes() & IModelProviderEvent.TARGET_CHANGED) != 0) {
-			Object newState = e.getEventSource();
-			if (newState instanceof PDEState) {
-				fState = (PDEState) newState;
+			// reset the state
+			if ((e.getEventTypes() & IModelProviderEvent.TARGET_CHANGED) != 0) {
+				Object newState = e.getEventSource();
+				if (newState instanceof PDEState) {
+					fState = (PDEState) newState;
+				}
 			}
-		}
 
-		Set addedBSNs = new HashSet();
-		// Adds to the master table and the state newly created plug-ins in the workspace
-		// (ie. new plug-in project or a closed project that has just been re-opened).
-		// Also, if the target location changes, we add all plug-ins from the new target
-		if ((e.getEventTypes() & IModelProviderEvent.MODELS_ADDED) != 0) {
-			IModel[] added = e.getAddedModels();
-			for (int i = 0; i < added.length; i++) {
-				IPluginModelBase model = (IPluginModelBase) added[i];
-				String id = model.getPluginBase().getId();
-				if (id != null) {
-					handleAdd(id, model, delta);
-					addedBSNs.add(id);
+			// Adds to the master table and the state newly created plug-ins in the workspace
+			// (ie. new plug-in project or a closed project that has just been re-opened).
+			// Also, if the target location changes, we add all plug-ins from the new target
+			if ((e.getEventTypes() & IModelProviderEvent.MODELS_ADDED) != 0) {
+				IModel[] added = e.getAddedModels();
+				for (int i = 0; i < added.length; i++) {
+					IPluginModelBase model = (IPluginModelBase) added[i];
+					String id = model.getPluginBase().getId();
+					if (id != null) {
+						handleAdd(entries, id, model, delta);
+						addedBSNs.add(id);
+					}
 				}
 			}
-		}
 
-		// add workspace plug-ins to the new state
-		// and remove their target counterparts from the state.
-		if ((e.getEventTypes() & IModelProviderEvent.TARGET_CHANGED) != 0) {
-			IPluginModelBase[] models = fWorkspaceManager.getPluginModels();
-			for (int i = 0; i < models.length; i++) {
-				addWorkspaceBundleToState(models[i]);
+			// add workspace plug-ins to the new state
+			// and remove their target counterparts from the state.
+			if ((e.getEventTypes() & IModelProviderEvent.TARGET_CHANGED) != 0) {
+				IPluginModelBase[] models = fWorkspaceManager.getPluginModels();
+				for (int i = 0; i < models.length; i++) {
+					addWorkspaceBundleToState(entries, models[i]);
+				}
+				if (models.length > 0)
+					fState.resolveState(true);
+			}
+
+			// Update the bundle description of plug-ins whose state has changed.
+			// A plug-in changes state if the MANIFEST.MF has been touched.
+			// or if a plug-in on the Target Platform has changed state (from checked to unchecked,
+			// and vice versa.
+			if ((e.getEventTypes() & IModelProviderEvent.MODELS_CHANGED) != 0) {
+				IModel[] changed = e.getChangedModels();
+				for (int i = 0; i < changed.length; i++)
+					handleChange(entries, (IPluginModelBase) changed[i], delta);
 			}
-			if (models.length > 0)
-				fState.resolveState(true);
-		}
 
-		// Update the bundle description of plug-ins whose state has changed.
-		// A plug-in changes state if the MANIFEST.MF has been touched.
-		// or if a plug-in on the Target Platform has changed state (from checked to unchecked,
-		// and vice versa.
-		if ((e.getEventTypes() & IModelProviderEvent.MODELS_CHANGED) != 0) {
-			IModel[] changed = e.getChangedModels();
-			for (int i = 0; i < changed.length; i++)
-				handleChange((IPluginModelBase) changed[i], delta);
+			// publish the new table, also when only the content of entries changed so
+			// that model arrays cached with the previous table are discarded
+			fTable = new EntryTable(entries);
 		}
 
 		if (fState != null) {
@@ -361,21 +456,48 @@ public class PluginModelManager implements IModelProviderListener {
 				index++;
 			}
 			int types = event.getEventTypes();
-			if (types == IModelProviderEvent.MODELS_CHANGED) {
-				// when a model (manifest) is changed schedule a job to avoid blocking
-				// the UI thread (@see bug 276135)
+			if ((types & IModelProviderEvent.TARGET_CHANGED) == 0) {
+				// when models are changed, added or removed schedule a job to avoid blocking
+				// the UI thread (@see bug 276135) and to coalesce the updates of a series of
+				// events, e.g. when many projects are imported
 				fUpdateJob.add(projects, containers);
-				fUpdateJob.schedule();
 			} else {
 				// else update synchronously
 				try {
-					JavaCore.setClasspathContainer(PDECore.REQUIRED_PLUGINS_CONTAINER_PATH, projects, containers, null);
+					setClasspathContainers(projects, containers, null);
 				} catch (JavaModelException e) {
 				}
 			}
 		}
 	}
 
+	/**
+	 * Sets the required plug-ins containers of the given projects in one operation.
+	 * Projects whose container entries are the same as the entries JDT already has
+	 * are skipped, so they are not rebuilt.
+	 * 
+	 * @param projects  java projects to update
+	 * @param containers  new containers of the projects
+	 * @param monitor  progress monitor or <code>null</code>
+	 * @throws JavaModelException if the containers could not be set
+	 */
+	static void setClasspathContainers(IJavaProject[] projects, IClasspathContainer[] containers, IProgressMonitor monitor) throws JavaModelException {
+		ArrayList changedProjects = new ArrayList(projects.length);
+		ArrayList changedContainers = new ArrayList(projects.length);
+		for (int i = 0; i < projects.length; i++) {
+			if (!projects[i].getProject().isOpen())
+				continue;
+			IClasspathContainer current = JavaCore.getClasspathContainer(PDECore.REQUIRED_PLUGINS_CONTAINER_PATH, projects[i]);
+			if (current != null && Arrays.equals(current.getClasspathEntries(), containers[i].getClasspathEntries()))
+				continue;
+			changedProjects.add(projects[i]);
+			changedContainers.add(containers[i]);
+		}
+		if (changedProjects.isEmpty())
+			return;
+		JavaCore.setClasspathContainer(PDECore.REQUIRED_PLUGINS_CONTAINER_PATH, (IJavaProject[]) changedProjects.toArray(new IJavaProject[changedProjects.size()]), (IClasspathContainer[]) changedContainers.toArray(new IClasspathContainer[changedContainers.size()]), monitor);
+	}
+
 	/**
 	 * Notify all interested listeners in changes made to the master table
 	 * 
@@ -467,7 +589,7 @@ public class PluginModelManager implements IModelProviderListener {
 	 * 		<code>false</code> otherwise.
 	 */
 	public boolean isEmpty() {
-		return getEntryTable().size() == 0;
+		return getEntryTable().isEmpty();
 	}
 
 	/**
@@ -478,7 +600,7 @@ public class PluginModelManager implements IModelProviderListener {
 	 * 		<code>false</code> otherwise.
 	 */
 	public boolean isInitialized() {
-		return fEntries != null;
+		return fTable != null;
 	}
 
 	/**
@@ -486,11 +608,20 @@ public class PluginModelManager implements IModelProviderListener {
 	 * It always calls initialize to make sure the table is initialized.
 	 * If more than one thread tries to read the table at the same time,
 	 * and the table is not initialized yet, thread2 would wait. 
-	 * This way there are no partial reads.
+	 * This way there are no partial reads.  Once initialized, the current
+	 * table is returned without locking; it must not be modified.
 	 */
 	private Map getEntryTable() {
-		initializeTable();
-		return fEntries;
+		return getTable().fEntries;
+	}
+
+	private EntryTable getTable() {
+		EntryTable table = fTable;
+		if (table == null) {
+			initializeTable();
+			table = fTable;
+		}
+		return table;
 	}
 
 	/**
@@ -500,11 +631,11 @@ public class PluginModelManager implements IModelProviderListener {
 	 * 
 	 */
 	private synchronized void initializeTable() {
-		if (fEntries != null)
+		if (fTable != null)
 			return;
 
-		// Cannot assign to fEntries here - will create a race condition with isInitialized()
-		Map entries = Collections.synchronizedMap(new TreeMap());
+		// Cannot assign to fTable here - will create a race condition with isInitialized()
+		Map entries = new TreeMap();
 
 		// Create a state that contains all bundles from the target and workspace
 		// If a workspace bundle has the same symbolic name as a target bundle,
@@ -553,7 +684,7 @@ public class PluginModelManager implements IModelProviderListener {
 			PDECore.getDefault().getExtensionsRegistry().targetReloaded();
 		}
 
-		fEntries = entries;
+		fTable = new EntryTable(entries);
 
 		// Create default target platform definition if required
 		initDefaultTargetPlatformDefinition();
@@ -676,12 +807,9 @@ public class PluginModelManager implements IModelProviderListener {
 	/**
 	 * Add a workspace bundle to the state
 	 * 
+	 * @param entries  the master table being updated
 	 * @param model  the workspace model
 	 */
-	private synchronized void addWorkspaceBundleToState(IPluginModelBase model) {
-		addWorkspaceBundleToState(fEntries, model);
-	}
-
 	private synchronized void addWorkspaceBundleToState(Map entries, IPluginModelBase model) {
 		String id = model.getPluginBase().getId();
 		if (id == null)
@@ -732,16 +860,17 @@ public class PluginModelManager implements IModelProviderListener {
 	/**
 	 * Adds a model to the master table and state
 	 * 
+	 * @param entries  the master table being updated
 	 * @param id the key 
 	 * @param model  the model being added
 	 */
-	private void handleAdd(String id, IPluginModelBase model, PluginModelDelta delta) {
-		LocalModelEntry entry = (LocalModelEntry) getEntryTable().get(id);
+	private void handleAdd(Map entries, String id, IPluginModelBase model, PluginModelDelta delta) {
+		LocalModelEntry entry = (LocalModelEntry) entries.get(id);
 
 		// add model to the corresponding ModelEntry.  Create a new entry if necessary
 		if (entry == null) {
 			entry = new LocalModelEntry(id);
-			getEntryTable().put(id, entry);
+			entries.put(id, entry);
 			delta.addEntry(entry, PluginModelDelta.ADDED);
 		} else {
 			delta.addEntry(entry, PluginModelDelta.CHANGED);
@@ -751,7 +880,7 @@ public class PluginModelManager implements IModelProviderListener {
 		// if the model added is a workspace model, add it to the state and
 		// remove all its external counterparts
 		if (model.getUnderlyingResource() != null) {
-			addWorkspaceBundleToState(model);
+			addWorkspaceBundleToState(entries, model);
 		} else if (model.isEnabled() && !entry.hasWorkspaceModels()) {
 			// if a target model has went from an unchecked state to a checked state
 			// on the target platform preference page, re-add its bundle description
@@ -766,11 +895,12 @@ public class PluginModelManager implements IModelProviderListener {
 	 * Removes the model from the ModelEntry and the state.  The entire model entry is removed
 	 * once the last model it retains is removed.
 	 * 
+	 * @param entries  the master table being updated
 	 * @param id   the key
 	 * @param model  the model to be removed
 	 */
-	private void handleRemove(String id, IPluginModelBase model, PluginModelDelta delta) {
-		LocalModelEntry entry = (LocalModelEntry) getEntryTable().get(id);
+	private void handleRemove(Map entries, String id, IPluginModelBase model, PluginModelDelta delta) {
+		LocalModelEntry entry = (LocalModelEntry) entries.get(id);
 		if (entry != null) {
 			// remove model from the entry
 			entry.removeModel(model);
@@ -778,7 +908,7 @@ public class PluginModelManager implements IModelProviderListener {
 			fState.removeBundleDescription(model.getBundleDescription());
 			if (!entry.hasExternalModels() && !entry.hasWorkspaceModels()) {
 				// remove entire entry if it has no models left
-				getEntryTable().remove(id);
+				entries.remove(id);
 				delta.addEntry(entry, PluginModelDelta.REMOVED);
 				return;
 			} else if (model.getUnderlyingResource() != null && !entry.hasWorkspaceModels()) {
@@ -797,9 +927,10 @@ public class PluginModelManager implements IModelProviderListener {
 	/**
 	 * Update the state and master table to account for the change in the given model
 	 * 
+	 * @param entries  the master table being updated
 	 * @param model the model that has changed
 	 */
-	private void handleChange(IPluginModelBase model, PluginModelDelta delta) {
+	private void handleChange(Map entries, IPluginModelBase model, PluginModelDelta delta) {
 		BundleDescription desc = model.getBundleDescription();
 		String oldID = desc == null ? null : desc.getSymbolicName();
 		String newID = model.getPluginBase().getId();
@@ -812,11 +943,11 @@ public class PluginModelManager implements IModelProviderListener {
 		// if the model used to lack a Bundle-SymbolicName header and now it has one,
 		// treat it as a regular model addition
 		if (oldID == null && newID != null) {
-			handleAdd(newID, model, delta);
+			handleAdd(entries, newID, model, delta);
 		} else if (oldID != null && newID == null) {
 			// if the model used to have a Bundle-SymbolicName header and now it lost it,
 			// treat it as a regular model removal
-			handleRemove(oldID, model, delta);
+			handleRemove(entries, oldID, model, delta);
 			model.setBundleDescription(null);
 		} else if (oldID.equals(newID)) {
 			// if the workspace bundle's MANIFEST.MF was touched or
@@ -826,7 +957,7 @@ public class PluginModelManager implements IModelProviderListener {
 				// if the state of an inactive bundle changes (external model un/checked that has an 
 				// equivalent workspace bundle), then take no action.  We don't want to add the external
 				// model to the state when it is enabled if we have a workspace bundle already in the state.
-				ModelEntry entry = (ModelEntry) getEntryTable().get(oldID);
+				ModelEntry entry = (ModelEntry) entries.get(oldID);
 				IPluginModelBase[] activeModels = entry.getActiveModels();
 				boolean isActive = false;
 				for (int i = 0; i < activeModels.length; i++) {
@@ -841,12 +972,12 @@ public class PluginModelManager implements IModelProviderListener {
 				// if the target plug-in has become disabled/unchecked, remove its bundle
 				// description from the state
 				fState.removeBundleDescription(model.getBundleDescription());
-			delta.addEntry(findEntry(oldID), PluginModelDelta.CHANGED);
+			delta.addEntry((ModelEntry) entries.get(oldID), PluginModelDelta.CHANGED);
 		} else {
 			// if the symbolic name of the bundle has completely changed,
 			// remove the model from the old entry, and add the model to the new entry
-			handleRemove(oldID, model, delta);
-			handleAdd(newID, model, delta);
+			handleRemove(entries, oldID, model, delta);
+			handleAdd(entries, newID, model, delta);
 		}
 	}
 
@@ -950,18 +1081,7 @@ public class PluginModelManager implements IModelProviderListener {
 	 * (possibly) fragments that are checked on the Target Platform preference page.
 	 */
 	public IPluginModelBase[] getActiveModels(boolean includeFragments) {
-		int size = getEntryTable().size();
-		ArrayList result = new ArrayList(size);
-		Iterator iter = getEntryTable().values().iterator();
-		while (iter.hasNext()) {
-			ModelEntry entry = (ModelEntry) iter.next();
-			IPluginModelBase[] models = entry.getActiveModels();
-			for (int i = 0; i < models.length; i++) {
-				if (models[i] instanceof IPluginModel || includeFragments)
-					result.add(models[i]);
-			}
-		}
-		return (IPluginModelBase[]) result.toArray(new IPluginModelBase[result.size()]);
+		return getTable().getActiveModels(includeFragments);
 	}
 
 	/**
@@ -1001,18 +1121,7 @@ public class PluginModelManager implements IModelProviderListener {
 	 * checked on the Target Platform preference page.
 	 */
 	public IPluginModelBase[] getAllModels(boolean includeFragments) {
-		int size = getEntryTable().size();
-		ArrayList result = new ArrayList(size);
-		Iterator iter = getEntryTable().values().iterator();
-		while (iter.hasNext()) {
-			ModelEntry entry = (ModelEntry) iter.next();
-			IPluginModelBase[] models = entry.hasWorkspaceModels() ? entry.getWorkspaceModels() : entry.getExternalModels();
-			for (int i = 0; i < models.length; i++) {
-				if (models[i] instanceof IPluginModel || includeFragments)
-					result.add(models[i]);
-			}
-		}
-		return (IPluginModelBase[]) result.toArray(new IPluginModelBase[result.size()]);
+		return getTable().getAllModels(includeFragments);
 	}
 
 	/**
@@ -1076,6 +1185,105 @@ public class PluginModelManager implements IModelProviderListener {
 		fireStateChanged(state);
 	}
 
+	/**
+	 * Updates the target part of the current state to the bundles at the given locations
+	 * without creating a new state.  Bundles that are in the current and the new target keep
+	 * their models and bundle descriptions unless their fingerprint changed, only the manifests
+	 * of new and changed bundles are read.
+	 * Listeners are notified with a single model delta and a single resolver {@link StateDelta}
+	 * instead of a complete state change.
+	 * <p>
+	 * The update is not performed if the table has not been initialized yet, if none of
+	 * the current target bundles remain in the new target or if the monitor is canceled.
+	 * The manifests are read before the current state is modified, so the state is left
+	 * unchanged in these cases.  Unless the monitor was canceled, a new state must then be
+	 * created and passed to {@link #resetState(PDEState)}.
+	 * </p>
+	 * 
+	 * @param urls locations of all bundles in the new target
+	 * @param disabled {@link NameVersionDescriptor}s of the bundles that must be disabled
+	 * @param monitor progress monitor
+	 * @return whether the state was updated
+	 */
+	public boolean updateTargetState(URL[] urls, Set disabled, IProgressMonitor monitor) {
+		if (!isInitialized() || "true".equals(System.getProperty("pde.fullTargetReset"))) //$NON-NLS-1$ //$NON-NLS-2$
+			return false;
+
+		IPluginModelBase[] current = fExternalManager.getAllModels();
+		Map byLocation = new HashMap(current.length * 4 / 3 + 1);
+		for (int i = 0; i < current.length; i++) {
+			String location = current[i].getInstallLocation();
+			if (location != null)
+				byLocation.put(new File(location).getAbsolutePath(), current[i]);
+		}
+
+		ArrayList addedURLs = new ArrayList();
+		Set kept = new HashSet();
+		for (int i = 0; i < urls.length; i++) {
+			File file = new File(urls[i].getFile());
+			Object model = byLocation.get(file.getAbsolutePath());
+			if (model == null) {
+				addedURLs.add(urls[i]);
+			} else if (fState.isTargetBundleChanged(file)) {
+				// same location but different contents, the model is removed and the bundle added again
+				addedURLs.add(urls[i]);
+			} else {
+				kept.add(model);
+			}
+		}
+		if (kept.isEmpty() && current.length > 0)
+			return false;
+
+		// read all new and changed bundles before anything in the state is modified
+		MinimalState.ParsedBundle[] parsed = fState.parseTargetBundles((URL[]) addedURLs.toArray(new URL[addedURLs.size()]), monitor);
+		if (parsed == null)
+			return false;
+
+		ArrayList removed = new ArrayList();
+		ArrayList changed = new ArrayList();
+		ArrayList models = new ArrayList(urls.length);
+		for (int i = 0; i < current.length; i++) {
+			if (!kept.contains(current[i])) {
+				removed.add(current[i]);
+				continue;
+			}
+			models.add(current[i]);
+			boolean enabled = !disabled.contains(new NameVersionDescriptor(current[i].getPluginBase().getId(), current[i].getPluginBase().getVersion()));
+			if (enabled != current[i].isEnabled()) {
+				current[i].setEnabled(enabled);
+				changed.add(current[i]);
+			}
+		}
+
+		// remove first, changed bundles are added again at the same location
+		IPluginModelBase[] removedModels = (IPluginModelBase[]) removed.toArray(new IPluginModelBase[removed.size()]);
+		fState.removeTargetModels(removedModels);
+		IPluginModelBase[] added = fState.addTargetBundles(parsed);
+		for (int i = 0; i < added.length; i++) {
+			String id = added[i].getPluginBase().getId();
+			added[i].setEnabled(!disabled.contains(new NameVersionDescriptor(id, added[i].getPluginBase().getVersion())));
+			ModelEntry entry = findEntry(id);
+			// disabled bundles and bundles shadowed by a workspace bundle must not be in the state
+			if (!added[i].isEnabled() || (entry != null && entry.hasWorkspaceModels()))
+				fState.removeBundleDescription(added[i].getBundleDescription());
+			models.add(added[i]);
+		}
+		fExternalManager.setModels((IPluginModelBase[]) models.toArray(new IPluginModelBase[models.size()]));
+
+		int types = 0;
+		if (added.length > 0)
+			types |= IModelProviderEvent.MODELS_ADDED;
+		if (removedModels.length > 0)
+			types |= IModelProviderEvent.MODELS_REMOVED;
+		if (changed.size() > 0)
+			types |= IModelProviderEvent.MODELS_CHANGED;
+		if (fState.updatePlatformProperties())
+			types |= IModelProviderEvent.ENVIRONMENT_CHANGED;
+		if (types != 0)
+			modelsChanged(new ModelProviderEvent(fState, types, added, removedModels, (IModel[]) changed.toArray(new IModel[changed.size()])));
+		return true;
+	}
+
 	/**
 	 * Returns the id of the system bundle currently in the resolver state
 	 * 
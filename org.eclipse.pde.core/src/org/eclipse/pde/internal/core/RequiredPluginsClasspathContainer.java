@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2010 IBM Corporation and others.
+ *  Copyright (c) 2000, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -160,15 +160,22 @@ public class RequiredPluginsClasspathContainer extends PDEClasspathContainer imp
 	}
 
 	private Map retrieveVisiblePackagesFromState(BundleDescription desc) {
-		Map visiblePackages = new HashMap();
+		// the visible packages only change with the state, reuse them while it is unchanged
+		ClasspathRuleCache cache = ClasspathRuleCache.getCache(desc.getContainingState());
+		Map visiblePackages = cache == null ? null : cache.getVisiblePackages(desc);
+		if (visiblePackages != null)
+			return visiblePackages;
+		visiblePackages = new HashMap();
 		StateHelper helper = Platform.getPlatformAdmin().getStateHelper();
-		addVisiblePackagesFromState(helper, desc, visiblePackages);
+		addVisiblePackagesFromState(helper, cache, desc, visiblePackages);
 		if (desc.getHost() != null)
-			addVisiblePackagesFromState(helper, (BundleDescription) desc.getHost().getSupplier(), visiblePackages);
+			addVisiblePackagesFromState(helper, cache, (BundleDescription) desc.getHost().getSupplier(), visiblePackages);
+		if (cache != null)
+			cache.setVisiblePackages(desc, visiblePackages);
 		return visiblePackages;
 	}
 
-	private void addVisiblePackagesFromState(StateHelper helper, BundleDescription desc, Map visiblePackages) {
+	private void addVisiblePackagesFromState(StateHelper helper, ClasspathRuleCache cache, BundleDescription desc, Map visiblePackages) {
 		if (desc == null)
 			return;
 		ExportPackageDescription[] exports = helper.getVisiblePackages(desc);
@@ -181,17 +188,21 @@ public class RequiredPluginsClasspathContainer extends PDEClasspathContainer imp
 				list = new ArrayList();
 				visiblePackages.put(exporter, list);
 			}
-			Rule rule = getRule(helper, desc, exports[i]);
+			Rule rule = getRule(helper, cache, desc, exports[i]);
 			if (!list.contains(rule))
 				list.add(rule);
 		}
 	}
 
-	private Rule getRule(StateHelper helper, BundleDescription desc, ExportPackageDescription export) {
+	private Rule getRule(StateHelper helper, ClasspathRuleCache cache, BundleDescription desc, ExportPackageDescription export) {
 		Rule rule = new Rule();
 		rule.discouraged = helper.getAccessCode(desc, export) == StateHelper.ACCESS_DISCOURAGED;
-		String name = export.getName();
-		rule.path = (name.equals(".")) ? new Path("*") : new Path(name.replaceAll("\\.", "/") + "/*"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		if (cache != null) {
+			rule.path = cache.getPackagePath(export);
+		} else {
+			String name = export.getName();
+			rule.path = (name.equals(".")) ? new Path("*") : new Path(name.replaceAll("\\.", "/") + "/*"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		}
 		return rule;
 	}
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2008 IBM Corporation and others.
+ * Copyright (c) 2007, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,14 +11,19 @@
  *******************************************************************************/
 package org.eclipse.pde.internal.core;
 
+import java.net.URL;
+import java.util.Set;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.pde.core.plugin.IPluginModelBase;
+import org.eclipse.pde.internal.core.target.provisional.NameVersionDescriptor;
 
 public class TargetPlatformResetJob extends Job {
 
 	private PDEState fState;
+	private URL[] fURLs;
+	private Set fDisabled;
 
 	public TargetPlatformResetJob(PDEState newState) {
 		super(PDECoreMessages.TargetPlatformResetJob_resetTarget);
@@ -26,13 +31,48 @@ public class TargetPlatformResetJob extends Job {
 		setRule(ResourcesPlugin.getWorkspace().getRoot());
 	}
 
+	/**
+	 * Creates a job that updates the current target state to the bundles at the given
+	 * locations.  Only the differences to the current target are applied if possible,
+	 * otherwise a new state is created.
+	 * 
+	 * @param urls locations of all bundles in the new target
+	 * @param disabled {@link NameVersionDescriptor}s of the bundles to disable
+	 */
+	public TargetPlatformResetJob(URL[] urls, Set disabled) {
+		super(PDECoreMessages.TargetPlatformResetJob_resetTarget);
+		fURLs = urls;
+		fDisabled = disabled;
+		setRule(ResourcesPlugin.getWorkspace().getRoot());
+	}
+
 	protected IStatus run(IProgressMonitor monitor) {
 		EclipseHomeInitializer.resetEclipseHomeVariable();
 		PDECore.getDefault().getSourceLocationManager().reset();
 		PDECore.getDefault().getJavadocLocationManager().reset();
+		PluginModelManager manager = PDECore.getDefault().getModelManager();
+		if (fState == null) {
+			SubMonitor subMon = SubMonitor.convert(monitor, 100);
+			if (manager.updateTargetState(fURLs, fDisabled, subMon.newChild(50))) {
+				PDECore.getDefault().getFeatureModelManager().targetReloaded();
+				subMon.done();
+				return Status.OK_STATUS;
+			}
+			// the current state is unchanged, a state read with a canceled monitor must not replace it
+			if (monitor.isCanceled())
+				return Status.CANCEL_STATUS;
+			PDEState state = new PDEState(fURLs, true, subMon.newChild(50));
+			if (monitor.isCanceled())
+				return Status.CANCEL_STATUS;
+			fState = state;
+			IPluginModelBase[] targetModels = fState.getTargetModels();
+			for (int i = 0; i < targetModels.length; i++) {
+				NameVersionDescriptor nv = new NameVersionDescriptor(targetModels[i].getPluginBase().getId(), targetModels[i].getPluginBase().getVersion());
+				targetModels[i].setEnabled(!fDisabled.contains(nv));
+			}
+		}
 		IPluginModelBase[] models = fState.getTargetModels();
 		removeDisabledBundles(models);
-		PluginModelManager manager = PDECore.getDefault().getModelManager();
 		manager.getExternalModelManager().setModels(models);
 		// trigger Extension Registry reloaded before resetState call so listeners can update their extensions points accurately when target is reloaded
 		PDECore.getDefault().getExtensionsRegistry().targetReloaded();
@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.internal.core;
+
+import java.io.*;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Stores a fingerprint of every bundle in a persisted target state, so that a
+ * cached state can be reused and only the bundles that actually changed need to be
+ * parsed again.  A fingerprint consists of the size and modification time of the
+ * bundle's jar (or of the descriptor files of a directory bundle) and a hash of its
+ * manifest headers.  Size and time are a cheap first check; the hash allows a touched but
+ * otherwise unchanged bundle to be detected without updating the state.
+ * <p>
+ * The index is stored in the state cache directory next to the OSGi state and the
+ * auxiliary plug-in information.
+ * </p>
+ */
+public class TargetStateIndex {
+
+	private static final String INDEX_FILE = ".fingerprints"; //$NON-NLS-1$
+
+	private static final int VERSION = 2;
+
+	/**
+	 * Fingerprint of a single bundle location
+	 */
+	static class Fingerprint {
+		long size;
+		long lastModified;
+		long manifestHash;
+
+		/**
+		 * Returns whether the size and modification time of this fingerprint
+		 * match those of the given one.  The manifest hash is not compared.
+		 */
+		boolean hasSameStamp(Fingerprint other) {
+			return other != null && size == other.size && lastModified == other.lastModified;
+		}
+	}
+
+	/**
+	 * Map of absolute bundle location to {@link Fingerprint}
+	 */
+	private Map fFingerprints;
+
+	/**
+	 * Creates an empty index.
+	 */
+	TargetStateIndex() {
+		fFingerprints = new HashMap();
+	}
+
+	/**
+	 * Creates a copy of the given index.
+	 *
+	 * @param index index to copy
+	 */
+	TargetStateIndex(TargetStateIndex index) {
+		fFingerprints = new HashMap(index.fFingerprints);
+	}
+
+	/**
+	 * Returns the fingerprint stored for the given bundle location.
+	 *
+	 * @param location bundle location
+	 * @return the fingerprint or <code>null</code> if the location is not in the index
+	 */
+	Fingerprint getFingerprint(File location) {
+		return (Fingerprint) fFingerprints.get(location.getAbsolutePath());
+	}
+
+	/**
+	 * Stores a fingerprint for the given location.
+	 *
+	 * @param location bundle location
+	 * @param fingerprint the fingerprint, or <code>null</code> to remove the location from the index
+	 */
+	void setFingerprint(File location, Fingerprint fingerprint) {
+		if (fingerprint == null)
+			fFingerprints.remove(location.getAbsolutePath());
+		else
+			fFingerprints.put(location.getAbsolutePath(), fingerprint);
+	}
+
+	/**
+	 * Returns the number of locations in this index.
+	 *
+	 * @return number of indexed locations
+	 */
+	int size() {
+		return fFingerprints.size();
+	}
+
+	/**
+	 * Removes all fingerprints from the index.
+	 */
+	void clear() {
+		fFingerprints.clear();
+	}
+
+	/**
+	 * Returns whether the index file exists in the given directory.
+	 *
+	 * @param dir state cache directory
+	 * @return whether an index file exists
+	 */
+	boolean exists(File dir) {
+		return new File(dir, INDEX_FILE).isFile();
+	}
+
+	/**
+	 * Deletes the index file from the given directory, so the state persisted in the
+	 * directory is not reused.
+	 *
+	 * @param dir state cache directory
+	 */
+	void delete(File dir) {
+		new File(dir, INDEX_FILE).delete();
+	}
+
+	/**
+	 * Loads the index from the given state cache directory, replacing the current content.
+	 *
+	 * @param dir state cache directory
+	 * @return <code>true</code> if the index was read successfully, <code>false</code> otherwise
+	 */
+	boolean read(File dir) {
+		fFingerprints.clear();
+		File file = new File(dir, INDEX_FILE);
+		if (!file.isFile())
+			return false;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != VERSION)
+				return false;
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String location = in.readUTF();
+				Fingerprint fingerprint = new Fingerprint();
+				fingerprint.size = in.readLong();
+				fingerprint.lastModified = in.readLong();
+				fingerprint.manifestHash = in.readLong();
+				fFingerprints.put(location, fingerprint);
+			}
+			return true;
+		} catch (IOException e) {
+			fFingerprints.clear();
+			PDECore.log(e);
+		} finally {
+			try {
+				if (in != null)
+					in.close();
+			} catch (IOException e) {
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Writes the index to the given state cache directory.
+	 *
+	 * @param dir state cache directory
+	 */
+	void write(File dir) {
+		DataOutputStream out = null;
+		try {
+			if (!dir.exists())
+				dir.mkdirs();
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, INDEX_FILE))));
+			out.writeInt(VERSION);
+			out.writeInt(fFingerprints.size());
+			Iterator iter = fFingerprints.entrySet().iterator();
+			while (iter.hasNext()) {
+				Map.Entry entry = (Map.Entry) iter.next();
+				Fingerprint fingerprint = (Fingerprint) entry.getValue();
+				out.writeUTF((String) entry.getKey());
+				out.writeLong(fingerprint.size);
+				out.writeLong(fingerprint.lastModified);
+				out.writeLong(fingerprint.manifestHash);
+			}
+		} catch (IOException e) {
+			PDECore.log(e);
+		} finally {
+			try {
+				if (out != null)
+					out.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/**
+	 * Creates a fingerprint holding only the current size and modification time of
+	 * the given bundle location.  For a jarred bundle these are the values of the jar.
+	 * For a directory bundle they combine the values of all of its descriptor files
+	 * (manifest, plugin.xml and fragment.xml), so a change of any of them is noticed.
+	 *
+	 * @param location bundle location
+	 * @return the fingerprint or <code>null</code> if the location does not exist
+	 */
+	static Fingerprint createStamp(File location) {
+		Fingerprint fingerprint = new Fingerprint();
+		if (location.isFile()) {
+			fingerprint.size = location.length();
+			fingerprint.lastModified = location.lastModified();
+			return fingerprint;
+		}
+		if (!location.isDirectory())
+			return null;
+		File[] files = new File[] {new File(location, ICoreConstants.BUNDLE_FILENAME_DESCRIPTOR), new File(location, ICoreConstants.PLUGIN_FILENAME_DESCRIPTOR), new File(location, ICoreConstants.FRAGMENT_FILENAME_DESCRIPTOR)};
+		for (int i = 0; i < files.length; i++) {
+			// missing files are included as well, adding or removing a descriptor changes the stamp
+			fingerprint.size = fingerprint.size * 31 + (files[i].isFile() ? files[i].length() : -1);
+			fingerprint.lastModified = fingerprint.lastModified * 31 + files[i].lastModified();
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Computes a hash of the given manifest headers that does not depend on the order of the headers.
+	 *
+	 * @param manifest manifest headers
+	 * @return hash of the headers
+	 */
+	static long computeManifestHash(Dictionary manifest) {
+		List keys = new ArrayList(manifest.size());
+		for (Enumeration e = manifest.keys(); e.hasMoreElements();) {
+			keys.add(e.nextElement().toString());
+		}
+		Collections.sort(keys);
+		MessageDigest digest = createDigest();
+		for (int i = 0; i < keys.size(); i++) {
+			String key = (String) keys.get(i);
+			Object value = manifest.get(key);
+			update(digest, key);
+			update(digest, value == null ? "" : value.toString()); //$NON-NLS-1$
+		}
+		return toLong(digest.digest());
+	}
+
+	/**
+	 * Computes the key of the state cache directory for the given set of bundle
+	 * locations.  The key only depends on the locations, in any order, not on the
+	 * content of the bundles; changed content is detected through the fingerprints.
+	 *
+	 * @param urls bundle locations
+	 * @param seed key of a previous set of locations to extend, or <code>0</code>
+	 * @return key of the location set
+	 */
+	static long computeLocationKey(URL[] urls, long seed) {
+		String[] paths = new String[urls.length];
+		for (int i = 0; i < urls.length; i++) {
+			paths[i] = new File(urls[i].getFile()).getAbsolutePath().toLowerCase();
+		}
+		Arrays.sort(paths);
+		MessageDigest digest = createDigest();
+		if (seed != 0)
+			update(digest, Long.toString(seed));
+		for (int i = 0; i < paths.length; i++) {
+			update(digest, paths[i]);
+		}
+		return toLong(digest.digest());
+	}
+
+	static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("MD5"); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			// MD5 is required to be available on every Java platform
+			throw new IllegalStateException(e.getMessage());
+		}
+	}
+
+	static void update(MessageDigest digest, String value) {
+		try {
+			digest.update(value.getBytes("UTF-8")); //$NON-NLS-1$
+		} catch (UnsupportedEncodingException e) {
+			digest.update(value.getBytes());
+		}
+		// separator, so that adjacent values cannot run into each other
+		digest.update((byte) 0);
+	}
+
+	static long toLong(byte[] bytes) {
+		long result = 0;
+		for (int i = 0; i < 8 && i < bytes.length; i++) {
+			result = (result << 8) | (bytes[i] & 0xFF);
+		}
+		// keep the key positive so it can be used as a directory name as before
+		return result & Long.MAX_VALUE;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -42,8 +42,8 @@ public class BundleErrorReporter extends JarManifestErrorReporter {
 		super(file);
 	}
 
-	public void validateContent(IProgressMonitor monitor) {
-		super.validateContent(monitor);
+	protected void validate(IProgressMonitor monitor) {
+		super.validate(monitor);
 		if (fHeaders == null || getErrorCount() > 0)
 			return;
 
@@ -650,7 +650,8 @@ public class BundleErrorReporter extends JarManifestErrorReporter {
 			}
 		}
 
-		HashMap exported = getAvailableExportedPackages(desc.getContainingState());
+		State state = desc.getContainingState();
+		ExportedPackageIndex exported = PDECore.getDefault().getExportedPackageIndex();
 
 		ImportPackageSpecification[] imports = desc.getImportPackages();
 		if (desc.hasDynamicImports()) {
@@ -694,7 +695,7 @@ public class BundleErrorReporter extends JarManifestErrorReporter {
 				boolean optional = isOptional(elements[i]);
 				int severity = getRequireBundleSeverity(elements[i], optional);
 
-				ExportPackageDescription export = (ExportPackageDescription) exported.get(name);
+				ExportPackageDescription export = exported.getExportedPackage(state, name);
 				if (export != null) {
 					if (export.getSupplier().isResolved()) {
 						Version version = export.getVersion();
@@ -720,26 +721,6 @@ public class BundleErrorReporter extends JarManifestErrorReporter {
 		}
 	}
 
-	private HashMap getAvailableExportedPackages(State state) {
-		BundleDescription[] bundles = state.getBundles();
-
-		HashMap exported = new HashMap();
-		for (int i = 0; i < bundles.length; i++) {
-			ExportPackageDescription[] exports = bundles[i].getExportPackages();
-			for (int j = 0; j < exports.length; j++) {
-				String name = exports[j].getName();
-				if (exported.containsKey(name)) {
-					if (exports[j].getSupplier().isResolved()) {
-						exported.put(name, exports[j]);
-					}
-				} else {
-					exported.put(name, exports[j]);
-				}
-			}
-		}
-		return exported;
-	}
-
 	protected void validateExportPackage(IProgressMonitor monitor) {
 		IHeader header = getHeader(Constants.EXPORT_PACKAGE);
 		if (header == null)
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,10 +11,13 @@
  *******************************************************************************/
 package org.eclipse.pde.internal.core.builders;
 
-import org.eclipse.core.resources.IProject;
-import org.eclipse.core.resources.ProjectScope;
+import java.util.HashMap;
+import java.util.Map;
+import org.eclipse.core.resources.*;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.preferences.*;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
 import org.eclipse.pde.internal.core.natures.PDE;
 import org.osgi.service.prefs.BackingStoreException;
 
@@ -84,6 +87,33 @@ public class CompilerFlags {
 	public static final String F_UNRESOLVED_PLUGINS = "compilers.f.unresolved-plugins"; //$NON-NLS-1$
 	public static final String F_UNRESOLVED_FEATURES = "compilers.f.unresolved-features"; //$NON-NLS-1$
 
+	/**
+	 * Key of the snapshot of the workspace preferences
+	 */
+	private static final Object NO_PROJECT = new Object();
+
+	/**
+	 * Map of project to a map of preference id to the value of the preference in that
+	 * project.  Validation looks up the same preferences for every element it checks, the
+	 * snapshots are discarded whenever a PDE preference changes.
+	 */
+	private static final Map fSnapshots = new HashMap();
+
+	private static boolean fListening = false;
+
+	private static final IPreferenceChangeListener fPreferenceListener = new IPreferenceChangeListener() {
+		public void preferenceChange(PreferenceChangeEvent event) {
+			clearSnapshots();
+		}
+	};
+
+	private static final IResourceChangeListener fProjectListener = new IResourceChangeListener() {
+		public void resourceChanged(IResourceChangeEvent event) {
+			// the preferences of a project that is deleted or closed go away without notification
+			clearSnapshots();
+		}
+	};
+
 	/**
 	 * Returns the value for the requested preference, or 0 if there was a problem getting the preference value
 	 * @param project to use as a project specific settings scope, or null
@@ -115,11 +145,52 @@ public class CompilerFlags {
 	 * @return preference value or an empty string, never <code>null</code>
 	 */
 	public static String getString(IProject project, String flagId) {
+		Map snapshot = getSnapshot(project);
+		synchronized (snapshot) {
+			String value = (String) snapshot.get(flagId);
+			if (value == null) {
+				value = lookupString(project, flagId);
+				snapshot.put(flagId, value);
+			}
+			return value;
+		}
+	}
+
+	private static String lookupString(IProject project, String flagId) {
 		IPreferencesService service = Platform.getPreferencesService();
 		IScopeContext[] contexts = project == null ? null : new IScopeContext[] {new ProjectScope(project)};
 		return service.getString(PDE.PLUGIN_ID, flagId, "", project == null ? null : contexts); //$NON-NLS-1$
 	}
 
+	/**
+	 * Returns the snapshot of the preferences of the given project, starting a new one
+	 * if the preferences changed since the last one was taken.
+	 * 
+	 * @param project project or <code>null</code> for the workspace preferences
+	 * @return map of preference id to value
+	 */
+	private static synchronized Map getSnapshot(IProject project) {
+		if (!fListening) {
+			new InstanceScope().getNode(PDE.PLUGIN_ID).addPreferenceChangeListener(fPreferenceListener);
+			new DefaultScope().getNode(PDE.PLUGIN_ID).addPreferenceChangeListener(fPreferenceListener);
+			ResourcesPlugin.getWorkspace().addResourceChangeListener(fProjectListener, IResourceChangeEvent.PRE_CLOSE | IResourceChangeEvent.PRE_DELETE);
+			fListening = true;
+		}
+		Object key = project == null ? NO_PROJECT : project;
+		Map snapshot = (Map) fSnapshots.get(key);
+		if (snapshot == null) {
+			snapshot = new HashMap();
+			if (project != null)
+				new ProjectScope(project).getNode(PDE.PLUGIN_ID).addPreferenceChangeListener(fPreferenceListener);
+			fSnapshots.put(key, snapshot);
+		}
+		return snapshot;
+	}
+
+	private static synchronized void clearSnapshots() {
+		fSnapshots.clear();
+	}
+
 	/**
 	 * Saves INSTANCE preferences
 	 */
@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.internal.core.builders;
+
+import java.util.*;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.osgi.service.resolver.*;
+import org.eclipse.pde.core.build.IBuild;
+import org.eclipse.pde.core.build.IBuildEntry;
+import org.eclipse.pde.core.plugin.*;
+import org.eclipse.pde.internal.core.ClasspathUtilCore;
+import org.eclipse.pde.internal.core.PDECore;
+
+/**
+ * Changes of the dependencies of a workspace project, taken from the resolver deltas
+ * since the project was last validated.
+ * <p>
+ * The changes are stored by the {@link PluginRebuilder} in the {@link PDECore#TOUCH_PROJECT}
+ * session property of the project.  They are used by the {@link ManifestConsistencyChecker}
+ * to decide which files of the project have to be validated again.
+ * </p>
+ */
+public class DependencyChanges {
+
+	/**
+	 * {@link BundleDelta} types of a bundle that change its wiring
+	 */
+	private static final int WIRING = BundleDelta.RESOLVED | BundleDelta.UNRESOLVED | BundleDelta.LINKAGE_CHANGED | BundleDelta.OPTIONAL_LINKAGE_CHANGED;
+
+	private static final String PLATFORM_PLUGIN = "platform:/plugin/"; //$NON-NLS-1$
+
+	private final boolean fUnknown;
+	private final int fDeltaType;
+
+	/**
+	 * Symbolic names of the bundles that were added, removed or updated
+	 */
+	private final Set fBundles;
+
+	/**
+	 * Names of the packages exported by the bundles that were added, removed or updated
+	 */
+	private final Set fPackages;
+
+	/**
+	 * Symbolic names of the bundles that were added or removed
+	 */
+	private final Set fAddedOrRemoved;
+
+	/**
+	 * Ids of the plug-ins whose extension points or schemas were added, removed or changed
+	 */
+	private final Set fExtensionPoints;
+
+	/**
+	 * Creates changes that are not known in detail, like a change of the target platform.
+	 * Everything that depends on other bundles has to be validated again.
+	 */
+	public DependencyChanges() {
+		this(true, 0, Collections.EMPTY_SET, Collections.EMPTY_SET, Collections.EMPTY_SET, Collections.EMPTY_SET);
+	}
+
+	/**
+	 * Creates the changes of a project.
+	 *
+	 * @param deltaType the {@link BundleDelta} types reported for the bundle of the project
+	 * @param bundles symbolic names of the bundles that were added, removed or updated
+	 * @param packages names of the packages exported by these bundles
+	 * @param addedOrRemoved symbolic names of the bundles that were added or removed
+	 * @param extensionPoints ids of the plug-ins whose extension points or schemas changed
+	 */
+	public DependencyChanges(int deltaType, Set bundles, Set packages, Set addedOrRemoved, Set extensionPoints) {
+		this(false, deltaType, bundles, packages, addedOrRemoved, extensionPoints);
+	}
+
+	private DependencyChanges(boolean unknown, int deltaType, Set bundles, Set packages, Set addedOrRemoved, Set extensionPoints) {
+		fUnknown = unknown;
+		fDeltaType = deltaType;
+		fBundles = bundles;
+		fPackages = packages;
+		fAddedOrRemoved = addedOrRemoved;
+		fExtensionPoints = extensionPoints;
+	}
+
+	/**
+	 * Returns the changes of these and the given changes together, used when a project
+	 * is touched again before it was built.
+	 *
+	 * @param other changes not yet validated, may be <code>null</code>
+	 * @return combined changes
+	 */
+	DependencyChanges merge(Object other) {
+		if (other == null)
+			return this;
+		if (fUnknown || !(other instanceof DependencyChanges) || ((DependencyChanges) other).fUnknown)
+			return new DependencyChanges();
+		DependencyChanges changes = (DependencyChanges) other;
+		return new DependencyChanges(fDeltaType | changes.fDeltaType, union(fBundles, changes.fBundles), union(fPackages, changes.fPackages), union(fAddedOrRemoved, changes.fAddedOrRemoved), union(fExtensionPoints, changes.fExtensionPoints));
+	}
+
+	private static Set union(Set first, Set second) {
+		Set union = new HashSet(first);
+		union.addAll(second);
+		return union;
+	}
+
+	/**
+	 * Returns whether the changes are not known in detail.
+	 */
+	public boolean isUnknown() {
+		return fUnknown;
+	}
+
+	/**
+	 * Returns whether the bundle manifest of a project has to be validated again.  This is
+	 * the case if the wiring of the bundle changed, or if a bundle it is wired to changed.
+	 * An unresolved bundle is checked against the bundles and packages it asks for.
+	 *
+	 * @param desc bundle of the project, may be <code>null</code>
+	 */
+	public boolean affectsManifest(BundleDescription desc) {
+		if (fUnknown || (fDeltaType & WIRING) != 0)
+			return true;
+		if (fBundles.isEmpty() || desc == null)
+			return false;
+		if (desc.isResolved()) {
+			HostSpecification host = desc.getHost();
+			if (host != null && containsAny(fBundles, host.getHosts()))
+				return true;
+			if (containsAny(fBundles, desc.getResolvedRequires()))
+				return true;
+			ExportPackageDescription[] imports = desc.getResolvedImports();
+			for (int i = 0; i < imports.length; i++) {
+				if (fBundles.contains(imports[i].getExporter().getSymbolicName()))
+					return true;
+			}
+			return false;
+		}
+		HostSpecification host = desc.getHost();
+		if (host != null && fBundles.contains(host.getName()))
+			return true;
+		BundleSpecification[] requires = desc.getRequiredBundles();
+		for (int i = 0; i < requires.length; i++) {
+			if (fBundles.contains(requires[i].getName()))
+				return true;
+		}
+		ImportPackageSpecification[] imports = desc.getImportPackages();
+		for (int i = 0; i < imports.length; i++) {
+			if (fPackages.contains(imports[i].getName()))
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean containsAny(Set names, BundleDescription[] bundles) {
+		if (bundles == null)
+			return false;
+		for (int i = 0; i < bundles.length; i++) {
+			if (names.contains(bundles[i].getSymbolicName()))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether the extensions of a project have to be validated again.  This is the
+	 * case if the bundle of the project became resolved or unresolved, which changes the
+	 * classes visible to it, or if the extension points or schemas of a plug-in it
+	 * contributes to changed.
+	 *
+	 * @param model model of the project, may be <code>null</code>
+	 */
+	public boolean affectsExtensions(IPluginModelBase model) {
+		if (fUnknown || (fDeltaType & (BundleDelta.RESOLVED | BundleDelta.UNRESOLVED)) != 0)
+			return true;
+		if (fExtensionPoints.isEmpty() || model == null)
+			return false;
+		IPluginExtension[] extensions = model.getExtensions().getExtensions();
+		for (int i = 0; i < extensions.length; i++) {
+			String point = extensions[i].getPoint();
+			if (point == null)
+				continue;
+			IPluginModelBase pointModel = PDECore.getDefault().getExtensionsRegistry().findExtensionPointPlugin(point);
+			// an unknown extension point may have been removed from one of the plug-ins
+			if (pointModel == null || fExtensionPoints.contains(pointModel.getPluginBase().getId()))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether the build.properties of a project has to be validated again.  Only
+	 * the existence of the bundles it refers to and of the fragments of its bundle is
+	 * checked, so this is the case if one of them was added or removed.
+	 *
+	 * @param model model of the project, may be <code>null</code>
+	 */
+	public boolean affectsBuild(IPluginModelBase model) {
+		if (fUnknown)
+			return true;
+		if (fAddedOrRemoved.isEmpty() || model == null)
+			return false;
+		BundleDescription desc = model.getBundleDescription();
+		if (desc != null && containsAny(fAddedOrRemoved, desc.getFragments()))
+			return true;
+		try {
+			IBuild build = ClasspathUtilCore.getBuild(model);
+			if (build == null)
+				return false;
+			IBuildEntry entry = build.getEntry(IBuildEntry.SECONDARY_DEPENDENCIES);
+			if (entry != null && containsAny(fAddedOrRemoved, entry.getTokens()))
+				return true;
+			entry = build.getEntry(IBuildEntry.JARS_EXTRA_CLASSPATH);
+			if (entry != null) {
+				String[] tokens = entry.getTokens();
+				for (int i = 0; i < tokens.length; i++) {
+					if (!tokens[i].startsWith(PLATFORM_PLUGIN))
+						continue;
+					String path = tokens[i].substring(PLATFORM_PLUGIN.length());
+					int sep = path.indexOf('/');
+					if (sep > -1 && fAddedOrRemoved.contains(path.substring(0, sep)))
+						return true;
+				}
+			}
+		} catch (CoreException e) {
+			// the build.properties is not valid, it is validated when it changes
+		}
+		return false;
+	}
+
+	private static boolean containsAny(Set names, String[] tokens) {
+		for (int i = 0; i < tokens.length; i++) {
+			if (names.contains(tokens[i]))
+				return true;
+		}
+		return false;
+	}
+
+	public String toString() {
+		if (fUnknown)
+			return "unknown changes"; //$NON-NLS-1$
+		return "delta type: " + fDeltaType + ", changed bundles: " + fBundles + ", changed extension points: " + fExtensionPoints; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
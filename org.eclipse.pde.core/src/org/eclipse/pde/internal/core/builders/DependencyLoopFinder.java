@@ -1,27 +1,163 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2008 IBM Corporation and others.
+ *  Copyright (c) 2000, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
  *  http://www.eclipse.org/legal/epl-v10.html
- * 
+ *
  *  Contributors:
  *     IBM Corporation - initial API and implementation
  *******************************************************************************/
 package org.eclipse.pde.internal.core.builders;
 
-import java.util.Vector;
-
+import java.util.*;
+import org.eclipse.osgi.service.resolver.BundleDescription;
+import org.eclipse.osgi.service.resolver.State;
 import org.eclipse.osgi.util.NLS;
-import org.eclipse.pde.core.plugin.IPlugin;
-import org.eclipse.pde.core.plugin.IPluginImport;
-import org.eclipse.pde.core.plugin.IPluginModel;
-import org.eclipse.pde.core.plugin.IPluginModelBase;
-import org.eclipse.pde.core.plugin.PluginRegistry;
+import org.eclipse.pde.core.plugin.*;
 import org.eclipse.pde.internal.core.PDECoreMessages;
+import org.eclipse.pde.internal.core.TargetPlatformHelper;
 
+/**
+ * Finds loops in the dependencies between plug-ins.
+ * <p>
+ * The dependency graph is split into its strongly connected components in a single
+ * pass (Tarjan's algorithm).  A plug-in is part of a loop exactly when its component
+ * has more than one member or it depends on itself.  Inside a component every
+ * elementary loop is enumerated with Johnson's algorithm: the loops through a member
+ * are searched among the members not yet started from, and members that cannot lead
+ * back to the start are blocked until one of their successors can.  Each loop is
+ * reported once, starting at the first of its members in the component.
+ * </p>
+ */
 public class DependencyLoopFinder {
 
+	/**
+	 * Dependency graph the loops are searched in
+	 */
+	private static abstract class Graph {
+
+		/**
+		 * Map of node to its successors
+		 */
+		private Map fSuccessors = new HashMap();
+
+		Object[] getSuccessors(Object node) {
+			Object[] successors = (Object[]) fSuccessors.get(node);
+			if (successors == null) {
+				// a dependency listed twice must not report its loops twice
+				successors = new LinkedHashSet(Arrays.asList(computeSuccessors(node))).toArray();
+				fSuccessors.put(node, successors);
+			}
+			return successors;
+		}
+
+		protected abstract Object[] computeSuccessors(Object node);
+
+		/**
+		 * Returns the plug-in a node stands for.
+		 */
+		protected abstract IPluginBase getPlugin(Object node);
+	}
+
+	/**
+	 * Graph of plug-in ids and the plug-ins they import
+	 */
+	private static class PluginGraph extends Graph {
+
+		private IPlugin fRoot;
+		private IPlugin[] fCandidates;
+		private boolean fOnlyCandidates;
+
+		/**
+		 * Map of plug-in id to {@link IPlugin}
+		 */
+		private Map fPlugins = new HashMap();
+
+		PluginGraph(IPlugin root, IPlugin[] candidates, boolean onlyCandidates) {
+			fRoot = root;
+			fCandidates = candidates;
+			fOnlyCandidates = onlyCandidates;
+			fPlugins.put(root.getId(), root);
+			if (candidates != null) {
+				for (int i = 0; i < candidates.length; i++) {
+					fPlugins.put(candidates[i].getId(), candidates[i]);
+				}
+			}
+		}
+
+		protected Object[] computeSuccessors(Object node) {
+			List successors = new ArrayList();
+			IPlugin plugin = (IPlugin) getPlugin(node);
+			boolean isRoot = plugin == fRoot;
+			if (plugin != null && (!isRoot || !fOnlyCandidates)) {
+				IPluginImport[] iimports = plugin.getImports();
+				for (int i = 0; i < iimports.length; i++) {
+					String id = iimports[i].getId();
+					//Be paranoid
+					if (id != null && getPlugin(id) != null)
+						successors.add(id);
+				}
+			}
+			if (isRoot && fCandidates != null) {
+				for (int i = 0; i < fCandidates.length; i++) {
+					successors.add(fCandidates[i].getId());
+				}
+			}
+			return successors.toArray();
+		}
+
+		protected IPluginBase getPlugin(Object node) {
+			IPlugin plugin = (IPlugin) fPlugins.get(node);
+			if (plugin == null && !fPlugins.containsKey(node)) {
+				plugin = findPlugin((String) node);
+				fPlugins.put(node, plugin);
+			}
+			return plugin;
+		}
+
+		private static IPlugin findPlugin(String id) {
+			IPluginModelBase childModel = PluginRegistry.findModel(id);
+			if (childModel == null || !(childModel instanceof IPluginModel))
+				return null;
+			return (IPlugin) childModel.getPluginBase();
+		}
+	}
+
+	/**
+	 * Graph of the bundles of a state and the bundles they require
+	 */
+	private static class StateGraph extends Graph {
+
+		protected Object[] computeSuccessors(Object node) {
+			return ((BundleDescription) node).getResolvedRequires();
+		}
+
+		protected IPluginBase getPlugin(Object node) {
+			IPluginModelBase model = PluginRegistry.findModel((BundleDescription) node);
+			return model == null ? null : model.getPluginBase();
+		}
+	}
+
+	/**
+	 * Position of the depth first search in the successors of a node
+	 */
+	private static class Frame {
+		Object fNode;
+		Object[] fSuccessors;
+		int fNext = 0;
+
+		/**
+		 * Whether a loop was found through the node, used when searching loops
+		 */
+		boolean fFound = false;
+
+		Frame(Object node, Object[] successors) {
+			fNode = node;
+			fSuccessors = successors;
+		}
+	}
+
 	public static DependencyLoop[] findLoops(IPlugin root) {
 		return findLoops(root, null);
 	}
@@ -30,106 +166,218 @@ public class DependencyLoopFinder {
 		return findLoops(root, candidates, false);
 	}
 
+	/**
+	 * Returns the loops the given plug-in is part of.
+	 *
+	 * @param root plug-in to find the loops of
+	 * @param candidates additional plug-ins the root depends on, may be <code>null</code>
+	 * @param onlyCandidates whether to ignore the imports of the root and only consider the candidates
+	 * @return every elementary loop starting and ending at the root
+	 */
 	public static DependencyLoop[] findLoops(IPlugin root, IPlugin[] candidates, boolean onlyCandidates) {
-		Vector loops = new Vector();
-
-		Vector path = new Vector();
-		findLoops(loops, path, root, candidates, onlyCandidates, new Vector());
+		List loops = new ArrayList();
+		Graph graph = new PluginGraph(root, candidates, onlyCandidates);
+		Object node = root.getId();
+		List components = findComponents(graph, new Object[] {node});
+		for (int i = 0; i < components.size(); i++) {
+			Set component = (Set) components.get(i);
+			if (component.contains(node)) {
+				addLoops(loops, graph, component, node);
+				break;
+			}
+		}
 		return (DependencyLoop[]) loops.toArray(new DependencyLoop[loops.size()]);
 	}
 
-	private static void findLoops(Vector loops, Vector path, IPlugin subroot, IPlugin[] candidates, boolean onlyCandidates, Vector exploredPlugins) {
-		if (path.size() > 0) {
-			// test the path so far
-			// is the subroot the same as root - if yes, that's it
-
-			IPlugin root = (IPlugin) path.elementAt(0);
-			if (isEquivalent(root, subroot)) {
-				// our loop!!
-				DependencyLoop loop = new DependencyLoop();
-				loop.setMembers((IPlugin[]) path.toArray(new IPlugin[path.size()]));
-				int no = loops.size() + 1;
-				loop.setName(NLS.bind(PDECoreMessages.Builders_DependencyLoopFinder_loopName, ("" + no))); //$NON-NLS-1$
-				loops.add(loop);
-				return;
-			}
-			// is the subroot the same as any other node?
-			// if yes, abort - local loop that is not ours
-			for (int i = 1; i < path.size(); i++) {
-				IPlugin node = (IPlugin) path.elementAt(i);
-				if (isEquivalent(subroot, node)) {
-					// local loop
-					return;
-				}
+	/**
+	 * Returns every elementary loop between the resolved required bundles of the given state.
+	 *
+	 * @param state resolved state
+	 * @return loops, grouped by the strongly connected components they belong to
+	 */
+	public static DependencyLoop[] findLoops(State state) {
+		List loops = new ArrayList();
+		Graph graph = new StateGraph();
+		List components = findComponents(graph, state.getResolvedBundles());
+		for (int i = 0; i < components.size(); i++) {
+			Set component = (Set) components.get(i);
+			// the loops through a member are found before the member is left out
+			Set members = new HashSet(component);
+			for (Iterator iter = component.iterator(); iter.hasNext();) {
+				Object node = iter.next();
+				addLoops(loops, graph, members, node);
+				members.remove(node);
 			}
 		}
-		Vector newPath = path.size() > 0 ? ((Vector) path.clone()) : path;
-		newPath.add(subroot);
-
-		if (!onlyCandidates) {
-			IPluginImport[] iimports = subroot.getImports();
-			for (int i = 0; i < iimports.length; i++) {
-				IPluginImport iimport = iimports[i];
-				String id = iimport.getId();
-				//Be paranoid
-				if (id == null)
+		return (DependencyLoop[]) loops.toArray(new DependencyLoop[loops.size()]);
+	}
+
+	/**
+	 * Returns all loops between the plug-ins of the target platform and the workspace.
+	 *
+	 * @return loops in the current PDE state
+	 */
+	public static DependencyLoop[] findAllLoops() {
+		return findLoops(TargetPlatformHelper.getState());
+	}
+
+	/**
+	 * Adds every elementary loop from the given node back to itself that only passes
+	 * through the given nodes.
+	 *
+	 * @param nodes nodes of the strongly connected component the loops may pass through,
+	 *  including the start
+	 */
+	private static void addLoops(List loops, Graph graph, Set nodes, Object start) {
+		// nodes that cannot lead back to the start on the current path
+		Set blocked = new HashSet();
+		// map of node to the nodes to unblock once it is unblocked
+		Map blockedBy = new HashMap();
+		LinkedList path = new LinkedList();
+		LinkedList frames = new LinkedList();
+		path.addLast(start);
+		blocked.add(start);
+		frames.addFirst(new Frame(start, graph.getSuccessors(start)));
+		while (!frames.isEmpty()) {
+			Frame frame = (Frame) frames.getFirst();
+			if (frame.fNext < frame.fSuccessors.length) {
+				Object successor = frame.fSuccessors[frame.fNext++];
+				if (!nodes.contains(successor))
 					continue;
-				if (!exploredPlugins.contains(id)) {
-					// is plugin in list of non loop yielding plugins
-					//Commenting linear lookup - was very slow 
-					//when called from here. We will use
-					//model manager instead because it
-					//has a hash table lookup that is much faster.
-					//IPlugin child = PDECore.getDefault().findPlugin(id);
-					IPlugin child = findPlugin(id);
-					if (child != null) {
-						// number of loops before traversing plugin
-						int oldLoopSize = loops.size();
-
-						findLoops(loops, newPath, child, null, false, exploredPlugins);
-
-						// number of loops after traversing plugin
-						int newLoopsSize = loops.size();
-
-						if (oldLoopSize == newLoopsSize) {// no change in number of loops
-							// no loops from going to this node, skip next time
-							exploredPlugins.add(id);
-						}
+				if (successor.equals(start)) {
+					addLoop(loops, graph, path);
+					frame.fFound = true;
+				} else if (!blocked.contains(successor)) {
+					path.addLast(successor);
+					blocked.add(successor);
+					frames.addFirst(new Frame(successor, graph.getSuccessors(successor)));
+				}
+				continue;
+			}
+			frames.removeFirst();
+			path.removeLast();
+			if (frame.fFound) {
+				unblock(frame.fNode, blocked, blockedBy);
+				if (!frames.isEmpty())
+					((Frame) frames.getFirst()).fFound = true;
+			} else {
+				for (int i = 0; i < frame.fSuccessors.length; i++) {
+					if (!nodes.contains(frame.fSuccessors[i]))
+						continue;
+					Set waiting = (Set) blockedBy.get(frame.fSuccessors[i]);
+					if (waiting == null) {
+						waiting = new HashSet();
+						blockedBy.put(frame.fSuccessors[i], waiting);
 					}
+					waiting.add(frame.fNode);
 				}
-
 			}
-
 		}
-		if (candidates != null) {
-			for (int i = 0; i < candidates.length; i++) {
-				IPlugin candidate = candidates[i];
-
-				// number of loops before traversing plugin
-				int oldLoopSize = loops.size();
-
-				findLoops(loops, newPath, candidate, null, false, exploredPlugins);
-
-				// number of loops after traversing plugin
-				int newLoopsSize = loops.size();
+	}
 
-				if (oldLoopSize == newLoopsSize) { // no change in number of loops
-					// no loops from going to this node, skip next time
-					exploredPlugins.add(candidate.getId());
-				}
-			}
+	/**
+	 * Unblocks the given node and the nodes waiting for it.
+	 */
+	private static void unblock(Object node, Set blocked, Map blockedBy) {
+		LinkedList queue = new LinkedList();
+		queue.add(node);
+		while (!queue.isEmpty()) {
+			Object next = queue.removeFirst();
+			if (!blocked.remove(next))
+				continue;
+			Set waiting = (Set) blockedBy.remove(next);
+			if (waiting != null)
+				queue.addAll(waiting);
 		}
+	}
 
+	/**
+	 * Adds the loop along the given path, unless one of its nodes has no plug-in.
+	 */
+	private static void addLoop(List loops, Graph graph, List path) {
+		IPluginBase[] members = getPlugins(graph, path);
+		if (members == null)
+			return;
+		DependencyLoop loop = new DependencyLoop();
+		loop.setMembers(members);
+		int no = loops.size() + 1;
+		loop.setName(NLS.bind(PDECoreMessages.Builders_DependencyLoopFinder_loopName, ("" + no))); //$NON-NLS-1$
+		loops.add(loop);
 	}
 
-	private static IPlugin findPlugin(String id) {
-		IPluginModelBase childModel = PluginRegistry.findModel(id);
-		if (childModel == null || !(childModel instanceof IPluginModel))
-			return null;
-		return (IPlugin) childModel.getPluginBase();
+	/**
+	 * Returns the plug-ins of the given nodes.
+	 *
+	 * @return the plug-ins or <code>null</code> if a node has no plug-in
+	 */
+	private static IPluginBase[] getPlugins(Graph graph, List nodes) {
+		IPluginBase[] plugins = new IPluginBase[nodes.size()];
+		for (int i = 0; i < plugins.length; i++) {
+			plugins[i] = graph.getPlugin(nodes.get(i));
+			if (plugins[i] == null)
+				return null;
+		}
+		return plugins;
 	}
 
-	private static boolean isEquivalent(IPlugin left, IPlugin right) {
-		return left.getId().equals(right.getId());
+	/**
+	 * Computes the strongly connected components reachable from the given nodes that
+	 * contain a loop, that is components with more than one node and nodes that are
+	 * their own successor.
+	 *
+	 * @return list of components, each a {@link Set} of nodes in the order they were visited
+	 */
+	private static List findComponents(Graph graph, Object[] starts) {
+		List components = new ArrayList();
+		// map of node to its index and lowest reachable index
+		Map indices = new HashMap();
+		Set onStack = new HashSet();
+		LinkedList stack = new LinkedList();
+		LinkedList frames = new LinkedList();
+		int counter = 0;
+		for (int i = 0; i < starts.length; i++) {
+			if (indices.containsKey(starts[i]))
+				continue;
+			indices.put(starts[i], new int[] {counter, counter});
+			counter++;
+			stack.addFirst(starts[i]);
+			onStack.add(starts[i]);
+			frames.addFirst(new Frame(starts[i], graph.getSuccessors(starts[i])));
+			while (!frames.isEmpty()) {
+				Frame frame = (Frame) frames.getFirst();
+				int[] data = (int[]) indices.get(frame.fNode);
+				if (frame.fNext < frame.fSuccessors.length) {
+					Object successor = frame.fSuccessors[frame.fNext++];
+					int[] successorData = (int[]) indices.get(successor);
+					if (successorData == null) {
+						indices.put(successor, new int[] {counter, counter});
+						counter++;
+						stack.addFirst(successor);
+						onStack.add(successor);
+						frames.addFirst(new Frame(successor, graph.getSuccessors(successor)));
+					} else if (onStack.contains(successor)) {
+						data[1] = Math.min(data[1], successorData[0]);
+					}
+					continue;
+				}
+				frames.removeFirst();
+				if (!frames.isEmpty()) {
+					int[] parentData = (int[]) indices.get(((Frame) frames.getFirst()).fNode);
+					parentData[1] = Math.min(parentData[1], data[1]);
+				}
+				if (data[1] != data[0])
+					continue;
+				LinkedList members = new LinkedList();
+				Object member;
+				do {
+					member = stack.removeFirst();
+					onStack.remove(member);
+					members.addFirst(member);
+				} while (!member.equals(frame.fNode));
+				if (members.size() > 1 || Arrays.asList(frame.fSuccessors).contains(frame.fNode))
+					components.add(new LinkedHashSet(members));
+			}
+		}
+		return components;
 	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2005, 2011 IBM Corporation and others.
+ *  Copyright (c) 2005, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -11,6 +11,8 @@
  *******************************************************************************/
 package org.eclipse.pde.internal.core.builders;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.eclipse.core.filebuffers.*;
 import org.eclipse.core.resources.*;
 import org.eclipse.core.runtime.CoreException;
@@ -27,6 +29,12 @@ public abstract class ErrorReporter {
 	protected IProject fProject;
 	private PDEMarkerFactory fMarkerFactory;
 
+	/**
+	 * Markers reported while validating the content, the markers of the file are updated
+	 * with them when the validation is done
+	 */
+	private List fMarkers;
+
 	public ErrorReporter(IFile file) {
 		fErrorCount = 0;
 		fFile = file;
@@ -37,7 +45,13 @@ public abstract class ErrorReporter {
 
 	protected IMarker addMarker(String message, int lineNumber, int severity, int problemID, String category) {
 		try {
-			IMarker marker = getMarkerFactory().createMarker(fFile, problemID, category);
+			IMarker marker;
+			if (fMarkers != null) {
+				marker = getMarkerFactory().createPendingMarker(fFile, problemID, category);
+				fMarkers.add(marker);
+			} else {
+				marker = getMarkerFactory().createMarker(fFile, problemID, category);
+			}
 			marker.setAttribute(IMarker.MESSAGE, message);
 			marker.setAttribute(IMarker.SEVERITY, severity);
 			if (lineNumber == -1)
@@ -83,10 +97,9 @@ public abstract class ErrorReporter {
 		return fMarkerFactory;
 	}
 
-	private void removeFileMarkers() {
+	private void updateFileMarkers() {
 		try {
-			fFile.deleteMarkers(IMarker.PROBLEM, false, IResource.DEPTH_ZERO);
-			fFile.deleteMarkers(PDEMarkerFactory.MARKER_ID, false, IResource.DEPTH_ZERO);
+			MarkerBatch.updateMarkers(fFile, fMarkers);
 		} catch (CoreException e) {
 			PDECore.logException(e);
 		}
@@ -126,9 +139,21 @@ public abstract class ErrorReporter {
 		report(message, line, compilerFlag, PDEMarkerFactory.NO_RESOLUTION, category);
 	}
 
+	/**
+	 * Validates the file and updates its problem markers.  Only the markers of problems
+	 * that were added or went away are changed.
+	 * 
+	 * @param monitor progress monitor
+	 */
 	public void validateContent(IProgressMonitor monitor) {
-		removeFileMarkers();
-		validate(monitor);
+		fErrorCount = 0;
+		fMarkers = new ArrayList();
+		try {
+			validate(monitor);
+			updateFileMarkers();
+		} finally {
+			fMarkers = null;
+		}
 	}
 
 	protected abstract void validate(IProgressMonitor monitor);
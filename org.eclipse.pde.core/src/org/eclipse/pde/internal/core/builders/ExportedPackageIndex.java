@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.internal.core.builders;
+
+import java.util.*;
+import org.eclipse.osgi.service.resolver.*;
+import org.eclipse.pde.internal.core.*;
+
+/**
+ * Index of the packages exported by the bundles of the PDE state, shared by the
+ * manifest validation of all projects.
+ * <p>
+ * The index is built once for a state and kept up to date with the bundles added,
+ * removed and updated in resolver deltas.  If the state was modified or resolved without
+ * a delta being reported, the index is rebuilt the next time it is used.  Whether an exporter
+ * is resolved is checked when a package is looked up, so resolving the state again does
+ * not change the index.
+ * </p>
+ */
+public class ExportedPackageIndex implements IStateDeltaListener {
+
+	private State fState;
+	private long fTimeStamp;
+
+	/**
+	 * Map of package name to a list of {@link ExportPackageDescription}s, in the order
+	 * the exporting bundles were added
+	 */
+	private Map fPackages = new HashMap();
+
+	/**
+	 * Map of bundle id to the names of the packages it exports, used to remove the
+	 * exports of bundles that were removed or updated
+	 */
+	private Map fBundlePackages = new HashMap();
+
+	public void start() {
+		PDECore.getDefault().getModelManager().addStateDeltaListener(this);
+	}
+
+	public void stop() {
+		PDECore.getDefault().getModelManager().removeStateDeltaListener(this);
+		synchronized (this) {
+			clear();
+		}
+	}
+
+	/**
+	 * Returns an export of the given package in the given state.  If the package is
+	 * exported by resolved bundles, the export of the last of them is returned, otherwise
+	 * the export of the first bundle.
+	 *
+	 * @param state the state
+	 * @param name package name
+	 * @return an export of the package or <code>null</code> if no bundle exports it
+	 */
+	public synchronized ExportPackageDescription getExportedPackage(State state, String name) {
+		if (state != fState || state.getTimeStamp() != fTimeStamp)
+			build(state);
+		List exports = (List) fPackages.get(name);
+		if (exports == null)
+			return null;
+		for (int i = exports.size() - 1; i >= 0; i--) {
+			ExportPackageDescription export = (ExportPackageDescription) exports.get(i);
+			if (export.getSupplier().isResolved())
+				return export;
+		}
+		return (ExportPackageDescription) exports.get(0);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.pde.internal.core.IStateDeltaListener#stateResolved(org.eclipse.osgi.service.resolver.StateDelta)
+	 */
+	public synchronized void stateResolved(StateDelta delta) {
+		MinimalState state = PDECore.getDefault().getModelManager().getState();
+		if (delta == null || fState == null || delta.getState() != fState || state == null || state.getState() != fState || state.getPreviousResolvedTimeStamp() != fTimeStamp) {
+			// the delta does not cover all changes since the index was built, it is
+			// built again on the next lookup
+			clear();
+			return;
+		}
+		BundleDelta[] deltas = delta.getChanges(BundleDelta.ADDED | BundleDelta.REMOVED | BundleDelta.UPDATED, false);
+		for (int i = 0; i < deltas.length; i++) {
+			BundleDescription bundle = deltas[i].getBundle();
+			int type = deltas[i].getType();
+			if ((type & (BundleDelta.REMOVED | BundleDelta.UPDATED)) != 0)
+				removeBundle(bundle.getBundleId());
+			if ((type & BundleDelta.REMOVED) == 0)
+				addBundle(bundle);
+		}
+		// modifications made since the resolve are not in the delta, the index is
+		// rebuilt when they are seen on the next lookup
+		fTimeStamp = state.getResolvedTimeStamp();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.pde.internal.core.IStateDeltaListener#stateChanged(org.eclipse.osgi.service.resolver.State)
+	 */
+	public synchronized void stateChanged(State newState) {
+		clear();
+	}
+
+	private void build(State state) {
+		clear();
+		fState = state;
+		fTimeStamp = state.getTimeStamp();
+		BundleDescription[] bundles = state.getBundles();
+		for (int i = 0; i < bundles.length; i++) {
+			addBundle(bundles[i]);
+		}
+	}
+
+	private void clear() {
+		fState = null;
+		fPackages.clear();
+		fBundlePackages.clear();
+	}
+
+	private void addBundle(BundleDescription bundle) {
+		ExportPackageDescription[] exports = bundle.getExportPackages();
+		if (exports.length == 0)
+			return;
+		String[] names = new String[exports.length];
+		for (int i = 0; i < exports.length; i++) {
+			names[i] = exports[i].getName();
+			List list = (List) fPackages.get(names[i]);
+			if (list == null) {
+				list = new ArrayList(1);
+				fPackages.put(names[i], list);
+			}
+			list.add(exports[i]);
+		}
+		fBundlePackages.put(new Long(bundle.getBundleId()), names);
+	}
+
+	private void removeBundle(long id) {
+		String[] names = (String[]) fBundlePackages.remove(new Long(id));
+		if (names == null)
+			return;
+		for (int i = 0; i < names.length; i++) {
+			List list = (List) fPackages.get(names[i]);
+			if (list == null)
+				continue;
+			for (Iterator iter = list.iterator(); iter.hasNext();) {
+				ExportPackageDescription export = (ExportPackageDescription) iter.next();
+				if (export.getExporter().getBundleId() == id)
+					iter.remove();
+			}
+			if (list.isEmpty())
+				fPackages.remove(names[i]);
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -101,7 +101,7 @@ public class ExtensionPointSchemaBuilder extends IncrementalProjectBuilder {
 			if (member instanceof IContainer)
 				cleanSchemasIn((IContainer) member, monitor);
 			else if (member instanceof IFile && isSchemaFile((IFile) member)) {
-				member.deleteMarkers(PDEMarkerFactory.MARKER_ID, true, IResource.DEPTH_ZERO);
+				MarkerBatch.deleteMarkers(member, PDEMarkerFactory.MARKER_ID, true, IResource.DEPTH_ZERO);
 			}
 		}
 	}
@@ -118,6 +118,7 @@ public class ExtensionPointSchemaBuilder extends IncrementalProjectBuilder {
 		SchemaErrorReporter reporter = new SchemaErrorReporter(file);
 		DefaultSAXParser.parse(file, reporter);
 		reporter.validateContent(monitor);
+		reporter.updateMarkers();
 
 		StringWriter swriter = new StringWriter();
 		PrintWriter writer = new PrintWriter(swriter);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2010 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -23,6 +23,7 @@ import org.eclipse.pde.core.plugin.*;
 import org.eclipse.pde.internal.core.*;
 import org.eclipse.pde.internal.core.ischema.*;
 import org.eclipse.pde.internal.core.project.PDEProject;
+import org.eclipse.pde.internal.core.schema.CompiledSchema;
 import org.eclipse.pde.internal.core.schema.SchemaRegistry;
 import org.eclipse.pde.internal.core.util.*;
 import org.w3c.dom.*;
@@ -33,6 +34,11 @@ public class ExtensionsErrorReporter extends ManifestErrorReporter {
 	private IPluginModelBase fModel;
 	private IBuild fBuildModel;
 
+	/**
+	 * Extensions that have been validated while the file was being parsed
+	 */
+	private Set fValidatedExtensions = new HashSet();
+
 	public ExtensionsErrorReporter(IFile file) {
 		super(file);
 		fModel = PluginRegistry.findModel(file.getProject());
@@ -49,12 +55,38 @@ public class ExtensionsErrorReporter extends ManifestErrorReporter {
 	public void characters(char[] characters, int start, int length) throws SAXException {
 	}
 
+	/**
+	 * Validates top level extensions as soon as they have been parsed and drops their
+	 * content, so that only one extension at a time is held in memory.
+	 * 
+	 * @see org.eclipse.pde.internal.core.builders.XMLErrorReporter#elementCompleted(org.w3c.dom.Element, org.w3c.dom.Element)
+	 */
+	protected void elementCompleted(Element element, Element parent) {
+		// the root element is only added to the document at the end of the parse
+		if (parent == null || parent.getParentNode() != null || !"extension".equals(element.getNodeName())) //$NON-NLS-1$
+			return;
+		if (!isRootElementName(parent.getNodeName()))
+			return;
+		validateExtension(element);
+		releaseChildren(element);
+	}
+
+	/**
+	 * Returns whether extensions are expected in a root element of the given name.
+	 * 
+	 * @param name name of the root element
+	 * @return whether the name is valid for the root element
+	 */
+	protected boolean isRootElementName(String name) {
+		return "plugin".equals(name) || "fragment".equals(name); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
 	public void validateContent(IProgressMonitor monitor) {
 		Element element = getDocumentRoot();
 		if (element == null)
 			return;
 		String elementName = element.getNodeName();
-		if (!"plugin".equals(elementName) && !"fragment".equals(elementName)) { //$NON-NLS-1$ //$NON-NLS-2$
+		if (!isRootElementName(elementName)) {
 			reportIllegalElement(element, CompilerFlags.ERROR);
 		} else {
 			int severity = CompilerFlags.getFlag(fProject, CompilerFlags.P_DEPRECATED);
@@ -95,6 +127,9 @@ public class ExtensionsErrorReporter extends ManifestErrorReporter {
 	}
 
 	protected void validateExtension(Element element) {
+		// extensions may have been validated while parsing
+		if (!fValidatedExtensions.add(element))
+			return;
 		if (!assertAttributeDefined(element, "point", CompilerFlags.ERROR)) //$NON-NLS-1$
 			return;
 		String pointID = element.getAttribute("point"); //$NON-NLS-1$
@@ -166,9 +201,7 @@ public class ExtensionsErrorReporter extends ManifestErrorReporter {
 		if (parentSchema != null) {
 			int severity = CompilerFlags.getFlag(fProject, CompilerFlags.P_UNKNOWN_ELEMENT);
 			if (severity != CompilerFlags.IGNORE) {
-				HashSet allowedElements = new HashSet();
-				computeAllowedElements(parentSchema.getType(), allowedElements);
-				if (!allowedElements.contains(elementName)) {
+				if (!getRules(parentSchema).getAllowedChildren().contains(elementName)) {
 					reportIllegalElement(element, severity);
 					return;
 				}
@@ -232,7 +265,7 @@ public class ExtensionsErrorReporter extends ManifestErrorReporter {
 	private void validateMinElementMult(Element element, ISchemaElement schemaElement) {
 		// Validate min element occurence violations
 		int minSeverity = CompilerFlags.getFlag(fProject, CompilerFlags.P_UNKNOWN_ELEMENT);
-		if (minSeverity != CompilerFlags.IGNORE) {
+		if (minSeverity != CompilerFlags.IGNORE && getRules(schemaElement).checkMinOccurrences()) {
 			HashSet minElementSet = ElementOccurenceChecker.findMinOccurenceViolations(schemaElement, element);
 			Iterator minIterator = minElementSet.iterator();
 
@@ -249,7 +282,7 @@ public class ExtensionsErrorReporter extends ManifestErrorReporter {
 	private void validateMaxElementMult(Element element, ISchemaElement schemaElement) {
 		// Validate max element occurence violations
 		int maxSeverity = CompilerFlags.getFlag(fProject, CompilerFlags.P_UNKNOWN_ELEMENT);
-		if (maxSeverity != CompilerFlags.IGNORE) {
+		if (maxSeverity != CompilerFlags.IGNORE && getRules(schemaElement).checkMaxOccurrences()) {
 			HashSet maxElementSet = ElementOccurenceChecker.findMaxOccurenceViolations(schemaElement, element);
 			Iterator maxIterator = maxElementSet.iterator();
 			while (maxIterator.hasNext()) {
@@ -258,34 +291,13 @@ public class ExtensionsErrorReporter extends ManifestErrorReporter {
 		}
 	}
 
-	private void computeAllowedElements(ISchemaType type, HashSet elementSet) {
-		if (type instanceof ISchemaComplexType) {
-			ISchemaComplexType complexType = (ISchemaComplexType) type;
-			ISchemaCompositor compositor = complexType.getCompositor();
-			if (compositor != null)
-				computeAllowedElements(compositor, elementSet);
-
-			ISchemaAttribute[] attrs = complexType.getAttributes();
-			for (int i = 0; i < attrs.length; i++) {
-				if (attrs[i].getKind() == IMetaAttribute.JAVA)
-					elementSet.add(attrs[i].getName());
-			}
-		}
-	}
-
-	private void computeAllowedElements(ISchemaCompositor compositor, HashSet elementSet) {
-		ISchemaObject[] children = compositor.getChildren();
-		for (int i = 0; i < children.length; i++) {
-			ISchemaObject child = children[i];
-			if (child instanceof ISchemaObjectReference) {
-				ISchemaObjectReference ref = (ISchemaObjectReference) child;
-				ISchemaElement refElement = (ISchemaElement) ref.getReferencedObject();
-				if (refElement != null)
-					elementSet.add(refElement.getName());
-			} else if (child instanceof ISchemaCompositor) {
-				computeAllowedElements((ISchemaCompositor) child, elementSet);
-			}
-		}
+	/**
+	 * Returns the validation rules of the given schema element, shared by all
+	 * validations against the same version of its schema.
+	 */
+	private CompiledSchema.ElementRules getRules(ISchemaElement schemaElement) {
+		SchemaRegistry reg = PDECore.getDefault().getSchemaRegistry();
+		return reg.getCompiledSchema(schemaElement.getSchema()).getRules(schemaElement);
 	}
 
 	private void validateRequiredExtensionAttributes(Element element, ISchemaElement schemaElement) {
@@ -293,23 +305,21 @@ public class ExtensionsErrorReporter extends ManifestErrorReporter {
 		if (severity == CompilerFlags.IGNORE)
 			return;
 
-		ISchemaAttribute[] attInfos = schemaElement.getAttributes();
+		ISchemaAttribute[] attInfos = getRules(schemaElement).getRequiredAttributes();
 		for (int i = 0; i < attInfos.length; i++) {
 			ISchemaAttribute attInfo = attInfos[i];
-			if (attInfo.getUse() == ISchemaAttribute.REQUIRED) {
-				boolean found = element.getAttributeNode(attInfo.getName()) != null;
-				if (!found && attInfo.getKind() == IMetaAttribute.JAVA) {
-					NodeList children = element.getChildNodes();
-					for (int j = 0; j < children.getLength(); j++) {
-						if (attInfo.getName().equals(children.item(j).getNodeName())) {
-							found = true;
-							break;
-						}
+			boolean found = element.getAttributeNode(attInfo.getName()) != null;
+			if (!found && attInfo.getKind() == IMetaAttribute.JAVA) {
+				NodeList children = element.getChildNodes();
+				for (int j = 0; j < children.getLength(); j++) {
+					if (attInfo.getName().equals(children.item(j).getNodeName())) {
+						found = true;
+						break;
 					}
 				}
-				if (!found) {
-					reportMissingRequiredAttribute(element, attInfo.getName(), severity);
-				}
+			}
+			if (!found) {
+				reportMissingRequiredAttribute(element, attInfo.getName(), severity);
 			}
 		}
 	}
@@ -319,9 +329,7 @@ public class ExtensionsErrorReporter extends ManifestErrorReporter {
 			Attr attr = (Attr) attrs.item(i);
 			ISchemaAttribute attInfo = schemaElement.getAttribute(attr.getName());
 			if (attInfo == null) {
-				HashSet allowedElements = new HashSet();
-				computeAllowedElements(schemaElement.getType(), allowedElements);
-				if (allowedElements.contains(attr.getName())) {
+				if (getRules(schemaElement).getAllowedChildren().contains(attr.getName())) {
 					validateJavaAttribute(element, attr);
 				} else {
 					int flag = CompilerFlags.getFlag(fProject, CompilerFlags.P_UNKNOWN_ATTRIBUTE);
@@ -518,7 +526,7 @@ public class ExtensionsErrorReporter extends ManifestErrorReporter {
 				if (fBuildModel != null && fBuildModel.getEntry("source." + paths.get(i)) != null) //$NON-NLS-1$
 					return true;
 			} else {
-				if (CoreUtility.jarContainsResource(new File(bundleJar), paths.get(i).toString(), false))
+				if (JarEntryIndex.containsEntry(new File(bundleJar), paths.get(i).toString()))
 					return true;
 			}
 		}
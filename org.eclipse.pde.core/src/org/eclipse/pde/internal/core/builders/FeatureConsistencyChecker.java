@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -93,6 +93,7 @@ public class FeatureConsistencyChecker extends IncrementalProjectBuilder {
 			reporter.validateContent(monitor);
 		}
 		monitor.subTask(PDECoreMessages.Builders_updating);
+		reporter.updateMarkers();
 		monitor.done();
 	}
 
@@ -109,7 +110,7 @@ public class FeatureConsistencyChecker extends IncrementalProjectBuilder {
 			SubMonitor localmonitor = SubMonitor.convert(monitor, NLS.bind(PDECoreMessages.FeatureConsistencyChecker_0, file.getName()), 1);
 			try {
 				// clean problem markers on feature XML file
-				file.deleteMarkers(PDEMarkerFactory.MARKER_ID, true, IResource.DEPTH_ZERO);
+				MarkerBatch.deleteMarkers(file, PDEMarkerFactory.MARKER_ID, true, IResource.DEPTH_ZERO);
 				localmonitor.worked(1);
 			} finally {
 				localmonitor.done();
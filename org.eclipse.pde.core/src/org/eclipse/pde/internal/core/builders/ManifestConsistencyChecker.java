@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,12 +13,17 @@ package org.eclipse.pde.internal.core.builders;
 
 import java.io.File;
 import java.io.FilenameFilter;
-import java.util.Map;
+import java.util.*;
 import org.eclipse.core.resources.*;
 import org.eclipse.core.runtime.*;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.osgi.service.resolver.State;
 import org.eclipse.osgi.util.NLS;
+import org.eclipse.pde.core.plugin.IPluginModelBase;
+import org.eclipse.pde.core.plugin.PluginRegistry;
 import org.eclipse.pde.internal.core.*;
 import org.eclipse.pde.internal.core.project.PDEProject;
+import org.eclipse.pde.internal.core.util.WorkerPool;
 import org.osgi.framework.Bundle;
 
 public class ManifestConsistencyChecker extends IncrementalProjectBuilder {
@@ -154,7 +159,7 @@ public class ManifestConsistencyChecker extends IncrementalProjectBuilder {
 		if (!WorkspaceModelManager.isBinaryProject(project)) {
 			int type = getDeltaType(project);
 			if (type != 0) {
-				validateProject(type, monitor);
+				validateProject(project, type, monitor);
 			}
 		}
 		return EMPTY_LIST;
@@ -171,23 +176,22 @@ public class ManifestConsistencyChecker extends IncrementalProjectBuilder {
 			return MANIFEST | EXTENSIONS | BUILD | STRUCTURE;
 		}
 
-		// the project has been "touched" by PluginRebuilder to indicate
-		// that one of the dependencies (either in the target or workspace)
-		// has changed and a StateDelta was fired
-		if (Boolean.TRUE.equals(project.getSessionProperty(PDECore.TOUCH_PROJECT))) {
-			project.setSessionProperty(PDECore.TOUCH_PROJECT, null);
-			if (DEBUG) {
-				System.out.println("Dependencies Changed: Project [" + getProject().getName() + "] - full build"); //$NON-NLS-1$ //$NON-NLS-2$
-			}
-			return MANIFEST | EXTENSIONS | BUILD;
-		}
-
 		// check if any "significant" files have been changed/added/removed
 		// and build a subset or all manifest files accordingly
 		fSelfVisitor.reset();
 		delta.accept(fSelfVisitor);
 		int type = fSelfVisitor.getType();
 
+		// the project has been "touched" by PluginRebuilder to indicate
+		// that one of the dependencies (either in the target or workspace)
+		// has changed and a StateDelta was fired
+		Object changes = project.getSessionProperty(PDECore.TOUCH_PROJECT);
+		if (changes != null) {
+			project.setSessionProperty(PDECore.TOUCH_PROJECT, null);
+			// the class files changed by the dependency changes are accounted for
+			return type | getDependencyType(project, changes);
+		}
+
 		// catch anything we have missed 
 		// For example, upon startup, when target has changed since shutdown
 		// we depend on class file changes in the project that have resulted
@@ -208,170 +212,249 @@ public class ManifestConsistencyChecker extends IncrementalProjectBuilder {
 		return type;
 	}
 
-	private void validateProject(int type, IProgressMonitor monitor) {
-		monitor.beginTask(PDECoreMessages.ManifestConsistencyChecker_builderTaskName, getWorkAmount(type));
-		if ((type & STRUCTURE) != 0)
-			validateProjectStructure(type, new SubProgressMonitor(monitor, 1));
+	/**
+	 * Returns the files of the given project to validate because of the given changes of
+	 * its dependencies.
+	 * 
+	 * @param project project being built
+	 * @param changes {@link DependencyChanges} stored by the {@link PluginRebuilder}
+	 * @return the files to validate
+	 */
+	private int getDependencyType(IProject project, Object changes) {
+		int type = 0;
+		if (!(changes instanceof DependencyChanges) || ((DependencyChanges) changes).isUnknown()) {
+			type = MANIFEST | EXTENSIONS | BUILD;
+		} else {
+			DependencyChanges dependencyChanges = (DependencyChanges) changes;
+			IPluginModelBase model = PluginRegistry.findModel(project);
+			if (dependencyChanges.affectsManifest(model == null ? null : model.getBundleDescription()))
+				type |= MANIFEST;
+			if (dependencyChanges.affectsExtensions(model))
+				type |= EXTENSIONS;
+			if (dependencyChanges.affectsBuild(model))
+				type |= BUILD;
+		}
+		if (DEBUG) {
+			System.out.println("Dependencies Changed: Project [" + project.getName() + "] - " + changes + " - type " + type); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+		return type;
+	}
+
+	private void validateProject(IProject project, int type, IProgressMonitor monitor) {
+		List reporters = createReporters(project, type);
+		monitor.beginTask(PDECoreMessages.ManifestConsistencyChecker_builderTaskName, reporters.size() + 1);
+		try {
+			if ((type & STRUCTURE) != 0)
+				validateProjectStructure(project, type, new SubProgressMonitor(monitor, 1));
+			else
+				monitor.worked(1);
+
+			if (reporters.size() > 1 && WorkerPool.getDefaultSize() > 1) {
+				if (validateConcurrently(project, reporters, new SubProgressMonitor(monitor, reporters.size())))
+					return;
+			}
+			for (int i = 0; i < reporters.size(); i++) {
+				runReporter(project, reporters.get(i), new SubProgressMonitor(monitor, 1));
+			}
+		} finally {
+			monitor.done();
+		}
+	}
 
-		if ((type & MANIFEST | EXTENSIONS) != 0) {
-			IProject project = getProject();
+	/**
+	 * Returns the reporters validating the files of the given project that need to be
+	 * validated, in the order they are run when validating serially.
+	 * 
+	 * @return list of {@link XMLErrorReporter}s and {@link ErrorReporter}s
+	 */
+	private List createReporters(IProject project, int type) {
+		List reporters = new ArrayList(3);
+		if ((type & (MANIFEST | EXTENSIONS)) != 0) {
 			IFile file = PDEProject.getPluginXml(project);
 			if (!file.exists())
 				file = PDEProject.getFragmentXml(project);
+			IFile bundleManifest = PDEProject.getManifest(project);
 
 			if (file.exists()) {
-				validateFiles(file, type, monitor);
-			} else if ((type & MANIFEST) != 0) {
-				IFile manifestFile = PDEProject.getManifest(project);
-				if (manifestFile.exists())
-					validateManifestFile(manifestFile, new SubProgressMonitor(monitor, 1));
+				if (bundleManifest.exists()) {
+					if ((type & EXTENSIONS) != 0)
+						reporters.add(new ExtensionsErrorReporter(file));
+					if ((type & MANIFEST) != 0)
+						reporters.add(new BundleErrorReporter(bundleManifest));
+				} else if (file.equals(PDEProject.getPluginXml(project))) {
+					reporters.add(new PluginErrorReporter(file));
+				} else {
+					reporters.add(new FragmentErrorReporter(file));
+				}
+			} else if ((type & MANIFEST) != 0 && bundleManifest.exists()) {
+				reporters.add(new BundleErrorReporter(bundleManifest));
 			}
 		}
 		if ((type & BUILD) != 0) {
-			validateBuildProperties(new SubProgressMonitor(monitor, 1));
+			IFile file = PDEProject.getBuildProperties(project);
+			if (file.exists())
+				reporters.add(new BuildErrorReporter(file));
 		}
+		return reporters;
 	}
 
-	private int getWorkAmount(int type) {
-		int work = 1;
-		if ((type & MANIFEST | EXTENSIONS) != 0)
-			++work;
-		if ((type & BUILD) != 0)
-			++work;
-		return work;
-	}
-
-	private void validateProjectStructure(int type, IProgressMonitor monitor) {
+	/**
+	 * Validates a file of the given project and updates its markers.
+	 * 
+	 * @param reporter {@link XMLErrorReporter} or {@link ErrorReporter} of the file
+	 */
+	private void runReporter(IProject project, Object reporter, IProgressMonitor monitor) {
 		if (monitor.isCanceled())
 			return;
-		// clear markers from project
-		IProject project = getProject();
+		if (reporter instanceof XMLErrorReporter) {
+			XMLErrorReporter xmlReporter = (XMLErrorReporter) reporter;
+			monitor.subTask(NLS.bind(PDECoreMessages.Builders_verifying, xmlReporter.getFile().getFullPath().toString()));
+			DefaultSAXParser.parse(xmlReporter.getFile(), xmlReporter);
+			xmlReporter.validateContent(monitor);
+			monitor.subTask(PDECoreMessages.Builders_updating);
+			xmlReporter.updateMarkers();
+		} else if (reporter instanceof BuildErrorReporter) {
+			monitor.subTask(PDECoreMessages.ManifestConsistencyChecker_buildPropertiesSubtask);
+			((ErrorReporter) reporter).validateContent(monitor);
+		} else {
+			monitor.subTask(NLS.bind(PDECoreMessages.Builders_verifying, PDEProject.getManifest(project).getFullPath().toString()));
+			((ErrorReporter) reporter).validateContent(monitor);
+			monitor.subTask(PDECoreMessages.Builders_updating);
+		}
+		monitor.done();
+	}
+
+	/**
+	 * Runs the reporters of the project being built on worker threads and updates the
+	 * markers of all its files in one workspace operation.
+	 * <p>
+	 * The workers must not wait for the workspace lock held by the builder thread, so
+	 * everything that may need it is done before they start: their marker changes are
+	 * recorded in {@link MarkerBatch}es and the classpath of the project is resolved
+	 * first.  The reporters read the current PDE state rather than a copy, whose bundle
+	 * descriptions would not be the ones of the models.  If the state changed while the
+	 * workers ran, their results are discarded and the files are validated again on the
+	 * builder thread.
+	 * </p>
+	 * 
+	 * @param project project being built
+	 * @param reporters reporters of the files to validate
+	 * @param monitor progress monitor
+	 * @return whether the files were validated, <code>false</code> if they still need to be
+	 */
+	private boolean validateConcurrently(final IProject project, List reporters, IProgressMonitor monitor) {
 		try {
-			project.deleteMarkers(PDEMarkerFactory.MARKER_ID, false, IResource.DEPTH_ZERO);
+			if (project.hasNature(JavaCore.NATURE_ID))
+				JavaCore.create(project).getResolvedClasspath(true);
 		} catch (CoreException e) {
 		}
-
-		// make sure build.properties exists
-		validateBuildPropertiesExists(project);
-
-		// if META-INF exists, make sure MANIFEST.MF exists in correct casing
-		validateManifestCasing(project);
+		State state = TargetPlatformHelper.getState();
+		long stateStamp = state.getTimeStamp();
+		try {
+			WorkerPool pool = new WorkerPool("Manifest Validation"); //$NON-NLS-1$
+			Object[] results = pool.process(reporters.toArray(), new WorkerPool.IWorker() {
+				public Object process(Object item, IProgressMonitor workerMonitor) {
+					MarkerBatch batch = new MarkerBatch();
+					MarkerBatch.setCurrent(batch);
+					try {
+						runReporter(project, item, workerMonitor);
+					} finally {
+						MarkerBatch.setCurrent(null);
+					}
+					return batch;
+				}
+			}, monitor);
+			if (state != TargetPlatformHelper.getState() || stateStamp != state.getTimeStamp()) {
+				if (DEBUG) {
+					System.out.println("PDE state changed during validation of project [" + project.getName() + "], validating again"); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+				return false;
+			}
+			MarkerBatch[] batches = new MarkerBatch[results.length];
+			System.arraycopy(results, 0, batches, 0, results.length);
+			MarkerBatch.apply(batches, null);
+			// the files that were not validated because of a cancellation are validated by the next build
+			return true;
+		} catch (CoreException e) {
+			PDECore.log(e);
+			return true;
+		} finally {
+			monitor.done();
+		}
 	}
 
-	private void validateManifestFile(IFile file, IProgressMonitor monitor) {
+	private void validateProjectStructure(IProject project, int type, IProgressMonitor monitor) {
 		if (monitor.isCanceled())
 			return;
-		String message = NLS.bind(PDECoreMessages.Builders_verifying, file.getFullPath().toString());
-		monitor.subTask(message);
+		// markers of the project, replacing the ones of the last validation
+		List markers = new ArrayList();
 
-		BundleErrorReporter reporter = new BundleErrorReporter(file);
-		if (reporter != null) {
-			reporter.validateContent(monitor);
-			monitor.subTask(PDECoreMessages.Builders_updating);
-		}
-		monitor.done();
-	}
+		// make sure build.properties exists
+		validateBuildPropertiesExists(project, markers);
 
-	private void validateFiles(IFile file, int type, IProgressMonitor monitor) {
-		if (monitor.isCanceled())
-			return;
-		String message = NLS.bind(PDECoreMessages.Builders_verifying, file.getFullPath().toString());
-		monitor.subTask(message);
-
-		IFile bundleManifest = PDEProject.getManifest(getProject());
-		XMLErrorReporter reporter = null;
-		BundleErrorReporter bundleReporter = null;
-		if (bundleManifest.exists()) {
-			if ((type & EXTENSIONS) != 0)
-				reporter = new ExtensionsErrorReporter(file);
-			if ((type & MANIFEST) != 0)
-				bundleReporter = new BundleErrorReporter(bundleManifest);
-		} else if ((type & MANIFEST) != 0 || (type & EXTENSIONS) != 0) {
-			if (file.equals(PDEProject.getPluginXml(getProject()))) {
-				reporter = new PluginErrorReporter(file);
-			} else if (file.equals(PDEProject.getFragmentXml(getProject()))) {
-				reporter = new FragmentErrorReporter(file);
-			}
-		}
-		if (reporter != null) {
-			DefaultSAXParser.parse(file, reporter);
-			reporter.validateContent(monitor);
-			monitor.subTask(PDECoreMessages.Builders_updating);
-		}
-		if (bundleReporter != null) {
-			bundleReporter.validateContent(monitor);
-			monitor.subTask(PDECoreMessages.Builders_updating);
+		// if META-INF exists, make sure MANIFEST.MF exists in correct casing
+		validateManifestCasing(project, markers);
+
+		try {
+			MarkerBatch.updateMarkers(project, markers);
+		} catch (CoreException e) {
 		}
-		monitor.done();
 	}
 
-	private void validateBuildProperties(IProgressMonitor monitor) {
-		if (monitor.isCanceled())
-			return;
-		IProject project = getProject();
-		IFile file = PDEProject.getBuildProperties(project);
-		if (file.exists()) {
-			monitor.subTask(PDECoreMessages.ManifestConsistencyChecker_buildPropertiesSubtask);
-			BuildErrorReporter ber = new BuildErrorReporter(file);
-			ber.validateContent(monitor);
+	private static IMarker addMarker(List markers, IResource resource, int severity, String message) {
+		IMarker marker = new MarkerBatch.PendingMarker(resource, PDEMarkerFactory.MARKER_ID);
+		try {
+			marker.setAttribute(IMarker.SEVERITY, severity);
+			marker.setAttribute(IMarker.MESSAGE, message);
+		} catch (CoreException e) {
 		}
+		markers.add(marker);
+		return marker;
 	}
 
 	// Will place a marker on the project if the build.properties does not exist
-	private void validateBuildPropertiesExists(IProject project) {
+	private void validateBuildPropertiesExists(IProject project, List markers) {
 		IFile file = PDEProject.getBuildProperties(project);
 		if (!file.exists()) {
 			int severity = CompilerFlags.getFlag(project, CompilerFlags.P_BUILD);
 			if (severity == CompilerFlags.IGNORE)
 				return;
 			// if build.properties doesn't exist and build problems != IGNORE, create a marker on the project bug 172451
-			try {
-				IMarker marker = project.createMarker(PDEMarkerFactory.MARKER_ID);
-				marker.setAttribute(IMarker.SEVERITY, CompilerFlags.ERROR == severity ? IMarker.SEVERITY_ERROR : IMarker.SEVERITY_WARNING);
-				marker.setAttribute(IMarker.MESSAGE, PDECoreMessages.ManifestConsistencyChecker_buildDoesNotExist);
-			} catch (CoreException e) {
-			}
+			addMarker(markers, project, CompilerFlags.ERROR == severity ? IMarker.SEVERITY_ERROR : IMarker.SEVERITY_WARNING, PDECoreMessages.ManifestConsistencyChecker_buildDoesNotExist);
 		}
 	}
 
 	// Will place a marker on either the project (if META-INF exist but not a MANIFEST.MF) or on the MANIFEST.MF file with incorrect casing.
-	private void validateManifestCasing(IProject project) {
+	private void validateManifestCasing(IProject project, List markers) {
 		IFolder manifestFolder = PDEProject.getMetaInf(project);
 		if (manifestFolder.exists()) {
-			try {
-				manifestFolder.deleteMarkers(PDEMarkerFactory.MARKER_ID, false, IResource.DEPTH_ONE);
-			} catch (CoreException e1) {
-			}
-			// exit if the proper casing exists (should be majority of the time)
-			if (PDEProject.getManifest(project).exists())
-				return;
-
+			IFile manifest = PDEProject.getManifest(project);
+			// the markers of the manifest with the proper casing are updated by its validation
+			boolean exists = manifest.exists();
 			IPath location = manifestFolder.getLocation();
 			if (location != null) {
 				File metaFolder = location.toFile();
 				String[] fileList = metaFolder.list(new ManifestFilter());
+				if (fileList == null)
+					fileList = new String[0];
 
-				// check for misspelled MANIFEST.MF files
+				// check for misspelled MANIFEST.MF files, clear the markers of files that were misspelled before
 				for (int i = 0; i < fileList.length; i++) {
-					String fileName = fileList[i];
-					IFile currentFile = manifestFolder.getFile(fileName);
+					IFile currentFile = manifestFolder.getFile(fileList[i]);
+					if (currentFile.equals(manifest))
+						continue;
+					List fileMarkers = new ArrayList(1);
+					if (!exists)
+						addMarker(fileMarkers, currentFile, IMarker.SEVERITY_ERROR, PDECoreMessages.ManifestConsistencyChecker_manifestMisspelled);
 					try {
-						IMarker marker = currentFile.createMarker(PDEMarkerFactory.MARKER_ID);
-						marker.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_ERROR);
-						marker.setAttribute(IMarker.MESSAGE, PDECoreMessages.ManifestConsistencyChecker_manifestMisspelled);
+						MarkerBatch.updateMarkers(currentFile, fileMarkers);
 					} catch (CoreException e) {
 					}
 				}
 
 				// no MANIFEST.MF at all -> flag the project
-				if (fileList.length == 0) {
-					try {
-						IMarker marker = project.createMarker(PDEMarkerFactory.MARKER_ID);
-						marker.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_ERROR);
-						marker.setAttribute(IMarker.MESSAGE, PDECoreMessages.ManifestConsistencyChecker_manifestDoesNotExist);
-					} catch (CoreException e) {
-					}
-				}
+				if (fileList.length == 0)
+					addMarker(markers, project, IMarker.SEVERITY_ERROR, PDECoreMessages.ManifestConsistencyChecker_manifestDoesNotExist);
 			}
 		}
 	}
@@ -415,7 +498,7 @@ public class ManifestConsistencyChecker extends IncrementalProjectBuilder {
 	 */
 	private void cleanProblems(IResource resource, int depth) throws CoreException {
 		if (resource.exists()) {
-			resource.deleteMarkers(PDEMarkerFactory.MARKER_ID, true, depth);
+			MarkerBatch.deleteMarkers(resource, PDEMarkerFactory.MARKER_ID, true, depth);
 		}
 	}
 }
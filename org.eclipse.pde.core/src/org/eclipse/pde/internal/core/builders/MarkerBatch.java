@@ -0,0 +1,331 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.internal.core.builders;
+
+import java.util.*;
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.*;
+
+/**
+ * Records the marker changes made by validation instead of applying them to the
+ * workspace right away.
+ * <p>
+ * While a batch is installed for the current thread with {@link #setCurrent(MarkerBatch)},
+ * {@link #createMarker(IResource, String)} and {@link #deleteMarkers(IResource, String, boolean, int)}
+ * record the changes in the batch.  This allows projects to be validated on worker
+ * threads that do not hold the workspace lock, the recorded changes of all projects are
+ * then applied together in a single workspace operation.  Without a current batch the
+ * changes are made directly.
+ * </p>
+ * <p>
+ * {@link #updateMarkers(IResource, List)} replaces the problems of a file with new ones,
+ * leaving the markers of unchanged problems alone.
+ * </p>
+ */
+class MarkerBatch {
+
+	private static final ThreadLocal fCurrent = new ThreadLocal();
+
+	/**
+	 * A pending marker deletion
+	 */
+	private static class Deletion {
+		IResource fResource;
+		String fType;
+		boolean fIncludeSubtypes;
+		int fDepth;
+	}
+
+	/**
+	 * A pending replacement of the problems of a file
+	 */
+	private static class Update {
+		IResource fResource;
+		List fMarkers;
+	}
+
+	/**
+	 * List of {@link Deletion}s, {@link Update}s and {@link PendingMarker}s in the order
+	 * they were recorded
+	 */
+	private List fOperations = new ArrayList();
+
+	/**
+	 * Returns the batch installed for the current thread.
+	 *
+	 * @return current batch or <code>null</code> if marker changes are made directly
+	 */
+	static MarkerBatch getCurrent() {
+		return (MarkerBatch) fCurrent.get();
+	}
+
+	/**
+	 * Installs the batch marker changes made by the current thread are recorded in.
+	 *
+	 * @param batch batch to record changes in or <code>null</code> to make changes directly
+	 */
+	static void setCurrent(MarkerBatch batch) {
+		fCurrent.set(batch);
+	}
+
+	/**
+	 * Creates a marker on the given resource, or records its creation in the current batch.
+	 *
+	 * @param resource resource to create the marker on
+	 * @param type marker type
+	 * @return the new marker
+	 * @throws CoreException if the marker could not be created
+	 */
+	static IMarker createMarker(IResource resource, String type) throws CoreException {
+		MarkerBatch batch = getCurrent();
+		if (batch == null)
+			return resource.createMarker(type);
+		PendingMarker marker = new PendingMarker(resource, type);
+		batch.fOperations.add(marker);
+		return marker;
+	}
+
+	/**
+	 * Deletes markers from the given resource, or records the deletion in the current batch.
+	 *
+	 * @see IResource#deleteMarkers(String, boolean, int)
+	 */
+	static void deleteMarkers(IResource resource, String type, boolean includeSubtypes, int depth) throws CoreException {
+		MarkerBatch batch = getCurrent();
+		if (batch == null) {
+			resource.deleteMarkers(type, includeSubtypes, depth);
+			return;
+		}
+		Deletion deletion = new Deletion();
+		deletion.fResource = resource;
+		deletion.fType = type;
+		deletion.fIncludeSubtypes = includeSubtypes;
+		deletion.fDepth = depth;
+		batch.fOperations.add(deletion);
+	}
+
+	/**
+	 * Replaces the PDE problems of the given resource with the given markers, or records
+	 * the replacement in the current batch.  Existing markers with the same attributes as
+	 * a new marker are kept, so that only the problems that changed cause a resource delta.
+	 *
+	 * @param resource resource the markers are for
+	 * @param markers list of {@link PendingMarker}s
+	 * @throws CoreException if the markers could not be updated
+	 */
+	static void updateMarkers(final IResource resource, final List markers) throws CoreException {
+		MarkerBatch batch = getCurrent();
+		if (batch == null) {
+			IWorkspace workspace = ResourcesPlugin.getWorkspace();
+			IWorkspaceRunnable runnable = new IWorkspaceRunnable() {
+				public void run(IProgressMonitor monitor) throws CoreException {
+					update(resource, markers);
+				}
+			};
+			workspace.run(runnable, workspace.getRuleFactory().markerRule(resource), IWorkspace.AVOID_UPDATE, null);
+			return;
+		}
+		Update update = new Update();
+		update.fResource = resource;
+		update.fMarkers = markers;
+		batch.fOperations.add(update);
+	}
+
+	private static void update(IResource resource, List markers) throws CoreException {
+		if (!resource.exists())
+			return;
+		// plain problem markers were removed from files by earlier versions of the validation
+		if (resource.getType() == IResource.FILE)
+			resource.deleteMarkers(IMarker.PROBLEM, false, IResource.DEPTH_ZERO);
+
+		// map of attributes to a list of existing markers with these attributes
+		Map existing = new HashMap();
+		IMarker[] current = resource.findMarkers(PDEMarkerFactory.MARKER_ID, false, IResource.DEPTH_ZERO);
+		for (int i = 0; i < current.length; i++) {
+			Map attributes = current[i].getAttributes();
+			// copy the attributes, the map returned by the marker may not implement equals
+			Object key = attributes == null ? new HashMap() : new HashMap(attributes);
+			List list = (List) existing.get(key);
+			if (list == null) {
+				list = new ArrayList(1);
+				existing.put(key, list);
+			}
+			list.add(current[i]);
+		}
+
+		List added = new ArrayList();
+		for (Iterator iter = markers.iterator(); iter.hasNext();) {
+			PendingMarker marker = (PendingMarker) iter.next();
+			List list = (List) existing.get(marker.fAttributes);
+			if (list != null && !list.isEmpty())
+				list.remove(list.size() - 1);
+			else
+				added.add(marker);
+		}
+		for (Iterator iter = existing.values().iterator(); iter.hasNext();) {
+			List list = (List) iter.next();
+			for (int i = 0; i < list.size(); i++) {
+				((IMarker) list.get(i)).delete();
+			}
+		}
+		for (int i = 0; i < added.size(); i++) {
+			PendingMarker marker = (PendingMarker) added.get(i);
+			resource.createMarker(marker.fType).setAttributes(marker.fAttributes);
+		}
+	}
+
+	/**
+	 * Applies the changes recorded in the given batches in one workspace operation.
+	 *
+	 * @param batches batches to apply, <code>null</code> entries are ignored
+	 * @param monitor progress monitor
+	 * @throws CoreException if the workspace operation fails
+	 */
+	static void apply(final MarkerBatch[] batches, IProgressMonitor monitor) throws CoreException {
+		IWorkspaceRunnable runnable = new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				for (int i = 0; i < batches.length; i++) {
+					if (batches[i] != null)
+						batches[i].apply();
+				}
+			}
+		};
+		ResourcesPlugin.getWorkspace().run(runnable, null, IWorkspace.AVOID_UPDATE, monitor);
+	}
+
+	private void apply() {
+		for (Iterator iter = fOperations.iterator(); iter.hasNext();) {
+			Object operation = iter.next();
+			try {
+				if (operation instanceof Deletion) {
+					Deletion deletion = (Deletion) operation;
+					if (deletion.fResource.exists())
+						deletion.fResource.deleteMarkers(deletion.fType, deletion.fIncludeSubtypes, deletion.fDepth);
+				} else if (operation instanceof Update) {
+					Update update = (Update) operation;
+					update(update.fResource, update.fMarkers);
+				} else {
+					PendingMarker pending = (PendingMarker) operation;
+					if (pending.fResource.exists()) {
+						IMarker marker = pending.fResource.createMarker(pending.fType);
+						marker.setAttributes(pending.fAttributes);
+					}
+				}
+			} catch (CoreException e) {
+				// the resource may have gone away since it was validated
+			}
+		}
+		fOperations.clear();
+	}
+
+	/**
+	 * Marker handed out to validation before it is created.  It only collects the
+	 * attributes the marker is created with when the batch is applied.
+	 */
+	static class PendingMarker extends PlatformObject implements IMarker {
+
+		private final IResource fResource;
+		private final String fType;
+		private final Map fAttributes = new HashMap();
+		private final long fCreationTime = System.currentTimeMillis();
+
+		PendingMarker(IResource resource, String type) {
+			fResource = resource;
+			fType = type;
+		}
+
+		public void delete() throws CoreException {
+			throw new CoreException(new Status(IStatus.ERROR, ResourcesPlugin.PI_RESOURCES, "Marker has not been created yet")); //$NON-NLS-1$
+		}
+
+		public boolean exists() {
+			return false;
+		}
+
+		public synchronized Object getAttribute(String attributeName) {
+			return fAttributes.get(attributeName);
+		}
+
+		public int getAttribute(String attributeName, int defaultValue) {
+			Object value = getAttribute(attributeName);
+			return value instanceof Integer ? ((Integer) value).intValue() : defaultValue;
+		}
+
+		public String getAttribute(String attributeName, String defaultValue) {
+			Object value = getAttribute(attributeName);
+			return value instanceof String ? (String) value : defaultValue;
+		}
+
+		public boolean getAttribute(String attributeName, boolean defaultValue) {
+			Object value = getAttribute(attributeName);
+			return value instanceof Boolean ? ((Boolean) value).booleanValue() : defaultValue;
+		}
+
+		public synchronized Map getAttributes() {
+			return new HashMap(fAttributes);
+		}
+
+		public synchronized Object[] getAttributes(String[] attributeNames) {
+			Object[] values = new Object[attributeNames.length];
+			for (int i = 0; i < attributeNames.length; i++) {
+				values[i] = fAttributes.get(attributeNames[i]);
+			}
+			return values;
+		}
+
+		public long getCreationTime() {
+			return fCreationTime;
+		}
+
+		public long getId() {
+			return -1;
+		}
+
+		public IResource getResource() {
+			return fResource;
+		}
+
+		public String getType() {
+			return fType;
+		}
+
+		public boolean isSubtypeOf(String superType) {
+			return fType.equals(superType);
+		}
+
+		public void setAttribute(String attributeName, int value) {
+			setAttribute(attributeName, new Integer(value));
+		}
+
+		public synchronized void setAttribute(String attributeName, Object value) {
+			if (value == null)
+				fAttributes.remove(attributeName);
+			else
+				fAttributes.put(attributeName, value);
+		}
+
+		public void setAttribute(String attributeName, boolean value) {
+			setAttribute(attributeName, Boolean.valueOf(value));
+		}
+
+		public void setAttributes(String[] attributeNames, Object[] values) {
+			for (int i = 0; i < attributeNames.length; i++) {
+				setAttribute(attributeNames[i], values[i]);
+			}
+		}
+
+		public synchronized void setAttributes(Map attributes) {
+			fAttributes.clear();
+			if (attributes != null)
+				fAttributes.putAll(attributes);
+		}
+	}
+}
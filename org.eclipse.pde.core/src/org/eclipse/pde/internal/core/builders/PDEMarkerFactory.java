@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -87,7 +87,18 @@ public class PDEMarkerFactory {
 	public static final String CAT_ID = "categoryId"; //$NON-NLS-1$
 
 	public IMarker createMarker(IFile file, int id, String category) throws CoreException {
-		IMarker marker = file.createMarker(MARKER_ID);
+		IMarker marker = MarkerBatch.createMarker(file, MARKER_ID);
+		marker.setAttribute("id", id); //$NON-NLS-1$
+		marker.setAttribute(CAT_ID, category);
+		return marker;
+	}
+
+	/**
+	 * Returns a marker for the given file that is only created when it is passed to
+	 * {@link MarkerBatch#updateMarkers(org.eclipse.core.resources.IResource, java.util.List)}.
+	 */
+	IMarker createPendingMarker(IFile file, int id, String category) {
+		MarkerBatch.PendingMarker marker = new MarkerBatch.PendingMarker(file, MARKER_ID);
 		marker.setAttribute("id", id); //$NON-NLS-1$
 		marker.setAttribute(CAT_ID, category);
 		return marker;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2005, 2008 IBM Corporation and others.
+ *  Copyright (c) 2005, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -78,6 +78,13 @@ public abstract class PluginBaseErrorReporter extends ExtensionsErrorReporter {
 
 	protected abstract String getRootElementName();
 
+	/* (non-Javadoc)
+	 * @see org.eclipse.pde.internal.core.builders.ExtensionsErrorReporter#isRootElementName(java.lang.String)
+	 */
+	protected boolean isRootElementName(String name) {
+		return getRootElementName().equals(name);
+	}
+
 	protected void validateRequires(Element element) {
 		int severity = CompilerFlags.getFlag(fProject, CompilerFlags.P_UNKNOWN_ELEMENT);
 		NodeList children = element.getChildNodes();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2008 IBM Corporation and others.
+ *  Copyright (c) 2000, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -10,40 +10,88 @@
  *******************************************************************************/
 package org.eclipse.pde.internal.core.builders;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.osgi.service.resolver.BundleDelta;
+import org.eclipse.osgi.service.resolver.BundleDescription;
+import org.eclipse.osgi.service.resolver.ExportPackageDescription;
 import org.eclipse.osgi.service.resolver.State;
 import org.eclipse.osgi.service.resolver.StateDelta;
+import org.eclipse.pde.core.plugin.IPluginExtensionPoint;
 import org.eclipse.pde.core.plugin.IPluginModelBase;
 import org.eclipse.pde.core.plugin.PluginRegistry;
+import org.eclipse.pde.internal.core.IExtensionDeltaEvent;
+import org.eclipse.pde.internal.core.IExtensionDeltaListener;
 import org.eclipse.pde.internal.core.IStateDeltaListener;
 import org.eclipse.pde.internal.core.PDECore;
 import org.eclipse.pde.internal.core.WorkspaceModelManager;
 
-public class PluginRebuilder implements IStateDeltaListener, IResourceChangeListener {
+/**
+ * Touches the workspace plug-in projects affected by changes of their dependencies, so
+ * that their manifest files are validated again.  These are the projects whose bundle
+ * was reported in a resolver delta, the projects wired to a bundle that was added,
+ * removed or updated, the projects whose build.properties refers to a bundle that was
+ * added or removed, and the projects contributing to a plug-in whose extension points or
+ * schemas changed.  The changes are passed on to the {@link ManifestConsistencyChecker}
+ * as {@link DependencyChanges}, so that only the checks depending on them are run.
+ */
+public class PluginRebuilder implements IStateDeltaListener, IResourceChangeListener, IExtensionDeltaListener {
 
-	private Set fProjectNames = new HashSet();
+	/**
+	 * Map of project name to the {@link BundleDelta} types of its bundle
+	 */
+	private Map fProjectNames = new HashMap();
+
+	/**
+	 * Symbolic names of the bundles added, removed or updated since the last build
+	 */
+	private Set fChangedBundles = new HashSet();
+
+	/**
+	 * Names of the packages exported by the changed bundles
+	 */
+	private Set fChangedPackages = new HashSet();
+
+	/**
+	 * Symbolic names of the bundles added or removed since the last build
+	 */
+	private Set fAddedOrRemoved = new HashSet();
+
+	/**
+	 * Ids of the plug-ins whose extension points or schemas changed since the last build
+	 */
+	private Set fChangedExtensionPoints = new HashSet();
+
+	/**
+	 * Map of plug-in id to the extension points last seen for the workspace plug-in
+	 */
+	private Map fExtensionPoints = new HashMap();
 
 	private boolean fTouchWorkspace = false;
 
 	public void start() {
 		PDECore.getDefault().getModelManager().addStateDeltaListener(this);
+		PDECore.getDefault().getModelManager().addExtensionDeltaListener(this);
 		JavaCore.addPreProcessingResourceChangedListener(this, IResourceChangeEvent.PRE_BUILD);
 	}
 
 	public void stop() {
 		PDECore.getDefault().getModelManager().removeStateDeltaListener(this);
+		PDECore.getDefault().getModelManager().removeExtensionDeltaListener(this);
 		JavaCore.removePreProcessingResourceChangedListener(this);
 	}
 
@@ -53,25 +101,120 @@ public class PluginRebuilder implements IStateDeltaListener, IResourceChangeList
 			if (fTouchWorkspace) {
 				IProject[] projects = root.getProjects();
 				for (int i = 0; i < projects.length; i++) {
-					touchProject(projects[i]);
+					touchProject(projects[i], new DependencyChanges());
 				}
 			} else {
-				Iterator iter = fProjectNames.iterator();
+				addChangedSchemas(event.getDelta());
+				Iterator iter = fProjectNames.entrySet().iterator();
 				while (iter.hasNext()) {
-					touchProject(root.getProject((String) iter.next()));
+					Map.Entry entry = (Map.Entry) iter.next();
+					int deltaType = ((Integer) entry.getValue()).intValue();
+					touchProject(root.getProject((String) entry.getKey()), createChanges(deltaType));
 				}
+				if (!fChangedBundles.isEmpty() || !fChangedExtensionPoints.isEmpty())
+					touchDependentProjects();
 			}
 			fTouchWorkspace = false;
-			fProjectNames.clear();
+			clearChanges();
+		}
+	}
+
+	private void clearChanges() {
+		fProjectNames.clear();
+		// the sets are shared by the changes handed out
+		fChangedBundles = new HashSet();
+		fChangedPackages = new HashSet();
+		fAddedOrRemoved = new HashSet();
+		fChangedExtensionPoints = new HashSet();
+	}
+
+	private DependencyChanges createChanges(int deltaType) {
+		return new DependencyChanges(deltaType, fChangedBundles, fChangedPackages, fAddedOrRemoved, fChangedExtensionPoints);
+	}
+
+	/**
+	 * Touches the projects without a resolver delta of their own that depend on one of
+	 * the changed bundles or extension points, so the change is checked against them.
+	 */
+	private void touchDependentProjects() {
+		DependencyChanges changes = createChanges(0);
+		IPluginModelBase[] models = PluginRegistry.getWorkspaceModels();
+		for (int i = 0; i < models.length; i++) {
+			IResource resource = models[i].getUnderlyingResource();
+			if (resource == null || fProjectNames.containsKey(resource.getProject().getName()))
+				continue;
+			if (changes.affectsManifest(models[i].getBundleDescription()) || changes.affectsExtensions(models[i]) || changes.affectsBuild(models[i]))
+				touchProject(resource.getProject(), changes);
 		}
 	}
 
-	private void touchProject(IProject project) {
+	/**
+	 * Records the plug-ins whose schema files changed since the last build.
+	 */
+	private void addChangedSchemas(IResourceDelta delta) {
+		if (delta == null)
+			return;
+		try {
+			delta.accept(new IResourceDeltaVisitor() {
+				public boolean visit(IResourceDelta child) {
+					IResource resource = child.getResource();
+					if (resource.getType() == IResource.PROJECT)
+						return WorkspaceModelManager.isPluginProject((IProject) resource);
+					if (resource.getType() == IResource.FILE && "exsd".equals(resource.getFileExtension())) { //$NON-NLS-1$
+						IPluginModelBase model = PluginRegistry.findModel(resource.getProject());
+						if (model != null && model.getPluginBase().getId() != null)
+							fChangedExtensionPoints.add(model.getPluginBase().getId());
+					}
+					return true;
+				}
+			});
+		} catch (CoreException e) {
+			PDECore.log(e);
+		}
+	}
+
+	public void extensionsChanged(IExtensionDeltaEvent event) {
+		addChangedExtensionPoints(event.getAddedModels());
+		addChangedExtensionPoints(event.getChangedModels());
+		IPluginModelBase[] removed = event.getRemovedModels();
+		for (int i = 0; i < removed.length; i++) {
+			String id = removed[i].getPluginBase().getId();
+			if (id == null)
+				continue;
+			Object previous = fExtensionPoints.remove(id);
+			if (previous == null ? removed[i].getExtensions().getExtensionPoints().length > 0 : !"".equals(previous)) //$NON-NLS-1$
+				fChangedExtensionPoints.add(id);
+		}
+	}
+
+	/**
+	 * Records the plug-ins whose extension points differ from the ones last seen.  A
+	 * plug-in not seen before counts as changed if it has extension points.
+	 */
+	private void addChangedExtensionPoints(IPluginModelBase[] models) {
+		for (int i = 0; i < models.length; i++) {
+			String id = models[i].getPluginBase().getId();
+			if (id == null)
+				continue;
+			IPluginExtensionPoint[] points = models[i].getExtensions().getExtensionPoints();
+			StringBuffer buffer = new StringBuffer();
+			for (int j = 0; j < points.length; j++) {
+				buffer.append(points[j].getFullId()).append('=').append(points[j].getSchema()).append(';');
+			}
+			String signature = buffer.toString();
+			Object previous = fExtensionPoints.put(id, signature);
+			if (previous == null ? points.length > 0 : !previous.equals(signature))
+				fChangedExtensionPoints.add(id);
+		}
+	}
+
+	private void touchProject(IProject project, DependencyChanges changes) {
 		if (WorkspaceModelManager.isPluginProject(project) && !WorkspaceModelManager.isBinaryProject(project)) {
 			try {
 				// set session property on project
 				// to be read and reset in ManifestConsistencyChecker
-				project.setSessionProperty(PDECore.TOUCH_PROJECT, Boolean.TRUE);
+				changes = changes.merge(project.getSessionProperty(PDECore.TOUCH_PROJECT));
+				project.setSessionProperty(PDECore.TOUCH_PROJECT, changes);
 				// touch project so that ManifestConsistencyChecker#build(..) gets invoked
 				project.touch(new NullProgressMonitor());
 			} catch (CoreException e) {
@@ -82,7 +225,7 @@ public class PluginRebuilder implements IStateDeltaListener, IResourceChangeList
 
 	public void stateChanged(State newState) {
 		fTouchWorkspace = true;
-		fProjectNames.clear();
+		clearChanges();
 	}
 
 	public void stateResolved(StateDelta delta) {
@@ -90,22 +233,41 @@ public class PluginRebuilder implements IStateDeltaListener, IResourceChangeList
 			// if delta is null, then target has changed
 			// prepare all projects for "touching"
 			fTouchWorkspace = true;
-			fProjectNames.clear();
+			clearChanges();
 		} else {
 			BundleDelta[] deltas = delta.getChanges();
 			for (int i = 0; i < deltas.length; i++) {
 				// only interested in workspace plug-ins that are affected by delta
 				// but not those who have caused it.
 				int type = deltas[i].getType();
-				if ((type & BundleDelta.UPDATED) == BundleDelta.UPDATED || (type & BundleDelta.ADDED) == BundleDelta.ADDED || (type & BundleDelta.REMOVED) == BundleDelta.REMOVED)
+				if ((type & BundleDelta.UPDATED) == BundleDelta.UPDATED || (type & BundleDelta.ADDED) == BundleDelta.ADDED || (type & BundleDelta.REMOVED) == BundleDelta.REMOVED) {
+					addChangedBundle(deltas[i].getBundle(), (type & (BundleDelta.ADDED | BundleDelta.REMOVED)) != 0);
 					continue;
+				}
 
 				IPluginModelBase model = PluginRegistry.findModel(deltas[i].getBundle());
 				IResource resource = model == null ? null : model.getUnderlyingResource();
-				if (resource != null)
-					fProjectNames.add(resource.getProject().getName());
+				if (resource != null) {
+					String name = resource.getProject().getName();
+					Integer previous = (Integer) fProjectNames.get(name);
+					if (previous != null)
+						type |= previous.intValue();
+					fProjectNames.put(name, new Integer(type));
+				}
 			}
 		}
 	}
 
+	private void addChangedBundle(BundleDescription bundle, boolean addedOrRemoved) {
+		if (bundle.getSymbolicName() != null) {
+			fChangedBundles.add(bundle.getSymbolicName());
+			if (addedOrRemoved)
+				fAddedOrRemoved.add(bundle.getSymbolicName());
+		}
+		ExportPackageDescription[] exports = bundle.getExportPackages();
+		for (int i = 0; i < exports.length; i++) {
+			fChangedPackages.add(exports[i].getName());
+		}
+	}
+
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -83,6 +83,7 @@ public class UpdateSiteBuilder extends IncrementalProjectBuilder {
 			reporter.validateContent(monitor);
 		}
 		monitor.subTask(PDECoreMessages.Builders_updating);
+		reporter.updateMarkers();
 		monitor.done();
 	}
 
@@ -95,7 +96,7 @@ public class UpdateSiteBuilder extends IncrementalProjectBuilder {
 			SubMonitor localmonitor = SubMonitor.convert(monitor, NLS.bind(PDECoreMessages.UpdateSiteBuilder_0, site.getName()), 1);
 			try {
 				// clean problem markers on site XML file
-				site.deleteMarkers(PDEMarkerFactory.MARKER_ID, true, IResource.DEPTH_ZERO);
+				MarkerBatch.deleteMarkers(site, PDEMarkerFactory.MARKER_ID, true, IResource.DEPTH_ZERO);
 				localmonitor.worked(1);
 			} finally {
 				localmonitor.done();
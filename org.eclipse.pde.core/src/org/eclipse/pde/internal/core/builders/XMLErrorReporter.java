@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2008 IBM Corporation and others.
+ *  Copyright (c) 2000, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -67,6 +67,12 @@ public class XMLErrorReporter extends DefaultHandler {
 
 	private double fSchemaVersion = 2.1;
 
+	/**
+	 * Markers reported so far, the markers of the file are updated with them by
+	 * {@link #updateMarkers()}
+	 */
+	private List fMarkers = new ArrayList();
+
 	public XMLErrorReporter(IFile file) {
 		ITextFileBufferManager manager = FileBuffers.getTextFileBufferManager();
 		try {
@@ -78,7 +84,6 @@ public class XMLErrorReporter extends DefaultHandler {
 			fFindReplaceAdapter = new FindReplaceDocumentAdapter(fTextDocument);
 			fOffsetTable = new HashMap();
 			fElementStack = new Stack();
-			removeFileMarkers();
 		} catch (CoreException e) {
 			PDECore.log(e);
 		}
@@ -90,7 +95,8 @@ public class XMLErrorReporter extends DefaultHandler {
 
 	private IMarker addMarker(String message, int lineNumber, int severity, int fixId, String category) {
 		try {
-			IMarker marker = getMarkerFactory().createMarker(fFile, fixId, category);
+			IMarker marker = getMarkerFactory().createPendingMarker(fFile, fixId, category);
+			fMarkers.add(marker);
 			marker.setAttribute(IMarker.MESSAGE, message);
 			marker.setAttribute(IMarker.SEVERITY, severity);
 			if (lineNumber == -1)
@@ -129,10 +135,14 @@ public class XMLErrorReporter extends DefaultHandler {
 		return fErrorCount;
 	}
 
-	private void removeFileMarkers() {
+	/**
+	 * Replaces the problem markers of the file with the problems reported so far.  Only
+	 * the markers of problems that were added or went away are changed.  Called when the
+	 * file has been parsed and validated.
+	 */
+	public void updateMarkers() {
 		try {
-			fFile.deleteMarkers(IMarker.PROBLEM, false, IResource.DEPTH_ZERO);
-			fFile.deleteMarkers(PDEMarkerFactory.MARKER_ID, false, IResource.DEPTH_ZERO);
+			MarkerBatch.updateMarkers(fFile, fMarkers);
 		} catch (CoreException e) {
 			PDECore.logException(e);
 		}
@@ -237,7 +247,42 @@ public class XMLErrorReporter extends DefaultHandler {
 	 * @see org.xml.sax.helpers.DefaultHandler#endElement(java.lang.String, java.lang.String, java.lang.String)
 	 */
 	public void endElement(String uri, String localName, String qName) throws SAXException {
-		fElementStack.pop();
+		if (fElementStack.isEmpty())
+			return;
+		Element element = (Element) fElementStack.pop();
+		elementCompleted(element, fElementStack.isEmpty() ? null : (Element) fElementStack.peek());
+	}
+
+	/**
+	 * Called when the end of an element has been parsed.  Subclasses may validate the
+	 * element and its children right away and then release the children with
+	 * {@link #releaseChildren(Element)}, so that large files never need to be held in
+	 * memory as a whole.  The default implementation does nothing.
+	 * 
+	 * @param element the element that has been parsed, including all its children
+	 * @param parent the parent element or <code>null</code> for the root element
+	 */
+	protected void elementCompleted(Element element, Element parent) {
+	}
+
+	/**
+	 * Removes the children of the given element from the document once they have been
+	 * validated.  The element itself stays in place, so that the location paths of its
+	 * siblings do not change.
+	 * 
+	 * @param element element to remove the children from
+	 */
+	protected void releaseChildren(Element element) {
+		Node child = element.getFirstChild();
+		while (child != null) {
+			Node next = child.getNextSibling();
+			if (child instanceof Element) {
+				releaseChildren((Element) child);
+				fOffsetTable.remove(child);
+			}
+			element.removeChild(child);
+			child = next;
+		}
 	}
 
 	private void generateErrorElementHierarchy() {
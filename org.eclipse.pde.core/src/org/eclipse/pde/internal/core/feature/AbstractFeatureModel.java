@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2008 IBM Corporation and others.
+ *  Copyright (c) 2000, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -67,8 +67,9 @@ public abstract class AbstractFeatureModel extends AbstractNLModel implements IF
 	}
 
 	public void load(InputStream stream, boolean outOfSync) throws CoreException {
+		SAXParser parser = null;
 		try {
-			SAXParser parser = getSaxParser();
+			parser = getSaxParser();
 			XMLDefaultHandler handler = new XMLDefaultHandler();
 			XMLCopyrightHandler chandler = new XMLCopyrightHandler(handler);
 			parser.setProperty("http://xml.org/sax/properties/lexical-handler", chandler); //$NON-NLS-1$
@@ -85,6 +86,8 @@ public abstract class AbstractFeatureModel extends AbstractNLModel implements IF
 		} catch (SAXException e) {
 		} catch (Exception e) {
 			PDECore.logException(e);
+		} finally {
+			recycleSaxParser(parser);
 		}
 	}
 
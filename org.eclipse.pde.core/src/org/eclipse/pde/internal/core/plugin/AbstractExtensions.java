@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2008 IBM Corporation and others.
+ *  Copyright (c) 2000, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -20,7 +20,6 @@ import java.util.Collections;
 import java.util.List;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.CoreException;
@@ -33,6 +32,7 @@ import org.eclipse.pde.core.plugin.IPluginObject;
 import org.eclipse.pde.core.plugin.ISharedPluginModel;
 import org.eclipse.pde.internal.core.PDECore;
 import org.eclipse.pde.internal.core.PDECoreMessages;
+import org.eclipse.pde.internal.core.util.SAXParserWrapper;
 import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
@@ -177,15 +177,20 @@ public abstract class AbstractExtensions extends PluginObject implements IExtens
 			if (model != null) {
 				org.eclipse.core.resources.IResource res = model.getUnderlyingResource();
 				if (res != null && res instanceof IFile) {
+					SAXParserWrapper parser = null;
 					try {
 						InputStream stream = new BufferedInputStream(((IFile) res).getContents(true));
 						PluginHandler handler = new PluginHandler(true);
-						SAXParserFactory.newInstance().newSAXParser().parse(stream, handler);
+						parser = new SAXParserWrapper();
+						parser.parse(stream, handler);
 						return handler.getSchemaVersion();
 					} catch (CoreException e) {
 					} catch (SAXException e) {
 					} catch (IOException e) {
 					} catch (ParserConfigurationException e) {
+					} finally {
+						if (parser != null)
+							parser.dispose();
 					}
 				}
 			}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2008 IBM Corporation and others.
+ *  Copyright (c) 2000, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -76,11 +76,12 @@ public abstract class AbstractExtensionsModel extends AbstractNLModel implements
 		}
 		fExtensions.reset();
 		setLoaded(false);
+		SAXParser parser = null;
 		try {
 			// TODO: possibly remove this work.
 			// Need a good way to "setLoaded()" value
 			// With the way we do it, we might be able to claim it is always loaded.
-			SAXParser parser = getSaxParser();
+			parser = getSaxParser();
 			PluginHandler handler = new PluginHandler(true);
 			parser.parse(stream, handler);
 			fExtensions.load(handler.getSchemaVersion());
@@ -91,6 +92,8 @@ public abstract class AbstractExtensionsModel extends AbstractNLModel implements
 		} catch (SAXException e) {
 		} catch (FactoryConfigurationError e) {
 		} catch (IOException e) {
+		} finally {
+			recycleSaxParser(parser);
 		}
 	}
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -69,8 +69,9 @@ public abstract class AbstractPluginModelBase extends AbstractNLModel implements
 
 		((PluginBase) fPluginBase).reset();
 		setLoaded(false);
+		SAXParser parser = null;
 		try {
-			SAXParser parser = getSaxParser();
+			parser = getSaxParser();
 			parser.parse(stream, handler);
 			((PluginBase) fPluginBase).load(handler.getDocumentElement(), handler.getSchemaVersion());
 			setLoaded(true);
@@ -78,6 +79,8 @@ public abstract class AbstractPluginModelBase extends AbstractNLModel implements
 				updateTimeStamp();
 		} catch (Exception e) {
 			PDECore.log(e);
+		} finally {
+			recycleSaxParser(parser);
 		}
 	}
 
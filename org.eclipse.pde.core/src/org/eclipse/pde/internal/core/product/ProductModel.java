@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2005, 2008 IBM Corporation and others.
+ *  Copyright (c) 2005, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -82,8 +82,9 @@ public class ProductModel extends AbstractModel implements IProductModel {
 	 * @see org.eclipse.pde.core.IModel#load(java.io.InputStream, boolean)
 	 */
 	public void load(InputStream stream, boolean outOfSync) throws CoreException {
+		SAXParser parser = null;
 		try {
-			SAXParser parser = getSaxParser();
+			parser = getSaxParser();
 			XMLDefaultHandler handler = new XMLDefaultHandler();
 			parser.parse(stream, handler);
 			if (handler.isPrepared()) {
@@ -98,6 +99,7 @@ public class ProductModel extends AbstractModel implements IProductModel {
 					stream.close();
 			} catch (IOException e) {
 			}
+			recycleSaxParser(parser);
 		}
 	}
 
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.internal.core.schema;
+
+import java.util.*;
+import org.eclipse.pde.internal.core.ischema.*;
+
+/**
+ * The validation rules of the elements of a schema, computed from the schema model
+ * once and shared by the validation of all extensions of the extension point.
+ * <p>
+ * Compiled schemas are cached by the {@link SchemaRegistry} for as long as the schema
+ * file does not change.  The rules of an element are computed the first time they are
+ * asked for.
+ * </p>
+ */
+public class CompiledSchema {
+
+	/**
+	 * Validation rules of a single schema element
+	 */
+	public static class ElementRules {
+
+		private final Set fAllowedChildren;
+		private final ISchemaAttribute[] fRequiredAttributes;
+		private final boolean fCheckMaxOccurrences;
+		private final boolean fCheckMinOccurrences;
+
+		ElementRules(ISchemaElement element) {
+			Set allowed = new HashSet();
+			ISchemaAttribute[] required = new ISchemaAttribute[0];
+			boolean[] checks = new boolean[2];
+			ISchemaType type = element.getType();
+			if (type instanceof ISchemaComplexType) {
+				ISchemaComplexType complexType = (ISchemaComplexType) type;
+				ISchemaCompositor compositor = complexType.getCompositor();
+				if (compositor != null) {
+					computeAllowedElements(compositor, allowed);
+					computeOccurrenceChecks(compositor, 1, 1, checks);
+				}
+				ISchemaAttribute[] attrs = complexType.getAttributes();
+				for (int i = 0; i < attrs.length; i++) {
+					if (attrs[i].getKind() == IMetaAttribute.JAVA)
+						allowed.add(attrs[i].getName());
+				}
+			}
+			ISchemaAttribute[] attrs = element.getAttributes();
+			List list = new ArrayList();
+			for (int i = 0; i < attrs.length; i++) {
+				if (attrs[i].getUse() == ISchemaAttribute.REQUIRED)
+					list.add(attrs[i]);
+			}
+			required = (ISchemaAttribute[]) list.toArray(required);
+
+			fAllowedChildren = Collections.unmodifiableSet(allowed);
+			fRequiredAttributes = required;
+			fCheckMaxOccurrences = checks[0];
+			fCheckMinOccurrences = checks[1];
+		}
+
+		/**
+		 * Returns the names of the elements allowed as children of the element, including
+		 * the names of its Java attributes, which may be given as child elements.
+		 *
+		 * @return unmodifiable set of element names
+		 */
+		public Set getAllowedChildren() {
+			return fAllowedChildren;
+		}
+
+		/**
+		 * Returns the attributes that must be specified for the element.
+		 *
+		 * @return required attributes, must not be modified
+		 */
+		public ISchemaAttribute[] getRequiredAttributes() {
+			return fRequiredAttributes;
+		}
+
+		/**
+		 * Returns whether a child of the element may occur too often.  If not, the
+		 * maximum occurrences of the children do not need to be checked.
+		 *
+		 * @return whether any child has a bounded number of occurrences
+		 */
+		public boolean checkMaxOccurrences() {
+			return fCheckMaxOccurrences;
+		}
+
+		/**
+		 * Returns whether a child of the element is required.  If not, the minimum
+		 * occurrences of the children do not need to be checked.
+		 *
+		 * @return whether any child must occur at least once
+		 */
+		public boolean checkMinOccurrences() {
+			return fCheckMinOccurrences;
+		}
+
+		private static void computeAllowedElements(ISchemaCompositor compositor, Set elementSet) {
+			ISchemaObject[] children = compositor.getChildren();
+			for (int i = 0; i < children.length; i++) {
+				ISchemaObject child = children[i];
+				if (child instanceof ISchemaObjectReference) {
+					ISchemaObjectReference ref = (ISchemaObjectReference) child;
+					ISchemaElement refElement = (ISchemaElement) ref.getReferencedObject();
+					if (refElement != null)
+						elementSet.add(refElement.getName());
+				} else if (child instanceof ISchemaCompositor) {
+					computeAllowedElements((ISchemaCompositor) child, elementSet);
+				}
+			}
+		}
+
+		/**
+		 * Computes the multiplicities of the child elements the same way the occurrence
+		 * checks do, to find out whether these checks could report anything at all.
+		 */
+		private static void computeOccurrenceChecks(ISchemaCompositor compositor, int maxTracker, int minTracker, boolean[] checks) {
+			int kind = compositor.getKind();
+			if (kind != ISchemaCompositor.CHOICE && kind != ISchemaCompositor.SEQUENCE)
+				return;
+			if (maxTracker < Integer.MAX_VALUE)
+				maxTracker = compositor.getMaxOccurs() * maxTracker;
+			if (minTracker < Integer.MAX_VALUE)
+				minTracker = compositor.getMinOccurs() * minTracker;
+			ISchemaObject[] children = compositor.getChildren();
+			for (int i = 0; i < compositor.getChildCount(); i++) {
+				if (children[i] instanceof ISchemaElement) {
+					ISchemaElement child = (ISchemaElement) children[i];
+					int max = maxTracker < Integer.MAX_VALUE ? child.getMaxOccurs() * maxTracker : maxTracker;
+					int min = minTracker < Integer.MAX_VALUE ? child.getMinOccurs() * minTracker : minTracker;
+					if (max != Integer.MAX_VALUE)
+						checks[0] = true;
+					if (min > 0)
+						checks[1] = true;
+				} else if (children[i] instanceof ISchemaCompositor) {
+					computeOccurrenceChecks((ISchemaCompositor) children[i], maxTracker, minTracker, checks);
+				}
+			}
+		}
+	}
+
+	private final ISchema fSchema;
+	private final long fLastModified;
+
+	/**
+	 * Map of {@link ISchemaElement} to its {@link ElementRules}
+	 */
+	private final Map fRules = new HashMap();
+
+	CompiledSchema(ISchema schema, long lastModified) {
+		fSchema = schema;
+		fLastModified = lastModified;
+	}
+
+	/**
+	 * Returns whether this compiled schema was created for the given version of a schema.
+	 */
+	boolean isCompiledFrom(ISchema schema, long lastModified) {
+		return fSchema == schema && fLastModified == lastModified;
+	}
+
+	/**
+	 * Returns the validation rules of the given element of the schema.
+	 *
+	 * @param element schema element
+	 * @return validation rules of the element
+	 */
+	public synchronized ElementRules getRules(ISchemaElement element) {
+		ElementRules rules = (ElementRules) fRules.get(element);
+		if (rules == null) {
+			rules = new ElementRules(element);
+			fRules.put(element, rules);
+		}
+		return rules;
+	}
+}
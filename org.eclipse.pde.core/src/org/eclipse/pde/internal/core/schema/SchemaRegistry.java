@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2008 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -28,7 +28,12 @@ public class SchemaRegistry {
 
 	private HashMap fRegistry = new HashMap();
 
-	public ISchema getSchema(String extPointID) {
+	/**
+	 * Map of schema URL to the {@link CompiledSchema} of the schema
+	 */
+	private HashMap fCompiled = new HashMap();
+
+	public synchronized ISchema getSchema(String extPointID) {
 		IPluginExtensionPoint point = PDECore.getDefault().getExtensionsRegistry().findExtensionPoint(extPointID);
 		if (point == null) {
 			// if there is an old schema associated with this extension point, release it.
@@ -50,7 +55,7 @@ public class SchemaRegistry {
 		return (desc == null) ? null : desc.getSchema(true);
 	}
 
-	public ISchema getIncludedSchema(ISchemaDescriptor parent, String schemaLocation) {
+	public synchronized ISchema getIncludedSchema(ISchemaDescriptor parent, String schemaLocation) {
 		try {
 			URL url = IncludedSchemaDescriptor.computeURL(parent, schemaLocation);
 			if (url == null)
@@ -67,6 +72,26 @@ public class SchemaRegistry {
 		return null;
 	}
 
+	/**
+	 * Returns the validation rules of the given schema.  The rules are computed once
+	 * for every version of the schema file.
+	 * 
+	 * @param schema schema returned by this registry
+	 * @return compiled schema
+	 */
+	public synchronized CompiledSchema getCompiledSchema(ISchema schema) {
+		URL url = schema.getURL();
+		ISchemaDescriptor desc = schema.getSchemaDescriptor();
+		long lastModified = desc == null ? 0 : desc.getLastModified();
+		String key = url == null ? schema.getQualifiedPointId() : url.toString();
+		CompiledSchema compiled = (CompiledSchema) fCompiled.get(key);
+		if (compiled == null || !compiled.isCompiledFrom(schema, lastModified)) {
+			compiled = new CompiledSchema(schema, lastModified);
+			fCompiled.put(key, compiled);
+		}
+		return compiled;
+	}
+
 	private ISchemaDescriptor getExistingDescriptor(String key, URL url) {
 		ISchemaDescriptor desc = null;
 		if (fRegistry.containsKey(key)) {
@@ -160,8 +185,9 @@ public class SchemaRegistry {
 		return (desc.getLastModified() != file.lastModified());
 	}
 
-	public void shutdown() {
+	public synchronized void shutdown() {
 		fRegistry.clear();
+		fCompiled.clear();
 	}
 
 	private static String getId(IPluginExtensionPoint point, IPluginModelBase base) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2008 IBM Corporation and others.
+ *  Copyright (c) 2000, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -70,8 +70,9 @@ public abstract class AbstractSiteModel extends AbstractModel implements ISiteMo
 	}
 
 	public void load(InputStream stream, boolean outOfSync) throws CoreException {
+		SAXParser parser = null;
 		try {
-			SAXParser parser = getSaxParser();
+			parser = getSaxParser();
 			XMLDefaultHandler handler = new XMLDefaultHandler();
 			parser.parse(stream, handler);
 			if (handler.isPrepared()) {
@@ -82,6 +83,8 @@ public abstract class AbstractSiteModel extends AbstractModel implements ISiteMo
 			}
 		} catch (Exception e) {
 			PDECore.logException(e);
+		} finally {
+			recycleSaxParser(parser);
 		}
 	}
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2011 IBM Corporation and others.
+ * Copyright (c) 2009, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -29,6 +29,7 @@ import org.eclipse.pde.internal.core.ICoreConstants;
 import org.eclipse.pde.internal.core.PDECore;
 import org.eclipse.pde.internal.core.ifeature.IFeatureModel;
 import org.eclipse.pde.internal.core.target.provisional.*;
+import org.eclipse.pde.internal.core.util.WorkerPool;
 import org.osgi.framework.*;
 
 /**
@@ -63,6 +64,11 @@ public abstract class AbstractBundleContainer implements IBundleContainer {
 	 */
 	private String fSourcePath;
 
+	/**
+	 * Guards the registry and source path, bundles may be generated concurrently.
+	 */
+	private final Object fSourceLock = new Object();
+
 	/**
 	 * The Java VM Arguments specified by this bundle container 
 	 */
@@ -338,7 +344,11 @@ public abstract class AbstractBundleContainer implements IBundleContainer {
 			PluginConverter converter = (PluginConverter) PDECore.getDefault().acquireService(PluginConverter.class.getName());
 			if (converter != null) {
 				try {
-					Dictionary convert = converter.convertManifest(pluginDir, false, null, false, null);
+					Dictionary convert;
+					// the converter keeps state while converting, and containers may be resolved concurrently
+					synchronized (converter) {
+						convert = converter.convertManifest(pluginDir, false, null, false, null);
+					}
 					if (convert != null) {
 						Map map = new HashMap(convert.size(), 1.0f);
 						Enumeration keys = convert.keys();
@@ -368,7 +378,13 @@ public abstract class AbstractBundleContainer implements IBundleContainer {
 		} catch (CoreException e) {
 			status = e.getStatus();
 		}
-		return new ResolvedBundle(info, this, status, isSource ? getProvidedSource(file, info.getSymbolicName(), manifest) : null, false, fragment);
+		BundleInfo source = null;
+		if (isSource) {
+			synchronized (fSourceLock) {
+				source = getProvidedSource(file, info.getSymbolicName(), manifest);
+			}
+		}
+		return new ResolvedBundle(info, this, status, source, false, fragment);
 
 	}
 
@@ -407,10 +423,15 @@ public abstract class AbstractBundleContainer implements IBundleContainer {
 								info.setVersion(elements[0].getValue());
 							}
 						}
-						BundleInfo source = getProvidedSource(file, name, manifest);
+						BundleInfo source = null;
+						String sourcePath = null;
+						synchronized (fSourceLock) {
+							source = getProvidedSource(file, name, manifest);
+							sourcePath = fSourcePath;
+						}
 						boolean fragment = manifest.containsKey(Constants.FRAGMENT_HOST);
 						ResolvedBundle rb = new ResolvedBundle(info, this, null, source, false, fragment);
-						rb.setSourcePath(fSourcePath);
+						rb.setSourcePath(sourcePath);
 						return rb;
 					}
 				}
@@ -421,6 +442,55 @@ public abstract class AbstractBundleContainer implements IBundleContainer {
 		return null;
 	}
 
+	/**
+	 * Returns resolved bundles for the given files, skipping files that are not valid
+	 * bundles.  The files are read concurrently by a bounded number of workers, each of
+	 * which has at most one jar open at a time.  When the container is itself resolved on
+	 * a worker, for example by a target definition resolving its containers in parallel,
+	 * the files are read on that worker's thread, so the number of open zip files never
+	 * exceeds the size of the outermost worker pool.
+	 * 
+	 * @param files root jars or folders that may contain bundles
+	 * @param cache scan cache of the directory containing the files or <code>null</code>
+	 * @param monitor progress monitor that receives one unit of work per file
+	 * @return resolved bundles in the order of the files or <code>null</code> if canceled
+	 */
+	IResolvedBundle[] generateBundles(File[] files, final BundleScanCache cache, IProgressMonitor monitor) {
+		WorkerPool pool = new WorkerPool("Bundle Scanner"); //$NON-NLS-1$
+		Object[] results = pool.process(files, new WorkerPool.IWorker() {
+			public Object process(Object item, IProgressMonitor workerMonitor) {
+				File file = (File) item;
+				if (cache == null) {
+					return generateValidBundle(file);
+				}
+				BundleScanCache.Entry entry = cache.getEntry(file);
+				if (!entry.isCached()) {
+					entry.setBundle(generateValidBundle(file));
+				}
+				return entry.createBundle(file, AbstractBundleContainer.this);
+			}
+		}, monitor);
+		if (monitor.isCanceled()) {
+			return null;
+		}
+		List bundles = new ArrayList(results.length);
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] != null) {
+				bundles.add(results[i]);
+			}
+		}
+		return (IResolvedBundle[]) bundles.toArray(new IResolvedBundle[bundles.size()]);
+	}
+
+	private IResolvedBundle generateValidBundle(File file) {
+		try {
+			return generateBundle(file);
+		} catch (CoreException e) {
+			// ignore invalid bundles
+			return null;
+		}
+	}
+
 	/**
 	 * If the given bundle is a source bundle, the bundle that this bundle provides source for will be returned.
 	 * If the given bundle is not a source bundle or there was a problem getting the source target, <code>null</code>
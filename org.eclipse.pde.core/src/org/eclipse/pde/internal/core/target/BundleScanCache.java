@@ -0,0 +1,338 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.internal.core.target;
+
+import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.*;
+import java.util.jar.JarFile;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.equinox.frameworkadmin.BundleInfo;
+import org.eclipse.pde.internal.core.ICoreConstants;
+import org.eclipse.pde.internal.core.PDECore;
+import org.eclipse.pde.internal.core.target.provisional.IBundleContainer;
+import org.eclipse.pde.internal.core.target.provisional.IResolvedBundle;
+
+/**
+ * Persistent cache of the bundles found when scanning a directory of bundles.
+ * <p>
+ * For every file in the directory the cache stores its size and modification time
+ * together with what was read from its manifest: symbolic name, version, whether it
+ * is a fragment and which bundle it provides source for.  Files that are not bundles
+ * are remembered as well.  As long as the size and modification time of a file are
+ * unchanged, the cached information is used and the file is not opened at all.
+ * </p>
+ * <p>
+ * One cache file is kept per scanned directory in the PDE state location.  Caching
+ * is disabled by the <code>pde.nocache</code> system property.
+ * </p>
+ */
+class BundleScanCache {
+
+	private static final IPath CACHE_LOCATION = PDECore.getDefault().getStateLocation().append(".target_scan"); //$NON-NLS-1$
+
+	private static final int VERSION = 1;
+
+	private static final byte BUNDLE = 0x01;
+	private static final byte FRAGMENT = 0x02;
+	private static final byte SOURCE = 0x04;
+
+	/**
+	 * Cached scan result of a single file in the directory
+	 */
+	class Entry {
+		private String fName;
+		private long fSize;
+		private long fLastModified;
+		private boolean fCached = false;
+
+		private byte fFlags;
+		private String fSymbolicName;
+		private String fVersion;
+		private String fSourceName;
+		private String fSourceVersion;
+		private String fSourceLocation;
+		private String fSourcePath;
+
+		Entry(String name, long size, long lastModified) {
+			fName = name;
+			fSize = size;
+			fLastModified = lastModified;
+		}
+
+		/**
+		 * Returns whether this entry holds a scan result that is still valid for the file.
+		 *
+		 * @return whether the file needs to be scanned
+		 */
+		boolean isCached() {
+			return fCached;
+		}
+
+		/**
+		 * Records the result of scanning the file.
+		 *
+		 * @param bundle the bundle generated for the file or <code>null</code> if the file is not a bundle
+		 */
+		void setBundle(IResolvedBundle bundle) {
+			fFlags = 0;
+			fSymbolicName = fVersion = fSourceName = fSourceVersion = fSourceLocation = fSourcePath = null;
+			if (bundle != null) {
+				BundleInfo info = bundle.getBundleInfo();
+				fFlags |= BUNDLE;
+				fSymbolicName = info.getSymbolicName();
+				fVersion = info.getVersion();
+				if (bundle.isFragment()) {
+					fFlags |= FRAGMENT;
+				}
+				BundleInfo source = bundle.getSourceTarget();
+				if (source != null) {
+					fFlags |= SOURCE;
+					fSourceName = source.getSymbolicName();
+					fSourceVersion = source.getVersion();
+					fSourceLocation = source.getLocation() == null ? null : source.getLocation().toString();
+				}
+				if (bundle instanceof ResolvedBundle) {
+					fSourcePath = ((ResolvedBundle) bundle).getSourcePath();
+				}
+			}
+			fCached = true;
+			fChanged = true;
+		}
+
+		/**
+		 * Creates the resolved bundle for the file from the cached information.
+		 *
+		 * @param file the file this entry was created for
+		 * @param container container the bundle belongs to
+		 * @return resolved bundle or <code>null</code> if the file is not a bundle
+		 */
+		IResolvedBundle createBundle(File file, IBundleContainer container) {
+			if ((fFlags & BUNDLE) == 0) {
+				return null;
+			}
+			BundleInfo info = new BundleInfo();
+			info.setSymbolicName(fSymbolicName);
+			info.setLocation(file.toURI());
+			if (fVersion != null) {
+				info.setVersion(fVersion);
+			}
+			BundleInfo source = null;
+			if ((fFlags & SOURCE) != 0) {
+				URI location = null;
+				if (fSourceLocation != null) {
+					try {
+						location = new URI(fSourceLocation);
+					} catch (URISyntaxException e) {
+						// the file was written by this class, fall back to an unknown location
+					}
+				}
+				source = new BundleInfo(fSourceName, fSourceVersion, location, BundleInfo.NO_LEVEL, false);
+			}
+			ResolvedBundle rb = new ResolvedBundle(info, container, null, source, false, (fFlags & FRAGMENT) != 0);
+			rb.setSourcePath(fSourcePath);
+			return rb;
+		}
+	}
+
+	private File fDirectory;
+
+	/**
+	 * Map of file name to {@link Entry}
+	 */
+	private Map fEntries = new HashMap();
+
+	/**
+	 * Entries looked up during the current scan, entries for files that no longer exist
+	 * are dropped when the cache is saved.
+	 */
+	private Set fLiveNames = new HashSet();
+
+	private boolean fChanged = false;
+
+	private BundleScanCache(File directory) {
+		fDirectory = directory;
+	}
+
+	/**
+	 * Returns the scan cache of the given directory, reading it from disk if it was
+	 * saved before.
+	 *
+	 * @param directory directory of bundles
+	 * @return scan cache, possibly empty
+	 */
+	static BundleScanCache getCache(File directory) {
+		BundleScanCache cache = new BundleScanCache(directory.getAbsoluteFile());
+		if (isEnabled()) {
+			cache.read();
+		}
+		return cache;
+	}
+
+	private static boolean isEnabled() {
+		return !"true".equals(System.getProperty("pde.nocache")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Returns the cache entry for the given file of the directory.  If the file has not
+	 * changed since it was last scanned, the entry is cached and can create the bundle
+	 * without reading the file, otherwise the caller must scan the file and record the
+	 * result with {@link Entry#setBundle(IResolvedBundle)}.
+	 *
+	 * @param file file in the directory
+	 * @return cache entry for the file
+	 */
+	synchronized Entry getEntry(File file) {
+		String name = file.getName();
+		long size = 0;
+		long lastModified = 0;
+		if (file.isDirectory()) {
+			// the directory's own time stamp does not change when the content of its manifest does
+			lastModified = file.lastModified();
+			File[] descriptors = new File[] {new File(file, JarFile.MANIFEST_NAME), new File(file, ICoreConstants.PLUGIN_FILENAME_DESCRIPTOR), new File(file, ICoreConstants.FRAGMENT_FILENAME_DESCRIPTOR)};
+			for (int i = 0; i < descriptors.length; i++) {
+				long modified = descriptors[i].lastModified();
+				if (modified != 0) {
+					size += descriptors[i].length();
+					lastModified = Math.max(lastModified, modified);
+				}
+			}
+		} else {
+			size = file.length();
+			lastModified = file.lastModified();
+		}
+		fLiveNames.add(name);
+		Entry entry = (Entry) fEntries.get(name);
+		if (entry == null || entry.fSize != size || entry.fLastModified != lastModified) {
+			entry = new Entry(name, size, lastModified);
+			fEntries.put(name, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Writes the cache to disk if the scan changed it.  Entries of files that were not
+	 * looked up since the cache was read are removed.
+	 */
+	synchronized void save() {
+		if (!isEnabled()) {
+			return;
+		}
+		Iterator iter = fEntries.values().iterator();
+		while (iter.hasNext()) {
+			Entry entry = (Entry) iter.next();
+			if (!entry.fCached || !fLiveNames.contains(entry.fName)) {
+				iter.remove();
+				fChanged = true;
+			}
+		}
+		if (!fChanged) {
+			return;
+		}
+		File file = getCacheFile();
+		DataOutputStream out = null;
+		try {
+			file.getParentFile().mkdirs();
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			out.writeInt(VERSION);
+			out.writeUTF(fDirectory.getPath());
+			out.writeInt(fEntries.size());
+			iter = fEntries.values().iterator();
+			while (iter.hasNext()) {
+				Entry entry = (Entry) iter.next();
+				out.writeUTF(entry.fName);
+				out.writeLong(entry.fSize);
+				out.writeLong(entry.fLastModified);
+				out.writeByte(entry.fFlags);
+				if ((entry.fFlags & BUNDLE) != 0) {
+					out.writeUTF(entry.fSymbolicName);
+					writeString(out, entry.fVersion);
+					writeString(out, entry.fSourcePath);
+					if ((entry.fFlags & SOURCE) != 0) {
+						writeString(out, entry.fSourceName);
+						writeString(out, entry.fSourceVersion);
+						writeString(out, entry.fSourceLocation);
+					}
+				}
+			}
+			fChanged = false;
+		} catch (IOException e) {
+			PDECore.log(e);
+		} finally {
+			try {
+				if (out != null)
+					out.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private void read() {
+		File file = getCacheFile();
+		if (!file.isFile()) {
+			return;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			// different directories may share a cache file name, the path tells them apart
+			if (in.readInt() != VERSION || !fDirectory.getPath().equals(in.readUTF())) {
+				return;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				Entry entry = new Entry(in.readUTF(), in.readLong(), in.readLong());
+				entry.fFlags = in.readByte();
+				if ((entry.fFlags & BUNDLE) != 0) {
+					entry.fSymbolicName = in.readUTF();
+					entry.fVersion = readString(in);
+					entry.fSourcePath = readString(in);
+					if ((entry.fFlags & SOURCE) != 0) {
+						entry.fSourceName = readString(in);
+						entry.fSourceVersion = readString(in);
+						entry.fSourceLocation = readString(in);
+					}
+				}
+				entry.fCached = true;
+				fEntries.put(entry.fName, entry);
+			}
+		} catch (IOException e) {
+			// a damaged cache is rebuilt by the next scan
+			fEntries.clear();
+		} finally {
+			try {
+				if (in != null)
+					in.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private File getCacheFile() {
+		String path = fDirectory.getPath();
+		if (File.separatorChar == '\\') {
+			path = path.toLowerCase();
+		}
+		return CACHE_LOCATION.append(Integer.toHexString(path.hashCode())).toFile();
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
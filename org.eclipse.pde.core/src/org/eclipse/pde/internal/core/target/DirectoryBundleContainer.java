@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2010 IBM Corporation and others.
+ * Copyright (c) 2008, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,8 +11,6 @@
 package org.eclipse.pde.internal.core.target;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
 import org.eclipse.core.runtime.*;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.pde.internal.build.IPDEBuildConstants;
@@ -74,23 +72,14 @@ public class DirectoryBundleContainer extends AbstractBundleContainer {
 			File site = getSite(dir);
 			File[] files = site.listFiles();
 			SubMonitor localMonitor = SubMonitor.convert(monitor, Messages.DirectoryBundleContainer_0, files.length);
-			List bundles = new ArrayList(files.length);
-			for (int i = 0; i < files.length; i++) {
-				if (localMonitor.isCanceled()) {
-					return new IResolvedBundle[0];
-				}
-				try {
-					IResolvedBundle rb = generateBundle(files[i]);
-					if (rb != null) {
-						bundles.add(rb);
-					}
-				} catch (CoreException e) {
-					// ignore invalid bundles
-				}
-				localMonitor.worked(1);
+			BundleScanCache cache = BundleScanCache.getCache(site);
+			IResolvedBundle[] bundles = generateBundles(files, cache, localMonitor);
+			if (bundles == null) {
+				return new IResolvedBundle[0];
 			}
+			cache.save();
 			localMonitor.done();
-			return (IResolvedBundle[]) bundles.toArray(new IResolvedBundle[bundles.size()]);
+			return bundles;
 		}
 		throw new CoreException(new Status(IStatus.ERROR, PDECore.PLUGIN_ID, NLS.bind(Messages.DirectoryBundleContainer_1, dir.toString())));
 	}
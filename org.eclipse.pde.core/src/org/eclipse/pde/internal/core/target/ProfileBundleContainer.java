@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2010 IBM Corporation and others.
+ * Copyright (c) 2008, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -176,25 +176,14 @@ public class ProfileBundleContainer extends AbstractBundleContainer {
 	protected IResolvedBundle[] resolvePlatformXML(ITargetDefinition definition, String home, IProgressMonitor monitor) throws CoreException {
 		File[] files = PluginPathFinder.getPaths(home, false, false);
 		if (files.length > 0) {
-			List all = new ArrayList(files.length);
 			SubMonitor localMonitor = SubMonitor.convert(monitor, Messages.DirectoryBundleContainer_0, files.length);
-			for (int i = 0; i < files.length; i++) {
-				if (localMonitor.isCanceled()) {
-					throw new OperationCanceledException();
-				}
-				try {
-					IResolvedBundle rb = generateBundle(files[i]);
-					if (rb != null) {
-						all.add(rb);
-					}
-				} catch (CoreException e) {
-					// ignore invalid bundles
-				}
-				localMonitor.worked(1);
+			IResolvedBundle[] all = generateBundles(files, null, localMonitor);
+			if (all == null) {
+				throw new OperationCanceledException();
 			}
 			localMonitor.done();
-			if (!all.isEmpty()) {
-				return (IResolvedBundle[]) all.toArray(new IResolvedBundle[all.size()]);
+			if (all.length > 0) {
+				return all;
 			}
 		}
 		return null;
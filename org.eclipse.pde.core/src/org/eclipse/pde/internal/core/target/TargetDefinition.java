@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 IBM Corporation and others.
+ * Copyright (c) 2008, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -27,6 +27,7 @@ import org.eclipse.pde.internal.core.PDECore;
 import org.eclipse.pde.internal.core.ifeature.IFeatureModel;
 import org.eclipse.pde.internal.core.ifeature.IFeaturePlugin;
 import org.eclipse.pde.internal.core.target.provisional.*;
+import org.eclipse.pde.internal.core.util.WorkerPool;
 import org.xml.sax.SAXException;
 
 /**
@@ -69,6 +70,7 @@ public class TargetDefinition implements ITargetDefinition {
 	public static final int MODE_FEATURE = 1;
 
 	// cache of features found for a given location, maps a string path location to a array of IFeatureModels (IFeatureModel[])
+	// containers are resolved concurrently, access must be synchronized on the map
 	private Map fFeaturesInLocation = new HashMap();
 
 	// internal cache for features.  A target managed by features will contain a set of features as well as a set of plug-ins that don't belong to a feature
@@ -77,6 +79,12 @@ public class TargetDefinition implements ITargetDefinition {
 
 	private int fSequenceNumber = -1;
 
+	private static final boolean DEBUG_RESOLVE;
+
+	static {
+		DEBUG_RESOLVE = PDECore.getDefault().isDebugging() && "true".equals(Platform.getDebugOption("org.eclipse.pde.core/target/resolve")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
 	/**
 	 * Constructs a target definition based on the given handle. 
 	 */
@@ -233,10 +241,12 @@ public class TargetDefinition implements ITargetDefinition {
 		// Clear the feature model cache as it is based on the bundle container locations
 		fFeatureModels = null;
 		fOtherBundles = null;
-		if (location == null) {
-			fFeaturesInLocation.clear();
-		} else {
-			fFeaturesInLocation.remove(location);
+		synchronized (fFeaturesInLocation) {
+			if (location == null) {
+				fFeaturesInLocation.clear();
+			} else {
+				fFeaturesInLocation.remove(location);
+			}
 		}
 		if (fContainers == null) {
 			fIncluded = null;
@@ -254,17 +264,30 @@ public class TargetDefinition implements ITargetDefinition {
 			num = containers.length;
 		}
 		SubMonitor subMonitor = SubMonitor.convert(monitor, Messages.TargetDefinition_1, num * 10);
+		long start = System.currentTimeMillis();
 		try {
 			MultiStatus status = new MultiStatus(PDECore.PLUGIN_ID, 0, Messages.TargetDefinition_2, null);
 			if (containers != null) {
-				for (int i = 0; i < containers.length; i++) {
-					if (subMonitor.isCanceled()) {
-						return Status.CANCEL_STATUS;
+				IStatus[] results;
+				if (num > 1 && WorkerPool.getDefaultSize() > 1) {
+					results = resolveContainers(containers, subMonitor.newChild(num * 10));
+				} else {
+					results = new IStatus[num];
+					for (int i = 0; i < containers.length; i++) {
+						if (subMonitor.isCanceled()) {
+							return Status.CANCEL_STATUS;
+						}
+						subMonitor.subTask(Messages.TargetDefinition_4);
+						results[i] = resolveContainer(containers[i], subMonitor.newChild(10));
 					}
-					subMonitor.subTask(Messages.TargetDefinition_4);
-					IStatus s = containers[i].resolve(this, subMonitor.newChild(10));
-					if (!s.isOK()) {
-						status.add(s);
+				}
+				if (subMonitor.isCanceled()) {
+					return Status.CANCEL_STATUS;
+				}
+				// merge in container order so the result does not depend on which container finished first
+				for (int i = 0; i < results.length; i++) {
+					if (results[i] != null && !results[i].isOK()) {
+						status.add(results[i]);
 					}
 				}
 			}
@@ -273,6 +296,9 @@ public class TargetDefinition implements ITargetDefinition {
 			}
 			return status;
 		} finally {
+			if (DEBUG_RESOLVE) {
+				System.out.println("Target resolved in " + (System.currentTimeMillis() - start) + " ms (" + num + " containers)"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			}
 			subMonitor.done();
 			if (monitor != null) {
 				monitor.done();
@@ -280,6 +306,42 @@ public class TargetDefinition implements ITargetDefinition {
 		}
 	}
 
+	/**
+	 * Resolves the given containers concurrently.  Containers are independent of each
+	 * other and are resolved by a pool of workers of the default size, so a target with
+	 * many containers does not start a thread for each of them.  Cancelling the monitor stops containers that have not
+	 * been started yet and is forwarded to the ones being resolved.
+	 * 
+	 * @param containers containers to resolve
+	 * @param monitor progress monitor, receives one unit of work per container
+	 * @return the resolution status of each container, <code>null</code> for containers that were not resolved
+	 */
+	private IStatus[] resolveContainers(final IBundleContainer[] containers, IProgressMonitor monitor) {
+		SubMonitor subMonitor = SubMonitor.convert(monitor, Messages.TargetDefinition_4, containers.length);
+		Integer[] indices = new Integer[containers.length];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = new Integer(i);
+		}
+		WorkerPool pool = new WorkerPool("Target Resolver"); //$NON-NLS-1$
+		Object[] results = pool.process(indices, new WorkerPool.IWorker() {
+			public Object process(Object item, IProgressMonitor workerMonitor) {
+				return resolveContainer(containers[((Integer) item).intValue()], workerMonitor);
+			}
+		}, subMonitor);
+		IStatus[] statuses = new IStatus[results.length];
+		System.arraycopy(results, 0, statuses, 0, results.length);
+		return statuses;
+	}
+
+	private IStatus resolveContainer(IBundleContainer container, IProgressMonitor monitor) {
+		long start = System.currentTimeMillis();
+		IStatus status = container.resolve(this, monitor);
+		if (DEBUG_RESOLVE) {
+			System.out.println("Resolved " + container + " in " + (System.currentTimeMillis() - start) + " ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+		return status;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.eclipse.pde.internal.core.target.provisional.ITargetDefinition#isResolved()
 	 */
@@ -892,7 +954,7 @@ public class TargetDefinition implements ITargetDefinition {
 		}
 
 		IFeatureModel[] models = null;
-		if (fFeaturesInLocation != null) {
+		synchronized (fFeaturesInLocation) {
 			models = (IFeatureModel[]) fFeaturesInLocation.get(path);
 		}
 
@@ -900,8 +962,14 @@ public class TargetDefinition implements ITargetDefinition {
 			return models; /*(IFeatureModel[])models.toArray(new IFeatureModel[models.size()]);*/
 		}
 
+		// the models are created outside of the lock, containers sharing a location may both create them
 		models = ExternalFeatureModelManager.createModels(path, new ArrayList(), monitor);
-		fFeaturesInLocation.put(path, models);
+		synchronized (fFeaturesInLocation) {
+			IFeatureModel[] existing = (IFeatureModel[]) fFeaturesInLocation.get(path);
+			if (existing != null)
+				return existing;
+			fFeaturesInLocation.put(path, models);
+		}
 		return models;
 	}
 
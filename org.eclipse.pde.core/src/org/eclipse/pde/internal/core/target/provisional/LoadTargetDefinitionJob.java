@@ -457,11 +457,17 @@ public class LoadTargetDefinitionJob extends WorkspaceJob {
 			}
 
 			URL[] urls = (URL[]) paths.toArray(new URL[paths.size()]);
-			PDEState state = new PDEState(urls, true, new SubProgressMonitor(monitor, 45));
-			IPluginModelBase[] models = state.getTargetModels();
-			for (int i = 0; i < models.length; i++) {
-				NameVersionDescriptor nv = new NameVersionDescriptor(models[i].getPluginBase().getId(), models[i].getPluginBase().getVersion());
-				models[i].setEnabled(!missingDescriptions.contains(nv));
+			PDEState state = null;
+			if (!PDECore.getDefault().getModelManager().isInitialized()) {
+				state = new PDEState(urls, true, new SubProgressMonitor(monitor, 45));
+				IPluginModelBase[] models = state.getTargetModels();
+				for (int i = 0; i < models.length; i++) {
+					NameVersionDescriptor nv = new NameVersionDescriptor(models[i].getPluginBase().getId(), models[i].getPluginBase().getVersion());
+					models[i].setEnabled(!missingDescriptions.contains(nv));
+				}
+			} else {
+				// the reset job applies only the differences to the current target state
+				subMon.worked(45);
 			}
 
 			if (subMon.isCanceled()) {
@@ -569,7 +575,7 @@ public class LoadTargetDefinitionJob extends WorkspaceJob {
 
 			pref.setValue(ICoreConstants.EXTERNAL_FEATURES, featureList.toString());
 
-			Job job = new TargetPlatformResetJob(state);
+			Job job = state != null ? new TargetPlatformResetJob(state) : new TargetPlatformResetJob(urls, missingDescriptions);
 			job.schedule();
 			try {
 				job.join();
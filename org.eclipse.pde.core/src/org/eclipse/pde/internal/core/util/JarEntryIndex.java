@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.internal.core.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.eclipse.pde.internal.core.PDECore;
+
+/**
+ * Index of the entry names of jarred bundles, used to check whether a bundle contains
+ * a resource without opening the jar every time.
+ * <p>
+ * The names of a jar are read from its central directory the first time the jar is
+ * looked at.  The index of a jar is read again when the size or modification time of
+ * the file changes.  Only the indexes of the most recently used jars are kept.
+ * </p>
+ */
+public class JarEntryIndex {
+
+	private static final int MAX_JARS = 64;
+
+	/**
+	 * Entry names of a single jar
+	 */
+	private static class Entries {
+		long fLastModified;
+		long fLength;
+		Set fNames;
+	}
+
+	/**
+	 * Map of jar path to its {@link Entries}, in the order of last use
+	 */
+	private static final Map fIndex = new LinkedHashMap(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			return size() > MAX_JARS;
+		}
+	};
+
+	private JarEntryIndex() {
+	}
+
+	/**
+	 * Returns whether the given jar has an entry for the resource.  Like
+	 * {@link ZipFile#getEntry(String)}, a directory entry matches a resource name
+	 * without the trailing slash.
+	 *
+	 * @param jar jar file
+	 * @param resource path of the resource in the jar
+	 * @return whether the resource exists in the jar
+	 */
+	public static boolean containsEntry(File jar, String resource) {
+		Set names = getNames(jar);
+		return names.contains(resource) || names.contains(resource + '/');
+	}
+
+	private static Set getNames(File jar) {
+		String key = jar.getAbsolutePath();
+		long lastModified = jar.lastModified();
+		long length = jar.length();
+		synchronized (fIndex) {
+			Entries entries = (Entries) fIndex.get(key);
+			if (entries != null && entries.fLastModified == lastModified && entries.fLength == length)
+				return entries.fNames;
+		}
+		Entries entries = new Entries();
+		entries.fLastModified = lastModified;
+		entries.fLength = length;
+		entries.fNames = readNames(jar);
+		synchronized (fIndex) {
+			fIndex.put(key, entries);
+		}
+		return entries.fNames;
+	}
+
+	private static Set readNames(File jar) {
+		Set names = new HashSet();
+		ZipFile jarFile = null;
+		try {
+			jarFile = new ZipFile(jar, ZipFile.OPEN_READ);
+			Enumeration enumeration = jarFile.entries();
+			while (enumeration.hasMoreElements()) {
+				names.add(((ZipEntry) enumeration.nextElement()).getName());
+			}
+		} catch (IOException e) {
+			PDECore.logException(e);
+		} finally {
+			try {
+				if (jarFile != null)
+					jarFile.close();
+			} catch (IOException e) {
+				PDECore.logException(e);
+			}
+		}
+		return names;
+	}
+}
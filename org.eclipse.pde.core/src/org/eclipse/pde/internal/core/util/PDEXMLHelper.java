@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2011 IBM Corporation and others.
+ *  Copyright (c) 2000, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -18,7 +18,12 @@ import org.xml.sax.SAXException;
 
 /**
  * PDEXMLHelper
- *
+ * <p>
+ * Parsers handed back with {@link #recycleSAXParser(SAXParser)} are reused.  Each thread
+ * keeps the last SAX parser it returned for itself, so threads parsing many files one
+ * after the other (like the validation of a build) neither create new parsers nor wait
+ * for each other.  Other returned parsers go to a pool shared by all threads.
+ * </p>
  */
 public class PDEXMLHelper {
 
@@ -31,6 +36,14 @@ public class PDEXMLHelper {
 	protected static int fDOMPoolLimit;
 	protected static final int FMAXPOOLLIMIT = 1;
 
+	private static final String LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler"; //$NON-NLS-1$
+
+	/**
+	 * Soft reference to the SAX parser the current thread returned last, if it has not
+	 * been taken again
+	 */
+	private static final ThreadLocal fThreadSAXParser = new ThreadLocal();
+
 	protected PDEXMLHelper() throws FactoryConfigurationError {
 		fSAXFactory = SAXParserFactory.newInstance();
 		fDOMFactory = DocumentBuilderFactory.newInstance();
@@ -40,8 +53,19 @@ public class PDEXMLHelper {
 		fDOMPoolLimit = FMAXPOOLLIMIT;
 	}
 
-	public synchronized SAXParser getDefaultSAXParser() throws ParserConfigurationException, SAXException {
+	public SAXParser getDefaultSAXParser() throws ParserConfigurationException, SAXException {
+		SoftReference reference = (SoftReference) fThreadSAXParser.get();
+		if (reference != null) {
+			// a nested parse on this thread must not get the same parser
+			fThreadSAXParser.set(null);
+			SAXParser parser = (SAXParser) reference.get();
+			if (parser != null)
+				return parser;
+		}
+		return getPooledSAXParser();
+	}
 
+	private synchronized SAXParser getPooledSAXParser() throws ParserConfigurationException, SAXException {
 		SAXParser parser = null;
 		if (fSAXParserQueue.isEmpty()) {
 			parser = fSAXFactory.newSAXParser();
@@ -72,14 +96,48 @@ public class PDEXMLHelper {
 		return parser;
 	}
 
-	public static PDEXMLHelper Instance() throws FactoryConfigurationError {
+	public static synchronized PDEXMLHelper Instance() throws FactoryConfigurationError {
 		if (fPinstance == null) {
 			fPinstance = new PDEXMLHelper();
 		}
 		return fPinstance;
 	}
 
-	public synchronized void recycleSAXParser(SAXParser parser) {
+	public void recycleSAXParser(SAXParser parser) {
+		if (parser == null || !resetSAXParser(parser))
+			return;
+		if (fThreadSAXParser.get() == null) {
+			fThreadSAXParser.set(new SoftReference(parser));
+			return;
+		}
+		recyclePooledSAXParser(parser);
+	}
+
+	/**
+	 * Removes the handlers a client may have set on a parser, so that they are neither
+	 * called nor kept from being collected by the next user of the parser.
+	 *
+	 * @return whether the parser can be reused
+	 */
+	private boolean resetSAXParser(SAXParser parser) {
+		Object handler;
+		try {
+			handler = parser.getProperty(LEXICAL_HANDLER);
+		} catch (SAXException e) {
+			// the property is not supported, so it cannot have been set
+			return true;
+		}
+		if (handler == null)
+			return true;
+		try {
+			parser.setProperty(LEXICAL_HANDLER, null);
+			return true;
+		} catch (SAXException e) {
+			return false;
+		}
+	}
+
+	private synchronized void recyclePooledSAXParser(SAXParser parser) {
 		if (fSAXParserQueue.size() < fSAXPoolLimit) {
 			SoftReference reference = new SoftReference(parser);
 			fSAXParserQueue.add(reference);
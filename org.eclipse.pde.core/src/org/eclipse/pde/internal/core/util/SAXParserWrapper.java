@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2000, 2008 IBM Corporation and others.
+ *  Copyright (c) 2000, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -25,7 +25,11 @@ import org.xml.sax.helpers.DefaultHandler;
 
 /**
  * SAXParserWrapper
- *
+ * <p>
+ * The parser is taken from the pool of {@link PDEXMLHelper} and given back to it by
+ * {@link #dispose()}, clients parsing many files should dispose the wrapper as soon as
+ * they are done with it so that the parser can be reused.
+ * </p>
  */
 public class SAXParserWrapper {
 
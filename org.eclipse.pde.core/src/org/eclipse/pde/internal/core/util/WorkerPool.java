@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.internal.core.util;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.pde.internal.core.PDECore;
+
+/**
+ * Processes a batch of independent work items on a bounded number of threads.
+ * <p>
+ * Results are returned in the order of the items, no matter in which order the
+ * items complete, so callers can apply them deterministically. Progress and
+ * cancellation are handled on the calling thread: the given monitor receives one
+ * unit of work per processed item and, once it is canceled, no further items are
+ * started.
+ * </p>
+ * <p>
+ * All pools share one bound of {@link #getDefaultSize()} worker threads.  The first
+ * thread of a batch is always started, every further thread needs one of the shared
+ * permits that are free at the time.  A batch started by a worker, for example by a
+ * container resolved on a pool that scans its bundles on a pool of its own, is worked
+ * on by that worker and borrows the permits other batches do not use.  Nested pools
+ * therefore stay within the bound without running serially, and no thread ever waits
+ * for a permit.
+ * </p>
+ * <p>
+ * Plain threads are used rather than jobs so that a batch can safely be processed
+ * while the job manager is suspended, e.g. during workbench startup.
+ * </p>
+ * @since 3.8
+ */
+public class WorkerPool {
+
+	/**
+	 * System property that sets the maximum number of worker threads. A value
+	 * of <code>1</code> disables parallel processing.
+	 */
+	public static final String WORKERS_PROPERTY = "pde.workers"; //$NON-NLS-1$
+
+	/**
+	 * Upper bound for the default number of workers, regardless of the number
+	 * of available processors.  Workers are mostly I/O bound and hold open file
+	 * handles, so more threads rarely help.
+	 */
+	private static final int MAX_DEFAULT_WORKERS = 4;
+
+	/**
+	 * Set to {@link Boolean#TRUE} on the threads of a pool while they process items
+	 */
+	private static final ThreadLocal fIsWorker = new ThreadLocal();
+
+	/**
+	 * Number of additional worker threads that may still be started by any pool, or
+	 * <code>-1</code> until first used
+	 */
+	private static int fFreePermits = -1;
+
+	private static final Object fPermitLock = new Object();
+
+	/**
+	 * Processes a single work item.  Implementations are called concurrently and
+	 * must only touch shared data in a thread safe way.
+	 */
+	public interface IWorker {
+		/**
+		 * Processes the given item and returns its result, possibly <code>null</code>.
+		 *
+		 * @param item the item to process
+		 * @param monitor monitor whose cancellation state reflects the batch, never <code>null</code>
+		 * @return result of the item
+		 */
+		public Object process(Object item, IProgressMonitor monitor);
+	}
+
+	private String fName;
+	private int fSize;
+
+	/**
+	 * Creates a pool with the default number of workers.
+	 *
+	 * @param name name used for the worker threads
+	 */
+	public WorkerPool(String name) {
+		this(name, getDefaultSize());
+	}
+
+	/**
+	 * Creates a pool with the given maximum number of workers.
+	 *
+	 * @param name name used for the worker threads
+	 * @param size maximum number of concurrent workers, values below one are treated as one
+	 */
+	public WorkerPool(String name, int size) {
+		fName = name;
+		fSize = Math.max(1, size);
+	}
+
+	/**
+	 * Returns the default number of workers, based on the available processors
+	 * and the {@link #WORKERS_PROPERTY} system property.
+	 *
+	 * @return default number of workers, at least one
+	 */
+	public static int getDefaultSize() {
+		String property = System.getProperty(WORKERS_PROPERTY);
+		if (property != null) {
+			try {
+				return Math.max(1, Integer.parseInt(property.trim()));
+			} catch (NumberFormatException e) {
+			}
+		}
+		return Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_DEFAULT_WORKERS));
+	}
+
+	/**
+	 * Returns whether the current thread is processing items of a pool.
+	 *
+	 * @return whether the caller runs on a worker thread
+	 */
+	public static boolean isWorkerThread() {
+		return fIsWorker.get() != null;
+	}
+
+	/**
+	 * Takes up to the given number of free permits.
+	 *
+	 * @return the number of permits taken
+	 */
+	private static int acquirePermits(int wanted) {
+		synchronized (fPermitLock) {
+			if (fFreePermits == -1)
+				fFreePermits = getDefaultSize() - 1;
+			int taken = Math.max(0, Math.min(wanted, fFreePermits));
+			fFreePermits -= taken;
+			return taken;
+		}
+	}
+
+	private static void releasePermit() {
+		synchronized (fPermitLock) {
+			fFreePermits++;
+		}
+	}
+
+	/**
+	 * Returns the maximum number of concurrent workers of this pool.
+	 *
+	 * @return maximum number of workers
+	 */
+	public int getSize() {
+		return fSize;
+	}
+
+	/**
+	 * Processes all items and returns their results in item order.  Items that
+	 * were not processed because the monitor was canceled have a <code>null</code>
+	 * result.  The monitor is expected to have been started by the caller; this
+	 * method only reports one unit of work per item.  When called on a worker thread,
+	 * the calling thread processes items as well.
+	 *
+	 * @param items items to process
+	 * @param worker worker that processes each item
+	 * @param monitor progress monitor or <code>null</code>
+	 * @return results in the order of the items
+	 */
+	public Object[] process(Object[] items, IWorker worker, IProgressMonitor monitor) {
+		if (monitor == null)
+			monitor = new NullProgressMonitor();
+		Batch batch = new Batch(items, worker);
+		int count = Math.min(fSize, items.length);
+		if (count <= 1) {
+			for (int i = 0; i < items.length; i++) {
+				if (monitor.isCanceled())
+					break;
+				batch.processItem(i, monitor);
+				monitor.worked(1);
+			}
+			return batch.fResults;
+		}
+
+		Thread[] threads;
+		if (isWorkerThread()) {
+			// the calling worker already counts against the bound, it takes part in the batch
+			batch.fParentMonitor = monitor;
+			threads = startThreads(batch, 0, acquirePermits(count - 1));
+			batch.run();
+		} else {
+			threads = startThreads(batch, 1, acquirePermits(count - 1));
+		}
+		batch.await(monitor);
+		for (int i = 0; i < threads.length; i++) {
+			try {
+				threads[i].join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return batch.fResults;
+	}
+
+	private Thread[] startThreads(final Batch batch, int free, int permits) {
+		Thread[] threads = new Thread[free + permits];
+		for (int i = 0; i < threads.length; i++) {
+			final boolean permit = i >= free;
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						batch.run();
+					} finally {
+						if (permit)
+							releasePermit();
+					}
+				}
+			}, fName + " #" + (i + 1)); //$NON-NLS-1$
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+		return threads;
+	}
+
+	/**
+	 * Shared state of the workers processing one call to {@link WorkerPool#process(Object[], IWorker, IProgressMonitor)}.
+	 */
+	private static class Batch implements Runnable {
+
+		private final Object[] fItems;
+		private final IWorker fWorker;
+		final Object[] fResults;
+		private final IProgressMonitor fMonitor;
+
+		/**
+		 * Monitor of the batch a nested batch was started from, checked by the workers
+		 * because the calling worker only forwards cancellation once it waits
+		 */
+		IProgressMonitor fParentMonitor;
+
+		private int fNext = 0;
+		private int fCompleted = 0;
+		volatile boolean fCanceled = false;
+
+		Batch(Object[] items, IWorker worker) {
+			fItems = items;
+			fWorker = worker;
+			fResults = new Object[items.length];
+			fMonitor = new NullProgressMonitor() {
+				public boolean isCanceled() {
+					return fCanceled;
+				}
+			};
+		}
+
+		public void run() {
+			fIsWorker.set(Boolean.TRUE);
+			int index;
+			while ((index = next()) != -1) {
+				processItem(index, fMonitor);
+				completed();
+			}
+		}
+
+		void processItem(int index, IProgressMonitor monitor) {
+			try {
+				fResults[index] = fWorker.process(fItems[index], monitor);
+			} catch (RuntimeException e) {
+				PDECore.log(e);
+			} catch (LinkageError e) {
+				PDECore.log(e);
+			}
+		}
+
+		private synchronized int next() {
+			if (fParentMonitor != null && fParentMonitor.isCanceled())
+				fCanceled = true;
+			if (fCanceled || fNext >= fItems.length)
+				return -1;
+			return fNext++;
+		}
+
+		private synchronized void completed() {
+			fCompleted++;
+			notifyAll();
+		}
+
+		/**
+		 * Waits until every started item has completed, reporting progress and
+		 * forwarding cancellation of the given monitor to the workers.
+		 */
+		synchronized void await(IProgressMonitor monitor) {
+			int reported = 0;
+			while (fCompleted < fNext || (!fCanceled && fNext < fItems.length)) {
+				try {
+					wait(100);
+				} catch (InterruptedException e) {
+					fCanceled = true;
+					Thread.currentThread().interrupt();
+				}
+				if (fCompleted > reported) {
+					monitor.worked(fCompleted - reported);
+					reported = fCompleted;
+				}
+				if (!fCanceled && monitor.isCanceled())
+					fCanceled = true;
+			}
+			if (fCompleted > reported)
+				monitor.worked(fCompleted - reported);
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009 EclipseSource Corporation and others.
+ * Copyright (c) 2009, 2012 EclipseSource Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -49,6 +49,11 @@ public class PDELaunchingPlugin extends Plugin implements IPDEConstants {
 
 	private PDEPreferencesManager fPreferenceManager;
 
+	/**
+	 * Tracks the build times of the workspace projects
+	 */
+	private BuildStampTracker fBuildStampTracker;
+
 	public PDELaunchingPlugin() {
 		fInstance = this;
 	}
@@ -113,6 +118,8 @@ public class PDELaunchingPlugin extends Plugin implements IPDEConstants {
 		super.start(context);
 		fBundleContext = context;
 		setupLaunchConfigurationListener();
+		fBuildStampTracker = new BuildStampTracker();
+		fBuildStampTracker.start();
 	}
 
 	/**
@@ -162,6 +169,10 @@ public class PDELaunchingPlugin extends Plugin implements IPDEConstants {
 		if (fDebugPluginUtil != null) {
 			fDebugPluginUtil.removeListener();
 		}
+		if (fBuildStampTracker != null) {
+			fBuildStampTracker.stop();
+			fBuildStampTracker = null;
+		}
 		LauncherUtils.shutdown();
 		super.stop(context);
 	}
@@ -172,6 +183,15 @@ public class PDELaunchingPlugin extends Plugin implements IPDEConstants {
 		return fLaunchListener;
 	}
 
+	/**
+	 * Returns the tracker of the build times of the workspace projects.
+	 * 
+	 * @return the tracker or <code>null</code> if the plug-in is not started
+	 */
+	public BuildStampTracker getBuildStampTracker() {
+		return fBuildStampTracker;
+	}
+
 	public OSGiFrameworkManager getOSGiFrameworkManager() {
 		if (fOSGiFrameworkManager == null)
 			fOSGiFrameworkManager = new OSGiFrameworkManager();
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.internal.launching.launcher;
+
+import java.io.*;
+import java.util.Properties;
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.pde.internal.core.PDECore;
+import org.eclipse.pde.internal.core.project.PDEProject;
+import org.eclipse.pde.internal.launching.IPDEConstants;
+
+/**
+ * Tracks the time workspace projects were last built, that is the latest modification
+ * time of the class files, the manifest and the build.properties of each project.
+ * <p>
+ * The stamps are updated from the resource deltas, so the launcher does not have to
+ * scan the output folders of every project to find out whether it changed.  They are
+ * saved with the workspace.  The changes made while PDE launching was not active are
+ * taken from the delta since the previous save, which the workspace keeps for its save
+ * participants.
+ * </p>
+ */
+public class BuildStampTracker implements IResourceChangeListener, ISaveParticipant {
+
+	private static final String FILE_NAME = "build-timestamp.properties"; //$NON-NLS-1$
+
+	/**
+	 * Map of project name to the time the project was last built
+	 */
+	private Properties fStamps = new Properties();
+
+	private boolean fDirty = false;
+
+	/**
+	 * Loads the saved stamps and starts to track the changes of the workspace.
+	 *
+	 * @throws CoreException if the tracker cannot participate in workspace saves
+	 */
+	public void start() throws CoreException {
+		IWorkspace workspace = ResourcesPlugin.getWorkspace();
+		ISavedState savedState = workspace.addSaveParticipant(IPDEConstants.PLUGIN_ID, this);
+		// without a delta since the stamps were saved, they may be out of date
+		if (savedState != null) {
+			load();
+			savedState.processResourceChangeEvents(this);
+		}
+		workspace.addResourceChangeListener(this, IResourceChangeEvent.POST_CHANGE);
+	}
+
+	public void stop() {
+		IWorkspace workspace = ResourcesPlugin.getWorkspace();
+		workspace.removeResourceChangeListener(this);
+		workspace.removeSaveParticipant(IPDEConstants.PLUGIN_ID);
+	}
+
+	/**
+	 * Returns the time the given project was last built.
+	 *
+	 * @param project workspace project
+	 * @return the build time, or <code>-1</code> if it is not known
+	 */
+	public synchronized long getStamp(IProject project) {
+		String stamp = fStamps.getProperty(project.getName());
+		if (stamp != null) {
+			try {
+				return Long.parseLong(stamp);
+			} catch (NumberFormatException e) {
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Records a build time of the given project, computed when no build time was known.
+	 * Later builds are not overwritten.
+	 *
+	 * @param project workspace project
+	 * @param stamp build time
+	 */
+	public void setStamp(IProject project, long stamp) {
+		update(project.getName(), stamp);
+	}
+
+	private synchronized void update(String projectName, long stamp) {
+		String previous = fStamps.getProperty(projectName);
+		try {
+			if (previous != null && Long.parseLong(previous) >= stamp)
+				return;
+		} catch (NumberFormatException e) {
+		}
+		fStamps.setProperty(projectName, Long.toString(stamp));
+		fDirty = true;
+	}
+
+	private synchronized void remove(String projectName) {
+		if (fStamps.remove(projectName) != null)
+			fDirty = true;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.core.resources.IResourceChangeListener#resourceChanged(org.eclipse.core.resources.IResourceChangeEvent)
+	 */
+	public void resourceChanged(IResourceChangeEvent event) {
+		IResourceDelta delta = event.getDelta();
+		if (delta == null)
+			return;
+		IResourceDelta[] projects = delta.getAffectedChildren();
+		for (int i = 0; i < projects.length; i++) {
+			IProject project = (IProject) projects[i].getResource();
+			if (projects[i].getKind() == IResourceDelta.REMOVED) {
+				remove(project.getName());
+				continue;
+			}
+			if (!project.isOpen())
+				continue;
+			final long[] stamp = new long[] {-1};
+			final IFile manifest = PDEProject.getManifest(project);
+			final IFile buildProperties = PDEProject.getBuildProperties(project);
+			try {
+				projects[i].accept(new IResourceDeltaVisitor() {
+					public boolean visit(IResourceDelta delta) {
+						IResource resource = delta.getResource();
+						if (resource.getType() != IResource.FILE)
+							return true;
+						if (delta.getKind() == IResourceDelta.REMOVED || (delta.getKind() == IResourceDelta.CHANGED && (delta.getFlags() & IResourceDelta.CONTENT) == 0))
+							return false;
+						if ("class".equals(resource.getFileExtension()) || resource.equals(manifest) || resource.equals(buildProperties)) { //$NON-NLS-1$
+							long modified = resource.getLocalTimeStamp();
+							if (stamp[0] < modified)
+								stamp[0] = modified;
+						}
+						return false;
+					}
+				});
+			} catch (CoreException e) {
+				PDECore.log(e);
+			}
+			if (stamp[0] != -1)
+				update(project.getName(), stamp[0]);
+		}
+	}
+
+	private void load() {
+		File file = new File(LauncherUtils.getDirectory(), FILE_NAME);
+		if (!file.exists())
+			return;
+		FileInputStream stream = null;
+		try {
+			stream = new FileInputStream(file);
+			synchronized (this) {
+				fStamps.load(stream);
+			}
+		} catch (IOException e) {
+			PDECore.logException(e);
+		} finally {
+			try {
+				if (stream != null)
+					stream.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipse.core.resources.ISaveParticipant#saving(org.eclipse.core.resources.ISaveContext)
+	 */
+	public void saving(ISaveContext context) throws CoreException {
+		// the stamps are only valid together with the delta since this save
+		context.needDelta();
+		File file = new File(LauncherUtils.getDirectory(), FILE_NAME);
+		synchronized (this) {
+			if (!fDirty && file.exists())
+				return;
+			FileOutputStream stream = null;
+			try {
+				stream = new FileOutputStream(file);
+				fStamps.store(stream, "Build timestamps"); //$NON-NLS-1$
+				fDirty = false;
+			} catch (IOException e) {
+				PDECore.logException(e);
+			} finally {
+				try {
+					if (stream != null)
+						stream.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	public void doneSaving(ISaveContext context) {
+		// nothing to do
+	}
+
+	public void prepareToSave(ISaveContext context) {
+		// nothing to do
+	}
+
+	public void rollback(ISaveContext context) {
+		// the stamps written are newer than the saved state, which only causes a
+		// project to be built once too often
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2011 IBM Corporation and others.
+ * Copyright (c) 2007, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -46,15 +46,38 @@ public class BundleLauncherHelper {
 		return getTargetBundleMap(configuration, null, IPDELauncherConstants.TARGET_BUNDLES);
 	}
 
+	/**
+	 * Returns the bundles to launch the given configuration with.  The bundles computed
+	 * for a configuration are reused as long as neither its attributes nor the plug-in
+	 * and feature models change.
+	 *
+	 * @param configuration launch configuration
+	 * @param osgi whether the bundles are for an OSGi framework launch
+	 * @return map of {@link IPluginModelBase} to start level, may be modified by the caller
+	 * @throws CoreException if the configuration cannot be read
+	 */
 	public static Map getMergedBundleMap(ILaunchConfiguration configuration, boolean osgi) throws CoreException {
+		// if we are using the eclipse-based launcher, we need special checks
+		if (!osgi)
+			checkBackwardCompatibility(configuration, true);
+
+		long generation = LaunchPreparationCache.getGeneration();
+		Object key = LaunchPreparationCache.getBundleMapKey(configuration, osgi);
+		Map map = LaunchPreparationCache.getBundleMap(key, generation);
+		if (map == null) {
+			map = computeMergedBundleMap(configuration, osgi);
+			LaunchPreparationCache.putBundleMap(key, generation, map);
+		}
+		return map;
+	}
+
+	private static Map computeMergedBundleMap(ILaunchConfiguration configuration, boolean osgi) throws CoreException {
 		Set set = new HashSet();
 		Map map = new HashMap();
 
 		// if we are using the eclipse-based launcher, we need special checks
 		if (!osgi) {
 
-			checkBackwardCompatibility(configuration, true);
-
 			if (configuration.getAttribute(IPDELauncherConstants.USE_DEFAULT, true)) {
 				IPluginModelBase[] models = PluginRegistry.getActiveModels();
 				for (int i = 0; i < models.length; i++) {
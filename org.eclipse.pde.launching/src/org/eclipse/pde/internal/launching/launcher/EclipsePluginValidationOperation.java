@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2010 IBM Corporation and others.
+ * Copyright (c) 2007, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,11 +11,11 @@
  *******************************************************************************/
 package org.eclipse.pde.internal.launching.launcher;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.debug.core.*;
 import org.eclipse.osgi.service.resolver.BundleDescription;
+import org.eclipse.osgi.service.resolver.State;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.pde.core.plugin.IPluginModelBase;
 import org.eclipse.pde.internal.launching.*;
@@ -24,6 +24,7 @@ public class EclipsePluginValidationOperation extends LaunchValidationOperation
 	public static final int CREATE_EXTENSION_ERROR_CODE = 1000;
 
 	private Map fExtensionErrors = new HashMap(2);
+	private List fMissingRequirements = new ArrayList(2);
 	private static Object[] EMPTY = new Object[0];
 
 	public EclipsePluginValidationOperation(ILaunchConfiguration configuration) {
@@ -41,28 +42,42 @@ public class EclipsePluginValidationOperation extends LaunchValidationOperation
 	 * @see org.eclipse.pde.internal.launching.launcher.LaunchValidationOperation#run(org.eclipse.core.runtime.IProgressMonitor)
 	 */
 	public void run(IProgressMonitor monitor) throws CoreException {
+		fMissingRequirements.clear();
 		super.run(monitor);
 		if (fExtensionErrors.size() > 0)
 			fExtensionErrors.clear();
 		validateExtensions();
 	}
 
-	private void validateExtensions() {
+	/* (non-Javadoc)
+	 * @see org.eclipse.pde.internal.launching.launcher.LaunchValidationOperation#validateState(org.eclipse.osgi.service.resolver.State)
+	 */
+	protected void validateState(State state) {
 		try {
 			String[] required = RequirementHelper.getApplicationRequirements(fLaunchConfiguration);
 			for (int i = 0; i < required.length; i++) {
-				BundleDescription bundle = getState().getBundle(required[i], null);
-				if (bundle == null) {
-					String message = NLS.bind(PDEMessages.EclipsePluginValidationOperation_pluginMissing, required[i]);
-					Status status = new Status(IStatus.ERROR, IPDEConstants.PLUGIN_ID, CREATE_EXTENSION_ERROR_CODE, message, null);
-					IStatusHandler statusHandler = DebugPlugin.getDefault().getStatusHandler(status);
-					Object extensionError = null;
-					if (statusHandler == null)
-						extensionError = status.getMessage();
-					else
-						extensionError = statusHandler.handleStatus(status, required[i]);
-					fExtensionErrors.put(extensionError, EMPTY);
-				}
+				BundleDescription bundle = state.getBundle(required[i], null);
+				if (bundle == null)
+					fMissingRequirements.add(required[i]);
+			}
+		} catch (CoreException e) {
+			PDELaunchingPlugin.log(e);
+		}
+	}
+
+	private void validateExtensions() {
+		try {
+			for (Iterator iter = fMissingRequirements.iterator(); iter.hasNext();) {
+				String required = (String) iter.next();
+				String message = NLS.bind(PDEMessages.EclipsePluginValidationOperation_pluginMissing, required);
+				Status status = new Status(IStatus.ERROR, IPDEConstants.PLUGIN_ID, CREATE_EXTENSION_ERROR_CODE, message, null);
+				IStatusHandler statusHandler = DebugPlugin.getDefault().getStatusHandler(status);
+				Object extensionError = null;
+				if (statusHandler == null)
+					extensionError = status.getMessage();
+				else
+					extensionError = statusHandler.handleStatus(status, required);
+				fExtensionErrors.put(extensionError, EMPTY);
 			}
 		} catch (CoreException e) {
 			PDELaunchingPlugin.log(e);
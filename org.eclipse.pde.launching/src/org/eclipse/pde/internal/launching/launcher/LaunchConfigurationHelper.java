@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2011 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -25,6 +25,7 @@ import org.eclipse.pde.internal.build.IPDEBuildConstants;
 import org.eclipse.pde.internal.core.*;
 import org.eclipse.pde.internal.launching.IPDEConstants;
 import org.eclipse.pde.internal.launching.PDELaunchingPlugin;
+import org.eclipse.pde.internal.launching.launcher.LaunchPreparationCache.ConfigIni;
 import org.eclipse.pde.launching.IPDELauncherConstants;
 
 /**
@@ -91,6 +92,10 @@ public class LaunchConfigurationHelper {
 	 * Writes out the config.ini and other configuration files based on the bundles being launched.  This includes
 	 * writing out bundles.info if the simple configurator is being used or platform.xml if update configurator
 	 * is being used. 
+	 * <p>
+	 * If the files were written from the same configuration and bundles before and have not
+	 * changed since, they are not written again.
+	 * </p>
 	 * 
 	 * @param configuration launch configuration
 	 * @param productID id of the product being launched, may be <code>null</code>
@@ -101,6 +106,37 @@ public class LaunchConfigurationHelper {
 	 * @throws CoreException
 	 */
 	public static Properties createConfigIniFile(ILaunchConfiguration configuration, String productID, Map bundles, Map bundlesWithStartLevels, File configurationDirectory) throws CoreException {
+		// a generated profile is created again for every launch
+		boolean reuse = !configuration.getAttribute(IPDELauncherConstants.GENERATE_PROFILE, false);
+		long generation = LaunchPreparationCache.getGeneration();
+		File template = null;
+		if (!configuration.getAttribute(IPDELauncherConstants.CONFIG_GENERATE_DEFAULT, true)) {
+			String templateLoc = configuration.getAttribute(IPDELauncherConstants.CONFIG_TEMPLATE_LOCATION, (String) null);
+			if (templateLoc != null)
+				template = new File(getSubstitutedString(templateLoc));
+		}
+		List fingerprint = LaunchPreparationCache.getFingerprint(configuration, productID, template, bundles, bundlesWithStartLevels);
+		if (reuse) {
+			ConfigIni cached = LaunchPreparationCache.getConfigIni(configurationDirectory, fingerprint, generation);
+			if (cached != null) {
+				bundlesWithStartLevels.putAll(cached.fStartLevels);
+				return (Properties) cached.fProperties.clone();
+			}
+		}
+		ConfigIni configIni = new ConfigIni();
+		Properties properties = writeConfigIniFile(configuration, productID, bundles, bundlesWithStartLevels, configurationDirectory, configIni);
+		if (reuse) {
+			configIni.fProperties = (Properties) properties.clone();
+			LaunchPreparationCache.putConfigIni(configurationDirectory, fingerprint, generation, configIni);
+		}
+		return properties;
+	}
+
+	/**
+	 * Writes out the config.ini and other configuration files, recording the files written
+	 * and the start levels changed in the given {@link ConfigIni}.
+	 */
+	private static Properties writeConfigIniFile(ILaunchConfiguration configuration, String productID, Map bundles, Map bundlesWithStartLevels, File configurationDirectory, ConfigIni configIni) throws CoreException {
 		Properties properties = null;
 		// if we are to generate a config.ini, start with the values in the target platform's config.ini - bug 141918
 		if (configuration.getAttribute(IPDELauncherConstants.CONFIG_GENERATE_DEFAULT, true)) {
@@ -148,6 +184,7 @@ public class LaunchConfigurationHelper {
 				String startLevel = (String) bundlesWithStartLevels.get(updateConfiguratorBundle);
 				if (startLevel != null && startLevel.equals(BundleLauncherHelper.DEFAULT_UPDATE_CONFIGURATOR_START_LEVEL)) {
 					bundlesWithStartLevels.put(updateConfiguratorBundle, "4:false"); //$NON-NLS-1$
+					configIni.fStartLevels.put(updateConfiguratorBundle, "4:false"); //$NON-NLS-1$
 				}
 			}
 
@@ -163,6 +200,7 @@ public class LaunchConfigurationHelper {
 
 			// Add bundles.txt as p2 config data
 			if (bundlesTxt != null) {
+				configIni.addFile(new File(bundlesTxt.getFile()));
 				properties.setProperty("org.eclipse.equinox.simpleconfigurator.configUrl", bundlesTxt.toString()); //$NON-NLS-1$
 				// if we have simple configurator and update configurator together, ensure update doesn't reconcile
 				if (bundles.get(IPDEBuildConstants.BUNDLE_UPDATE_CONFIGURATOR) != null) {
@@ -190,11 +228,14 @@ public class LaunchConfigurationHelper {
 			String brandingId = LaunchConfigurationHelper.getContributingPlugin(productID);
 			// Create a platform.xml
 			TargetPlatform.createPlatformConfiguration(configurationDirectory, (IPluginModelBase[]) bundles.values().toArray(new IPluginModelBase[bundles.size()]), brandingId != null ? (IPluginModelBase) bundles.get(brandingId) : null);
+			configIni.addFile(new File(configurationDirectory, "org.eclipse.update/platform.xml")); //$NON-NLS-1$
 		}
 
 		setBundleLocations(bundles, properties, autostart);
 
-		save(new File(configurationDirectory, "config.ini"), properties); //$NON-NLS-1$
+		File configIniFile = new File(configurationDirectory, "config.ini"); //$NON-NLS-1$
+		save(configIniFile, properties);
+		configIni.addFile(configIniFile);
 		return properties;
 	}
 
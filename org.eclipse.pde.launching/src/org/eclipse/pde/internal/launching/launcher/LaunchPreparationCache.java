@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.internal.launching.launcher;
+
+import java.io.File;
+import java.util.*;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.debug.core.ILaunchConfiguration;
+import org.eclipse.osgi.service.resolver.State;
+import org.eclipse.osgi.service.resolver.StateDelta;
+import org.eclipse.pde.core.plugin.IPluginModelBase;
+import org.eclipse.pde.internal.core.*;
+
+/**
+ * Remembers what was computed to prepare the last launches, so that launching an
+ * unchanged configuration again does not compute the bundles to launch with and write
+ * the config.ini again.
+ * <p>
+ * Everything cached belongs to a generation of the plug-in and feature models.  Any
+ * change of the models, of the target platform or of the resolver state starts a new
+ * generation, which makes the cached results of the previous ones useless.
+ * </p>
+ */
+class LaunchPreparationCache {
+
+	private static final int MAX_ENTRIES = 16;
+
+	private static long fGeneration = 0;
+
+	private static Listener fListener;
+
+	/**
+	 * Map of a launch configuration's attributes and the kind of launch to a {@link BundleMap}
+	 */
+	private static final Map fBundleMaps = createCache();
+
+	/**
+	 * Map of configuration directory to the {@link ConfigIni} written to it
+	 */
+	private static final Map fConfigInis = createCache();
+
+	/**
+	 * Bundles computed for a launch configuration
+	 */
+	private static class BundleMap {
+		long fGeneration;
+		Map fBundles;
+	}
+
+	/**
+	 * Configuration files written for a launch
+	 */
+	static class ConfigIni {
+		long fGeneration;
+		List fFingerprint;
+		Properties fProperties;
+
+		/**
+		 * Start levels changed while the files were written, map of {@link IPluginModelBase}
+		 * to start level
+		 */
+		Map fStartLevels = new HashMap();
+
+		/**
+		 * Map of the files written to their modification time and length when written
+		 */
+		Map fFiles = new HashMap();
+
+		/**
+		 * Remembers a file that was written, it must not change for the files to be reused.
+		 */
+		void addFile(File file) {
+			fFiles.put(file, getStamp(file));
+		}
+
+		boolean isUnchanged() {
+			for (Iterator iter = fFiles.entrySet().iterator(); iter.hasNext();) {
+				Map.Entry entry = (Map.Entry) iter.next();
+				if (!entry.getValue().equals(getStamp((File) entry.getKey())))
+					return false;
+			}
+			return true;
+		}
+
+		private static List getStamp(File file) {
+			List stamp = new ArrayList(2);
+			stamp.add(new Long(file.lastModified()));
+			stamp.add(new Long(file.length()));
+			return stamp;
+		}
+	}
+
+	/**
+	 * Starts a new generation whenever the models change
+	 */
+	private static class Listener implements IPluginModelListener, IFeatureModelListener, IStateDeltaListener {
+
+		public void modelsChanged(PluginModelDelta delta) {
+			newGeneration();
+		}
+
+		public void modelsChanged(IFeatureModelDelta delta) {
+			newGeneration();
+		}
+
+		public void stateResolved(StateDelta delta) {
+			newGeneration();
+		}
+
+		public void stateChanged(State newState) {
+			newGeneration();
+		}
+	}
+
+	private LaunchPreparationCache() {
+	}
+
+	private static Map createCache() {
+		return new LinkedHashMap(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry eldest) {
+				return size() > MAX_ENTRIES;
+			}
+		};
+	}
+
+	/**
+	 * Returns the current generation of the models.  Results computed from the models
+	 * must be cached with the generation returned before they were computed.
+	 *
+	 * @return current generation
+	 */
+	static synchronized long getGeneration() {
+		if (fListener == null) {
+			fListener = new Listener();
+			PDECore.getDefault().getModelManager().addPluginModelListener(fListener);
+			PDECore.getDefault().getModelManager().addStateDeltaListener(fListener);
+			PDECore.getDefault().getFeatureModelManager().addFeatureModelListener(fListener);
+		}
+		return fGeneration;
+	}
+
+	private static synchronized void newGeneration() {
+		fGeneration++;
+		fBundleMaps.clear();
+		fConfigInis.clear();
+	}
+
+	private static boolean isEnabled() {
+		return !"true".equals(System.getProperty("pde.nocache")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Returns the key the bundles of a launch are cached with.
+	 *
+	 * @param configuration launch configuration
+	 * @param osgi whether the bundles are for an OSGi framework launch
+	 * @return key for the launch
+	 * @throws CoreException if the attributes of the configuration cannot be read
+	 */
+	static Object getBundleMapKey(ILaunchConfiguration configuration, boolean osgi) throws CoreException {
+		List key = new ArrayList(2);
+		key.add(configuration.getAttributes());
+		key.add(Boolean.valueOf(osgi));
+		return key;
+	}
+
+	/**
+	 * Returns the bundles computed for a launch in the given generation.
+	 *
+	 * @return copy of the map of {@link IPluginModelBase} to start level or <code>null</code>
+	 */
+	static synchronized Map getBundleMap(Object key, long generation) {
+		if (!isEnabled())
+			return null;
+		BundleMap cached = (BundleMap) fBundleMaps.get(key);
+		if (cached == null || cached.fGeneration != generation || generation != fGeneration)
+			return null;
+		return new HashMap(cached.fBundles);
+	}
+
+	static synchronized void putBundleMap(Object key, long generation, Map bundles) {
+		if (!isEnabled() || generation != fGeneration)
+			return;
+		BundleMap cached = new BundleMap();
+		cached.fGeneration = generation;
+		cached.fBundles = new HashMap(bundles);
+		fBundleMaps.put(key, cached);
+	}
+
+	/**
+	 * Returns the fingerprint of everything the configuration files of a launch are
+	 * written from.
+	 *
+	 * @param configuration launch configuration
+	 * @param productID product launched, may be <code>null</code>
+	 * @param template config.ini template location, may be <code>null</code>
+	 * @param bundles map of bundle id to {@link IPluginModelBase}
+	 * @param bundlesWithStartLevels map of {@link IPluginModelBase} to start level
+	 * @return fingerprint
+	 * @throws CoreException if the attributes of the configuration cannot be read
+	 */
+	static List getFingerprint(ILaunchConfiguration configuration, String productID, File template, Map bundles, Map bundlesWithStartLevels) throws CoreException {
+		List fingerprint = new ArrayList();
+		fingerprint.add(configuration.getAttributes());
+		fingerprint.add(productID);
+		if (template != null) {
+			fingerprint.add(template.getAbsolutePath());
+			fingerprint.add(new Long(template.lastModified()));
+		}
+		// sort the bundles, the maps do not have a defined order
+		Map sorted = new TreeMap();
+		for (Iterator iter = bundles.entrySet().iterator(); iter.hasNext();) {
+			Map.Entry entry = (Map.Entry) iter.next();
+			IPluginModelBase model = (IPluginModelBase) entry.getValue();
+			List info = new ArrayList(3);
+			info.add(model.getInstallLocation());
+			info.add(new Long(model.getTimeStamp()));
+			info.add(bundlesWithStartLevels.get(model));
+			sorted.put(entry.getKey(), info);
+		}
+		fingerprint.add(sorted);
+		return fingerprint;
+	}
+
+	/**
+	 * Returns the configuration files written to the given directory, if they were
+	 * written from the same fingerprint in the given generation and were not changed since.
+	 *
+	 * @return the written files or <code>null</code>
+	 */
+	static synchronized ConfigIni getConfigIni(File directory, List fingerprint, long generation) {
+		if (!isEnabled())
+			return null;
+		ConfigIni cached = (ConfigIni) fConfigInis.get(directory.getAbsoluteFile());
+		if (cached == null || cached.fGeneration != generation || generation != fGeneration)
+			return null;
+		if (!cached.fFingerprint.equals(fingerprint) || !cached.isUnchanged())
+			return null;
+		return cached;
+	}
+
+	static synchronized void putConfigIni(File directory, List fingerprint, long generation, ConfigIni configIni) {
+		if (!isEnabled() || generation != fGeneration)
+			return;
+		configIni.fGeneration = generation;
+		configIni.fFingerprint = fingerprint;
+		fConfigInis.put(directory.getAbsoluteFile(), configIni);
+	}
+}
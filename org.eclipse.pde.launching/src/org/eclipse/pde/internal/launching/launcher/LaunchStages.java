@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.internal.launching.launcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.debug.core.ILaunchConfiguration;
+import org.eclipse.pde.internal.launching.IPDEConstants;
+import org.eclipse.pde.internal.launching.PDELaunchingPlugin;
+
+/**
+ * The stages a launch is prepared in.  Stages that do not depend on each other can be
+ * run in parallel, each stage but the first in a job of its own.  Only stages that never
+ * need the UI thread may run in a job, and the launch must not be prepared in the UI
+ * thread when it waits for them.
+ * <p>
+ * The time taken by each stage is recorded.  With the <code>org.eclipse.pde.launching/launch</code>
+ * tracing option the timings of every launch slower than
+ * <code>org.eclipse.pde.launching/launch/threshold</code> milliseconds are printed.
+ * </p>
+ */
+public class LaunchStages {
+
+	private static boolean DEBUG = false;
+
+	private static long THRESHOLD = 0;
+
+	static {
+		DEBUG = PDELaunchingPlugin.getDefault().isDebugging() && "true".equals(Platform.getDebugOption(IPDEConstants.PLUGIN_ID + "/launch")); //$NON-NLS-1$ //$NON-NLS-2$
+		if (DEBUG) {
+			try {
+				THRESHOLD = Long.parseLong(Platform.getDebugOption(IPDEConstants.PLUGIN_ID + "/launch/threshold")); //$NON-NLS-1$
+			} catch (NumberFormatException e) {
+			}
+		}
+	}
+
+	/**
+	 * A step of the preparation of a launch
+	 */
+	public static abstract class Stage {
+		private final String fName;
+		private Object fResult;
+		private Throwable fException;
+		private long fDuration = -1;
+
+		/**
+		 * Creates a stage.
+		 *
+		 * @param name name the timing of the stage is reported with
+		 */
+		public Stage(String name) {
+			fName = name;
+		}
+
+		/**
+		 * Runs the stage.
+		 *
+		 * @param monitor progress monitor
+		 * @return the result of the stage, may be <code>null</code>
+		 * @throws CoreException if the stage fails
+		 */
+		protected abstract Object run(IProgressMonitor monitor) throws CoreException;
+
+		/**
+		 * Returns the result of the stage once it was run successfully.
+		 */
+		public Object getResult() {
+			return fResult;
+		}
+
+		void execute(IProgressMonitor monitor) {
+			long start = System.currentTimeMillis();
+			try {
+				fResult = run(monitor);
+			} catch (CoreException e) {
+				fException = e;
+			} catch (RuntimeException e) {
+				fException = e;
+			} catch (Error e) {
+				fException = e;
+			} finally {
+				fDuration = System.currentTimeMillis() - start;
+			}
+		}
+
+		void checkException() throws CoreException {
+			if (fException instanceof CoreException)
+				throw (CoreException) fException;
+			if (fException instanceof RuntimeException)
+				throw (RuntimeException) fException;
+			if (fException instanceof Error)
+				throw (Error) fException;
+		}
+	}
+
+	/**
+	 * Runs a stage apart from the launching thread.  The stage is canceled with the launch.
+	 */
+	private static class StageJob extends Job {
+		private final Stage fStage;
+		private final IProgressMonitor fLaunchMonitor;
+
+		StageJob(Stage stage, IProgressMonitor launchMonitor) {
+			super("Launch stage: " + stage.fName); //$NON-NLS-1$
+			fStage = stage;
+			fLaunchMonitor = launchMonitor;
+			setSystem(true);
+		}
+
+		protected IStatus run(IProgressMonitor monitor) {
+			if (fLaunchMonitor.isCanceled())
+				return Status.CANCEL_STATUS;
+			fStage.execute(new ProgressMonitorWrapper(monitor) {
+				public boolean isCanceled() {
+					return super.isCanceled() || fLaunchMonitor.isCanceled();
+				}
+			});
+			return Status.OK_STATUS;
+		}
+	}
+
+	private final String fName;
+	private final long fStart;
+
+	/**
+	 * Stages run so far, in the order they were started
+	 */
+	private final List fStages = new ArrayList();
+
+	/**
+	 * Starts the preparation of a launch.
+	 *
+	 * @param configuration the configuration launched
+	 */
+	public LaunchStages(ILaunchConfiguration configuration) {
+		fName = configuration.getName();
+		fStart = System.currentTimeMillis();
+	}
+
+	/**
+	 * Runs a stage in the launching thread.
+	 *
+	 * @param stage stage to run
+	 * @param monitor progress monitor for the stage
+	 * @return the result of the stage
+	 * @throws CoreException if the stage fails
+	 */
+	public Object run(Stage stage, IProgressMonitor monitor) throws CoreException {
+		fStages.add(stage);
+		stage.execute(monitor);
+		stage.checkException();
+		return stage.getResult();
+	}
+
+	/**
+	 * Runs stages that do not depend on each other in parallel and waits until all of
+	 * them are done.  The first stage is run in the launching thread.  If stages fail, the
+	 * failure of the first of them is thrown.
+	 *
+	 * @param stages stages to run
+	 * @param monitor progress monitor
+	 * @throws CoreException if a stage fails, or with a cancel status if the launch was
+	 *  canceled before all stages were run
+	 */
+	public void runConcurrently(Stage[] stages, IProgressMonitor monitor) throws CoreException {
+		if (stages.length == 0)
+			return;
+		Job[] jobs = new Job[stages.length];
+		for (int i = 0; i < stages.length; i++) {
+			fStages.add(stages[i]);
+			if (i > 0) {
+				jobs[i] = new StageJob(stages[i], monitor);
+				jobs[i].schedule();
+			}
+		}
+		stages[0].execute(monitor);
+		boolean interrupted = false;
+		for (int i = 1; i < jobs.length; i++) {
+			if (monitor.isCanceled())
+				jobs[i].cancel();
+			// the stages write files of the launch, wait for them even if interrupted
+			while (true) {
+				try {
+					jobs[i].join();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		for (int i = 0; i < stages.length; i++)
+			stages[i].checkException();
+		for (int i = 0; i < stages.length; i++) {
+			if (stages[i].fDuration == -1)
+				throw new CoreException(Status.CANCEL_STATUS);
+		}
+	}
+
+	/**
+	 * Returns the time since the preparation of the launch started.
+	 *
+	 * @return elapsed time in milliseconds
+	 */
+	public long getElapsedTime() {
+		return System.currentTimeMillis() - fStart;
+	}
+
+	/**
+	 * Returns the time taken by each stage run so far.
+	 *
+	 * @return stage names and durations in milliseconds, in the order the stages started
+	 */
+	public String getTimings() {
+		StringBuffer buffer = new StringBuffer();
+		for (int i = 0; i < fStages.size(); i++) {
+			Stage stage = (Stage) fStages.get(i);
+			if (i > 0)
+				buffer.append(", "); //$NON-NLS-1$
+			buffer.append(stage.fName).append('=').append(stage.fDuration).append("ms"); //$NON-NLS-1$
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * Prints the timings of the stages if the launch was slow and tracing is turned on.
+	 */
+	public void report() {
+		long elapsed = getElapsedTime();
+		if (DEBUG && elapsed >= THRESHOLD)
+			System.out.println("Prepared launch of " + fName + " in " + elapsed + "ms: " + getTimings()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2009 IBM Corporation and others.
+ *  Copyright (c) 2007, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -39,10 +39,24 @@ public abstract class LaunchValidationOperation implements IWorkspaceRunnable {
 	}
 
 	public void run(IProgressMonitor monitor) throws CoreException {
-		fOperation = new BundleValidationOperation(getModels(), getPlatformProperties());
+		fOperation = new BundleValidationOperation(getModels(), getPlatformProperties()) {
+			protected void validateState(State state) {
+				LaunchValidationOperation.this.validateState(state);
+			}
+		};
 		fOperation.run(monitor);
 	}
 
+	/**
+	 * Called during {@link #run(IProgressMonitor)} with the state the bundles were resolved
+	 * in.  The state is reused by later validations, it must not be kept or modified.
+	 * Does nothing by default.
+	 *
+	 * @param state resolved state
+	 */
+	protected void validateState(State state) {
+	}
+
 	protected abstract IPluginModelBase[] getModels() throws CoreException;
 
 	protected Dictionary[] getPlatformProperties() throws CoreException {
@@ -151,11 +165,7 @@ public abstract class LaunchValidationOperation implements IWorkspaceRunnable {
 	}
 
 	public boolean isEmpty() {
-		return fOperation.getState().getHighestBundleId() == -1;
-	}
-
-	protected State getState() {
-		return fOperation.getState();
+		return fOperation.isEmpty();
 	}
 
 }
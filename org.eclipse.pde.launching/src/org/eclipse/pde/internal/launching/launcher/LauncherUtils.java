@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2011 IBM Corporation and others.
+ * Copyright (c) 2003, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -175,49 +175,67 @@ public class LauncherUtils {
 	}
 
 	private static String getTimeStamp(IProject project) {
-		IJavaProject jp = JavaCore.create(project);
+		BuildStampTracker tracker = PDELaunchingPlugin.getDefault().getBuildStampTracker();
+		boolean useTracker = tracker != null && !"true".equals(System.getProperty("pde.nocache")); //$NON-NLS-1$ //$NON-NLS-2$
+		if (useTracker) {
+			long stamp = tracker.getStamp(project);
+			if (stamp != -1)
+				return Long.toString(stamp);
+		}
 		try {
-			long timeStamp = 0;
-			IClasspathEntry[] entries = jp.getResolvedClasspath(true);
-			for (int i = 0; i < entries.length; i++) {
-				if (entries[i].getEntryKind() == IClasspathEntry.CPE_SOURCE) {
-					File file;
-					IPath location = entries[i].getOutputLocation();
-					if (location == null)
-						location = jp.getOutputLocation();
-					IResource res = project.getWorkspace().getRoot().findMember(location);
-					IPath path = res == null ? null : res.getLocation();
-					if (path == null)
-						continue;
-					file = path.toFile();
-					Stack files = new Stack();
-					files.push(file);
-					while (!files.isEmpty()) {
-						file = (File) files.pop();
-						if (file.isDirectory()) {
-							File[] children = file.listFiles();
-							if (children != null) {
-								for (int j = 0; j < children.length; j++)
-									files.push(children[j]);
-							}
-						} else if (file.getName().endsWith(".class") && timeStamp < file.lastModified()) //$NON-NLS-1$
-							timeStamp = file.lastModified();
-					}
+			long stamp = computeTimeStamp(project);
+			if (useTracker)
+				tracker.setStamp(project, stamp);
+			return Long.toString(stamp);
+		} catch (JavaModelException e) {
+		}
+		return "0"; //$NON-NLS-1$
+	}
+
+	/**
+	 * Scans the output folders of the project for the latest class file.  Only used for
+	 * projects the {@link BuildStampTracker} does not know yet.
+	 */
+	private static long computeTimeStamp(IProject project) throws JavaModelException {
+		IJavaProject jp = JavaCore.create(project);
+		long timeStamp = 0;
+		IClasspathEntry[] entries = jp.getResolvedClasspath(true);
+		for (int i = 0; i < entries.length; i++) {
+			if (entries[i].getEntryKind() == IClasspathEntry.CPE_SOURCE) {
+				File file;
+				IPath location = entries[i].getOutputLocation();
+				if (location == null)
+					location = jp.getOutputLocation();
+				IResource res = project.getWorkspace().getRoot().findMember(location);
+				IPath path = res == null ? null : res.getLocation();
+				if (path == null)
+					continue;
+				file = path.toFile();
+				Stack files = new Stack();
+				files.push(file);
+				while (!files.isEmpty()) {
+					file = (File) files.pop();
+					if (file.isDirectory()) {
+						File[] children = file.listFiles();
+						if (children != null) {
+							for (int j = 0; j < children.length; j++)
+								files.push(children[j]);
+						}
+					} else if (file.getName().endsWith(".class") && timeStamp < file.lastModified()) //$NON-NLS-1$
+						timeStamp = file.lastModified();
 				}
 			}
-			IFile[] otherFiles = new IFile[] {PDEProject.getManifest(project), PDEProject.getBuildProperties(project)};
-			for (int i = 0; i < otherFiles.length; i++) {
-				IFile file = otherFiles[i];
-				if (file != null) {
-					long fileTimeStamp = file.getRawLocation().toFile().lastModified();
-					if (timeStamp < fileTimeStamp)
-						timeStamp = fileTimeStamp;
-				}
+		}
+		IFile[] otherFiles = new IFile[] {PDEProject.getManifest(project), PDEProject.getBuildProperties(project)};
+		for (int i = 0; i < otherFiles.length; i++) {
+			IFile file = otherFiles[i];
+			if (file != null) {
+				long fileTimeStamp = file.getRawLocation().toFile().lastModified();
+				if (timeStamp < fileTimeStamp)
+					timeStamp = fileTimeStamp;
 			}
-			return Long.toString(timeStamp);
-		} catch (JavaModelException e) {
 		}
-		return "0"; //$NON-NLS-1$
+		return timeStamp;
 	}
 
 	private static void handleUseDefault(String launcherTimeStamp, ArrayList projects) {
@@ -281,7 +299,7 @@ public class LauncherUtils {
 		}
 	}
 
-	private static File getDirectory() {
+	static File getDirectory() {
 		IPath path = PDECore.getDefault().getStateLocation().append(".cache"); //$NON-NLS-1$
 		File directory = new File(path.toOSString());
 		if (!directory.exists() || !directory.isDirectory())
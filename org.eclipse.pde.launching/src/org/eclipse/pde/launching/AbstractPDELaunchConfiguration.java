@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2005, 2011 IBM Corporation and others.
+ *  Copyright (c) 2005, 2012 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -16,6 +16,7 @@ import java.util.Map;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.debug.core.*;
 import org.eclipse.debug.core.model.LaunchConfigurationDelegate;
 import org.eclipse.jdt.core.IJavaModelMarker;
@@ -53,12 +54,30 @@ public abstract class AbstractPDELaunchConfiguration extends LaunchConfiguration
 	 * (non-Javadoc)
 	 * @see org.eclipse.debug.core.model.ILaunchConfigurationDelegate#launch(org.eclipse.debug.core.ILaunchConfiguration, java.lang.String, org.eclipse.debug.core.ILaunch, org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public void launch(ILaunchConfiguration configuration, String mode, ILaunch launch, IProgressMonitor monitor) throws CoreException {
+	public void launch(final ILaunchConfiguration configuration, String mode, final ILaunch launch, IProgressMonitor monitor) throws CoreException {
 		try {
 			fConfigDir = null;
 			monitor.beginTask("", 4); //$NON-NLS-1$
+			LaunchStages stages = new LaunchStages(configuration);
+			LaunchStages.Stage environment = new LaunchStages.Stage("environment") { //$NON-NLS-1$
+				protected Object run(IProgressMonitor subMonitor) throws CoreException {
+					return getEnvironment(configuration);
+				}
+			};
+			boolean concurrent = canComputeEnvironmentConcurrently();
 			try {
-				preLaunchCheck(configuration, launch, new SubProgressMonitor(monitor, 2));
+				// the checks may ask the user and must not clear anything before all of them passed
+				LaunchStages.Stage check = new LaunchStages.Stage("preLaunchCheck") { //$NON-NLS-1$
+					protected Object run(IProgressMonitor subMonitor) throws CoreException {
+						preLaunchCheck(configuration, launch, subMonitor);
+						return null;
+					}
+				};
+				if (concurrent) {
+					stages.runConcurrently(new LaunchStages.Stage[] {check, environment}, new SubProgressMonitor(monitor, 2));
+				} else {
+					stages.run(check, new SubProgressMonitor(monitor, 2));
+				}
 			} catch (CoreException e) {
 				if (e.getStatus().getSeverity() == IStatus.CANCEL) {
 					monitor.setCanceled(true);
@@ -67,11 +86,33 @@ public abstract class AbstractPDELaunchConfiguration extends LaunchConfiguration
 				throw e;
 			}
 
-			VMRunnerConfiguration runnerConfig = new VMRunnerConfiguration(getMainClass(), getClasspath(configuration));
-			runnerConfig.setVMArguments(getVMArguments(configuration));
-			runnerConfig.setProgramArguments(getProgramArguments(configuration));
+			// the arguments share the models and the configuration area of the launch, compute them in order
+			LaunchStages.Stage classpath = new LaunchStages.Stage("classpath") { //$NON-NLS-1$
+				protected Object run(IProgressMonitor subMonitor) throws CoreException {
+					return getClasspath(configuration);
+				}
+			};
+			LaunchStages.Stage vmArguments = new LaunchStages.Stage("vmArguments") { //$NON-NLS-1$
+				protected Object run(IProgressMonitor subMonitor) throws CoreException {
+					return getVMArguments(configuration);
+				}
+			};
+			LaunchStages.Stage programArguments = new LaunchStages.Stage("programArguments") { //$NON-NLS-1$
+				protected Object run(IProgressMonitor subMonitor) throws CoreException {
+					return getProgramArguments(configuration);
+				}
+			};
+			stages.run(classpath, monitor);
+			stages.run(vmArguments, monitor);
+			stages.run(programArguments, monitor);
+			if (!concurrent)
+				stages.run(environment, monitor);
+
+			VMRunnerConfiguration runnerConfig = new VMRunnerConfiguration(getMainClass(), (String[]) classpath.getResult());
+			runnerConfig.setVMArguments((String[]) vmArguments.getResult());
+			runnerConfig.setProgramArguments((String[]) programArguments.getResult());
 			runnerConfig.setWorkingDirectory(getWorkingDirectory(configuration).getAbsolutePath());
-			runnerConfig.setEnvironment(getEnvironment(configuration));
+			runnerConfig.setEnvironment((String[]) environment.getResult());
 			runnerConfig.setVMSpecificAttributesMap(getVMSpecificAttributesMap(configuration));
 
 			monitor.worked(1);
@@ -79,6 +120,7 @@ public abstract class AbstractPDELaunchConfiguration extends LaunchConfiguration
 			setDefaultSourceLocator(configuration);
 			manageLaunch(launch);
 			IVMRunner runner = getVMRunner(configuration, mode);
+			stages.report();
 			if (runner != null)
 				runner.run(runnerConfig, launch, monitor);
 			else
@@ -90,6 +132,26 @@ public abstract class AbstractPDELaunchConfiguration extends LaunchConfiguration
 		}
 	}
 
+	/**
+	 * Returns whether the environment of a launch may be computed while the launch is
+	 * checked.  This is only the case if the environment is computed by PDE, which only
+	 * reads the configuration, and if the launch does not run in the UI thread, which
+	 * must not wait for a job.
+	 */
+	private boolean canComputeEnvironmentConcurrently() {
+		if (Job.getJobManager().currentJob() == null)
+			return false;
+		String pdePackage = AbstractPDELaunchConfiguration.class.getName();
+		pdePackage = pdePackage.substring(0, pdePackage.lastIndexOf('.') + 1);
+		try {
+			Class declaringClass = getClass().getMethod("getEnvironment", new Class[] {ILaunchConfiguration.class}).getDeclaringClass(); //$NON-NLS-1$
+			String name = declaringClass.getName();
+			return name.startsWith(pdePackage) && name.indexOf('.', pdePackage.length()) == -1;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
 	/**
 	 * Returns the VM runner for the given launch mode to use when launching the
 	 * given configuration.
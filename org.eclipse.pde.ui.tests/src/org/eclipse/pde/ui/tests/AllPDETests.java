@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2011 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -46,6 +46,8 @@ public class AllPDETests {
 		suite.addTest(ProjectCreationTests.suite());
 		suite.addTest(BundleRootTests.suite());
 		suite.addTest(PluginRegistryTests.suite());
+		suite.addTest(DependencyLoopFinderTests.suite());
+		suite.addTest(DependencyChangesTests.suite());
 		return suite;
 	}
 
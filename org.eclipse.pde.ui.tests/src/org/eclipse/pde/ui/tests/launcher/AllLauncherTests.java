@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009 EclipseSource Corporation and others.
+ * Copyright (c) 2009, 2012 EclipseSource Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -21,6 +21,7 @@ public class AllLauncherTests {
 	public static Test suite() {
 		TestSuite suite = new TestSuite("Test Suite for testing launching utils"); //$NON-NLS-1$
 		suite.addTest(LaunchConfigurationHelperTestCase.suite());
+		suite.addTest(BundleValidationOperationTestCase.suite());
 		return suite;
 	}
 
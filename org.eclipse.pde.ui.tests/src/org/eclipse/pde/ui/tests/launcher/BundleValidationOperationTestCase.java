@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.ui.tests.launcher;
+
+import java.util.*;
+import junit.framework.*;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.osgi.service.resolver.BundleDescription;
+import org.eclipse.pde.core.plugin.IPluginModelBase;
+import org.eclipse.pde.core.plugin.PluginRegistry;
+import org.eclipse.pde.internal.core.BundleValidationOperation;
+
+/**
+ * Tests that launch validation gives the same results when a cached state is resolved
+ * incrementally as when the bundles are resolved in a new state.
+ */
+public class BundleValidationOperationTestCase extends TestCase {
+
+	private static final String REMOVED_BUNDLE = "org.eclipse.core.runtime";
+
+	public static Test suite() {
+		return new TestSuite(BundleValidationOperationTestCase.class);
+	}
+
+	public void testIncrementalResolve() throws CoreException {
+		IPluginModelBase[] all = getModels(null);
+		IPluginModelBase[] reduced = getModels(REMOVED_BUNDLE);
+		assertTrue("Missing " + REMOVED_BUNDLE, reduced.length < all.length);
+
+		// resolve all bundles, then remove one and add it again in the cached state
+		validate(all);
+		BundleValidationOperation removed = validate(reduced);
+		BundleValidationOperation added = validate(all);
+
+		assertTrue(removed.hasErrors());
+		assertEquals(getNames(validateUncached(reduced)), getNames(removed));
+		assertEquals(getNames(validateUncached(all)), getNames(added));
+	}
+
+	public void testResultsKeptWhenStateReused() throws CoreException {
+		IPluginModelBase[] all = getModels(null);
+		IPluginModelBase[] reduced = getModels(REMOVED_BUNDLE);
+
+		BundleValidationOperation first = validate(reduced);
+		Set errors = getNames(first);
+		assertTrue(first.hasErrors());
+
+		// the next validation resolves the cached state of the first one again
+		validate(all);
+		assertTrue(first.hasErrors());
+		assertEquals(errors, getNames(first));
+	}
+
+	private BundleValidationOperation validate(IPluginModelBase[] models) throws CoreException {
+		BundleValidationOperation operation = new BundleValidationOperation(models);
+		operation.run(new NullProgressMonitor());
+		return operation;
+	}
+
+	private BundleValidationOperation validateUncached(IPluginModelBase[] models) throws CoreException {
+		String previous = System.getProperty("pde.nocache");
+		System.setProperty("pde.nocache", "true");
+		try {
+			return validate(models);
+		} finally {
+			if (previous == null)
+				System.getProperties().remove("pde.nocache");
+			else
+				System.setProperty("pde.nocache", previous);
+		}
+	}
+
+	/**
+	 * Returns the active models with a bundle description, except the ones with the given id.
+	 */
+	private IPluginModelBase[] getModels(String excluded) {
+		IPluginModelBase[] models = PluginRegistry.getActiveModels();
+		List result = new ArrayList(models.length);
+		for (int i = 0; i < models.length; i++) {
+			BundleDescription desc = models[i].getBundleDescription();
+			if (desc != null && !desc.getSymbolicName().equals(excluded))
+				result.add(models[i]);
+		}
+		return (IPluginModelBase[]) result.toArray(new IPluginModelBase[result.size()]);
+	}
+
+	/**
+	 * Returns the names and versions of the bundles the operation found problems with.
+	 */
+	private Set getNames(BundleValidationOperation operation) {
+		Set names = new HashSet();
+		for (Iterator iter = operation.getResolverErrors().keySet().iterator(); iter.hasNext();) {
+			BundleDescription desc = (BundleDescription) iter.next();
+			names.add(desc.getSymbolicName() + '_' + desc.getVersion());
+		}
+		return names;
+	}
+
+}
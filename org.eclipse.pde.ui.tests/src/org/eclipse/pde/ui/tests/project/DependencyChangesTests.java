@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.ui.tests.project;
+
+import java.util.*;
+import junit.framework.*;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.osgi.service.resolver.*;
+import org.eclipse.pde.core.plugin.*;
+import org.eclipse.pde.internal.core.PDECore;
+import org.eclipse.pde.internal.core.builders.DependencyChanges;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Constants;
+
+/**
+ * Tests which checks of a project the changes of its dependencies call for.  The state
+ * of the tests has the bundle a requiring b and importing a package of c, and the
+ * unrelated bundle d.
+ */
+public class DependencyChangesTests extends TestCase {
+
+	private static final Set NONE = Collections.EMPTY_SET;
+
+	private State fState;
+	private long fId = 0;
+
+	public static Test suite() {
+		return new TestSuite(DependencyChangesTests.class);
+	}
+
+	protected void setUp() throws Exception {
+		fState = Platform.getPlatformAdmin().getFactory().createState(true);
+		addBundle("test.a", "test.b", "test.c.api", null);
+		addBundle("test.b", null, null, null);
+		addBundle("test.c", null, null, "test.c.api");
+		addBundle("test.d", null, null, null);
+		fState.resolve(false);
+	}
+
+	private BundleDescription addBundle(String name, String requires, String imports, String exports) throws BundleException {
+		Hashtable manifest = new Hashtable();
+		manifest.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+		manifest.put(Constants.BUNDLE_SYMBOLICNAME, name);
+		if (requires != null)
+			manifest.put(Constants.REQUIRE_BUNDLE, requires);
+		if (imports != null)
+			manifest.put(Constants.IMPORT_PACKAGE, imports);
+		if (exports != null)
+			manifest.put(Constants.EXPORT_PACKAGE, exports);
+		BundleDescription desc = fState.getFactory().createBundleDescription(fState, manifest, name, fId++);
+		fState.addBundle(desc);
+		return desc;
+	}
+
+	private static Set set(String name) {
+		return Collections.singleton(name);
+	}
+
+	private BundleDescription getBundle(String name) {
+		return fState.getBundle(name, null);
+	}
+
+	public void testUnknownChanges() {
+		DependencyChanges changes = new DependencyChanges();
+		assertTrue(changes.affectsManifest(getBundle("test.d")));
+		assertTrue(changes.affectsExtensions(null));
+		assertTrue(changes.affectsBuild(null));
+	}
+
+	/**
+	 * Only the bundles wired to an added bundle are affected.
+	 */
+	public void testAddedBundle() {
+		DependencyChanges required = new DependencyChanges(0, set("test.b"), NONE, set("test.b"), NONE);
+		assertTrue(required.affectsManifest(getBundle("test.a")));
+		assertFalse(required.affectsManifest(getBundle("test.d")));
+		assertFalse(required.affectsExtensions(null));
+
+		DependencyChanges exporter = new DependencyChanges(0, set("test.c"), set("test.c.api"), set("test.c"), NONE);
+		assertTrue(exporter.affectsManifest(getBundle("test.a")));
+		assertFalse(exporter.affectsManifest(getBundle("test.b")));
+
+		DependencyChanges unrelated = new DependencyChanges(0, set("test.e"), NONE, set("test.e"), NONE);
+		assertFalse(unrelated.affectsManifest(getBundle("test.a")));
+		assertFalse(unrelated.affectsManifest(getBundle("test.d")));
+	}
+
+	/**
+	 * An unresolved bundle is affected by the removal of a bundle it asks for.
+	 */
+	public void testRemovedBundle() {
+		fState.removeBundle(getBundle("test.b"));
+		fState.resolve(false);
+		BundleDescription a = getBundle("test.a");
+		assertFalse(a.isResolved());
+
+		DependencyChanges removed = new DependencyChanges(0, set("test.b"), NONE, set("test.b"), NONE);
+		assertTrue(removed.affectsManifest(a));
+		assertFalse(removed.affectsManifest(getBundle("test.d")));
+	}
+
+	/**
+	 * The wiring of a bundle changes with a resolver delta of its own.
+	 */
+	public void testOwnDelta() {
+		BundleDescription d = getBundle("test.d");
+		assertTrue(new DependencyChanges(BundleDelta.RESOLVED, NONE, NONE, NONE, NONE).affectsManifest(d));
+		assertTrue(new DependencyChanges(BundleDelta.LINKAGE_CHANGED, NONE, NONE, NONE, NONE).affectsManifest(d));
+		assertFalse(new DependencyChanges(BundleDelta.REMOVAL_PENDING, NONE, NONE, NONE, NONE).affectsManifest(d));
+	}
+
+	/**
+	 * A manifest change of the plug-in declaring an extension point does not affect the
+	 * extensions contributed to it, a change of its schemas does.
+	 */
+	public void testExtensionPointChanges() {
+		IPluginModelBase model = PluginRegistry.findModel("org.eclipse.pde.ui");
+		assertNotNull(model);
+		String pointPlugin = null;
+		IPluginExtension[] extensions = model.getExtensions().getExtensions();
+		for (int i = 0; i < extensions.length && pointPlugin == null; i++) {
+			IPluginModelBase pointModel = PDECore.getDefault().getExtensionsRegistry().findExtensionPointPlugin(extensions[i].getPoint());
+			if (pointModel != null)
+				pointPlugin = pointModel.getPluginBase().getId();
+		}
+		assertNotNull(pointPlugin);
+
+		DependencyChanges manifest = new DependencyChanges(0, set(pointPlugin), NONE, NONE, NONE);
+		assertFalse(manifest.affectsExtensions(model));
+
+		DependencyChanges schema = new DependencyChanges(0, NONE, NONE, NONE, set(pointPlugin));
+		assertTrue(schema.affectsExtensions(model));
+		assertFalse(schema.affectsManifest(model.getBundleDescription()));
+
+		DependencyChanges other = new DependencyChanges(0, NONE, NONE, NONE, set("test.e"));
+		assertFalse(other.affectsExtensions(model));
+	}
+
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.ui.tests.project;
+
+import java.util.*;
+import junit.framework.*;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.pde.core.plugin.*;
+import org.eclipse.pde.core.project.*;
+import org.eclipse.pde.internal.core.TargetPlatformHelper;
+import org.eclipse.pde.internal.core.builders.DependencyLoop;
+import org.eclipse.pde.internal.core.builders.DependencyLoopFinder;
+
+/**
+ * Tests for finding loops in the dependencies between plug-ins.  The workspace gets
+ * three bundles with the dependencies a -> b, b -> a, b -> c and c -> a, which form
+ * the loops a-b and a-b-c.
+ */
+public class DependencyLoopFinderTests extends TestCase {
+
+	private static final String A = "test.loop.a";
+	private static final String B = "test.loop.b";
+	private static final String C = "test.loop.c";
+
+	public static Test suite() {
+		return new TestSuite(DependencyLoopFinderTests.class);
+	}
+
+	protected void setUp() throws Exception {
+		createBundle(A, new String[] {B});
+		createBundle(B, new String[] {A, C});
+		createBundle(C, new String[] {A});
+	}
+
+	protected void tearDown() throws Exception {
+		String[] names = new String[] {A, B, C};
+		for (int i = 0; i < names.length; i++) {
+			IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(names[i]);
+			if (project.exists())
+				project.delete(true, null);
+		}
+	}
+
+	private void createBundle(String name, String[] required) throws CoreException {
+		IBundleProjectService service = ProjectCreationTests.getBundleProjectService();
+		IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(name);
+		IBundleProjectDescription description = service.getDescription(project);
+		description.setSymbolicName(name);
+		IRequiredBundleDescription[] bundles = new IRequiredBundleDescription[required.length];
+		for (int i = 0; i < required.length; i++) {
+			bundles[i] = service.newRequiredBundle(required[i], null, false, false);
+		}
+		description.setRequiredBundles(bundles);
+		description.apply(null);
+	}
+
+	/**
+	 * Every loop of the state is reported once, also those that do not pass through
+	 * the first bundle of their component.
+	 */
+	public void testFindLoopsInState() {
+		DependencyLoop[] loops = DependencyLoopFinder.findLoops(TargetPlatformHelper.getState());
+		Set found = new HashSet();
+		for (int i = 0; i < loops.length; i++) {
+			Set members = getIds(loops[i]);
+			if (members.contains(A) || members.contains(B) || members.contains(C))
+				assertTrue("Loop reported twice: " + members, found.add(members));
+		}
+		Set expected = new HashSet();
+		expected.add(new HashSet(Arrays.asList(new String[] {A, B})));
+		expected.add(new HashSet(Arrays.asList(new String[] {A, B, C})));
+		assertEquals(expected, found);
+	}
+
+	/**
+	 * Every loop through a single plug-in is reported, also the longer loop through a
+	 * dependency that has a shorter way back.
+	 */
+	public void testFindLoopsOfPlugin() {
+		IPluginModelBase model = PluginRegistry.findModel(A);
+		assertNotNull("Missing " + A, model);
+		DependencyLoop[] loops = DependencyLoopFinder.findLoops((IPlugin) model.getPluginBase());
+		Set found = new HashSet();
+		for (int i = 0; i < loops.length; i++) {
+			IPluginBase[] members = loops[i].getMembers();
+			List ids = new ArrayList();
+			for (int j = 0; j < members.length; j++) {
+				ids.add(members[j].getId());
+			}
+			assertTrue("Loop reported twice: " + ids, found.add(ids));
+		}
+		Set expected = new HashSet();
+		expected.add(Arrays.asList(new String[] {A, B}));
+		expected.add(Arrays.asList(new String[] {A, B, C}));
+		assertEquals(expected, found);
+	}
+
+	private Set getIds(DependencyLoop loop) {
+		Set ids = new HashSet();
+		IPluginBase[] members = loop.getMembers();
+		for (int i = 0; i < members.length; i++) {
+			ids.add(members[i].getId());
+		}
+		return ids;
+	}
+
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.ui.tests.target;
+
+import junit.framework.*;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.pde.internal.core.util.WorkerPool;
+
+/**
+ * Tests the pool of worker threads used to resolve targets and read bundles.
+ */
+public class WorkerPoolTests extends TestCase {
+
+	public static Test suite() {
+		return new TestSuite(WorkerPoolTests.class);
+	}
+
+	/**
+	 * Counts the threads processing items at the same time
+	 */
+	private static class CountingWorker implements WorkerPool.IWorker {
+		private int fActive = 0;
+		int fMaxActive = 0;
+
+		public Object process(Object item, IProgressMonitor monitor) {
+			synchronized (this) {
+				fActive++;
+				fMaxActive = Math.max(fMaxActive, fActive);
+			}
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+			}
+			synchronized (this) {
+				fActive--;
+			}
+			return item;
+		}
+	}
+
+	private static Object[] createItems(int count) {
+		Object[] items = new Object[count];
+		for (int i = 0; i < count; i++) {
+			items[i] = new Integer(i);
+		}
+		return items;
+	}
+
+	public void testResultsInItemOrder() {
+		Object[] items = createItems(50);
+		Object[] results = new WorkerPool("Test", 4).process(items, new WorkerPool.IWorker() {
+			public Object process(Object item, IProgressMonitor monitor) {
+				return new Integer(((Integer) item).intValue() * 2);
+			}
+		}, new NullProgressMonitor());
+		assertEquals(items.length, results.length);
+		for (int i = 0; i < results.length; i++) {
+			assertEquals(new Integer(i * 2), results[i]);
+		}
+	}
+
+	public void testPoolSizeBound() {
+		CountingWorker worker = new CountingWorker();
+		new WorkerPool("Test", 3).process(createItems(30), worker, new NullProgressMonitor());
+		assertTrue("Too many workers: " + worker.fMaxActive, worker.fMaxActive <= 3);
+	}
+
+	/**
+	 * Pools used by the items of another pool share its bound, all items are still processed.
+	 */
+	public void testNestedPools() {
+		final CountingWorker inner = new CountingWorker();
+		final boolean[] onWorker = new boolean[] {true};
+		Object[] results = new WorkerPool("Outer", 3).process(createItems(6), new WorkerPool.IWorker() {
+			public Object process(Object item, IProgressMonitor monitor) {
+				synchronized (onWorker) {
+					onWorker[0] &= WorkerPool.isWorkerThread();
+				}
+				return new WorkerPool("Inner", 3).process(createItems(10), inner, monitor);
+			}
+		}, new NullProgressMonitor());
+		assertTrue(onWorker[0]);
+		assertFalse(WorkerPool.isWorkerThread());
+		for (int i = 0; i < results.length; i++) {
+			Object[] innerResults = (Object[]) results[i];
+			for (int j = 0; j < innerResults.length; j++) {
+				assertEquals(new Integer(j), innerResults[j]);
+			}
+		}
+		int bound = WorkerPool.getDefaultSize();
+		assertTrue("Too many workers: " + inner.fMaxActive, inner.fMaxActive <= bound);
+	}
+
+}
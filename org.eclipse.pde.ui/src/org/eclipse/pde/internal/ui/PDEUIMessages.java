@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2011 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -1611,6 +1611,8 @@ public class PDEUIMessages extends NLS {
 	public static String PluginsView_CollapseAllAction_description;
 	public static String PluginsView_CollapseAllAction_tooltip;
 	public static String PluginsView_SelectAllAction_label;
+	public static String PluginsView_findLoops;
+	public static String PluginsView_noLoops;
 	public static String PluginsView_TotalPlugins_unknown;
 
 	public static String PluginSection_open;
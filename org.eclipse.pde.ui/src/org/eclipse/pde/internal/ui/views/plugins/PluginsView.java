@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -24,6 +24,7 @@ import org.eclipse.jdt.ui.JavaUI;
 import org.eclipse.jdt.ui.actions.OpenAction;
 import org.eclipse.jface.action.*;
 import org.eclipse.jface.dialogs.IDialogSettings;
+import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.util.IPropertyChangeListener;
 import org.eclipse.jface.util.PropertyChangeEvent;
@@ -31,8 +32,11 @@ import org.eclipse.jface.viewers.*;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.pde.core.plugin.*;
 import org.eclipse.pde.internal.core.*;
+import org.eclipse.pde.internal.core.builders.DependencyLoop;
+import org.eclipse.pde.internal.core.builders.DependencyLoopFinder;
 import org.eclipse.pde.internal.ui.*;
 import org.eclipse.pde.internal.ui.editor.JarEntryEditorInput;
+import org.eclipse.pde.internal.ui.editor.plugin.LoopDialog;
 import org.eclipse.pde.internal.ui.editor.plugin.ManifestEditor;
 import org.eclipse.pde.internal.ui.refactoring.PDERefactoringAction;
 import org.eclipse.pde.internal.ui.refactoring.RefactoringActionFactory;
@@ -73,6 +77,7 @@ public class PluginsView extends ViewPart implements IPluginModelListener {
 	private Action fSelectDependentAction;
 	private Action fSelectInJavaSearchAction;
 	private Action fSelectAllAction;
+	private Action fFindLoopsAction;
 	private PDERefactoringAction fRefactorAction;
 	private CollapseAllAction fCollapseAllAction;
 	private DisabledFilter fHideExtEnabledFilter = new DisabledFilter(true);
@@ -222,6 +227,8 @@ public class PluginsView extends ViewPart implements IPluginModelListener {
 		manager.add(fHideWorkspaceFilterAction);
 		manager.add(fHideExtEnabledFilterAction);
 		manager.add(fHideExtDisabledFilterAction);
+		manager.add(new Separator());
+		manager.add(fFindLoopsAction);
 	}
 
 	private void contributeToLocalToolBar(IToolBarManager manager) {
@@ -350,6 +357,13 @@ public class PluginsView extends ViewPart implements IPluginModelListener {
 		};
 		fSelectAllAction.setText(PDEUIMessages.PluginsView_SelectAllAction_label);
 
+		fFindLoopsAction = new Action() {
+			public void run() {
+				handleFindLoops();
+			}
+		};
+		fFindLoopsAction.setText(PDEUIMessages.PluginsView_findLoops);
+
 		fCollapseAllAction = new CollapseAllAction();
 
 		fOpenClassFileAction = new OpenAction(getViewSite());
@@ -614,6 +628,20 @@ public class PluginsView extends ViewPart implements IPluginModelListener {
 		}
 	}
 
+	private void handleFindLoops() {
+		final DependencyLoop[][] loops = new DependencyLoop[1][];
+		BusyIndicator.showWhile(fTreeViewer.getTree().getDisplay(), new Runnable() {
+			public void run() {
+				loops[0] = DependencyLoopFinder.findAllLoops();
+			}
+		});
+		Shell shell = fTreeViewer.getTree().getShell();
+		if (loops[0].length == 0)
+			MessageDialog.openInformation(shell, PDEUIMessages.DependencyAnalysisSection_loops, PDEUIMessages.PluginsView_noLoops);
+		else
+			new LoopDialog(shell, loops[0]).open();
+	}
+
 	private void handleSelectDependencies() {
 		IStructuredSelection selection = (IStructuredSelection) fTreeViewer.getSelection();
 		if (selection.size() == 0)